@@ -0,0 +1,73 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.io.PrintStream;
+
+/**
+ * a tiny benchmark harness: warm up, measure a few iterations, report the best and mean time per operation
+ * Results are sunk into a blackhole so that the JIT cannot drop the measured work.
+ */
+final class Bench {
+    /**
+     * the work measured by one iteration
+     */
+    interface Iteration {
+        /**
+         * do the work once
+         * @return the number of operations done
+         */
+        long run();
+    }
+
+    /// where results are printed
+    static PrintStream out = System.out;
+    /// where results are sunk
+    static volatile long blackhole;
+    /// the number of warm-up iterations
+    private static final int WARMUP = Integer.getInteger("bench.warmup", 5);
+    /// the number of measured iterations
+    private static final int MEASURE = Integer.getInteger("bench.iterations", 10);
+    /// only benchmarks whose name contains this run
+    private static final String FILTER = System.getProperty("bench.filter", "");
+
+    private Bench(){
+    }
+
+    /**
+     * sink a result
+     * @param v the result
+     */
+    static void consume(long v){
+        blackhole ^= v;
+    }
+
+    /**
+     * decide whether a benchmark is selected by the filter, so that its setup can be skipped too
+     * @param name the name of the benchmark
+     * @return true if it should run
+     */
+    static boolean enabled(String name){
+        return name.contains(FILTER);
+    }
+
+    /**
+     * measure some work and print the result
+     * @param name the name of the benchmark
+     * @param it the work
+     */
+    static void run(String name, Iteration it){
+        if (!enabled(name))
+            return;
+        for (int i = 0; i < WARMUP; ++i)
+            it.run();
+        double best = Double.MAX_VALUE;
+        double total = 0;
+        for (int i = 0; i < MEASURE; ++i){
+            long start = System.nanoTime();
+            long ops = it.run();
+            double perOp = (double) (System.nanoTime() - start) / Math.max(1, ops);
+            best = Math.min(best, perOp);
+            total += perOp;
+        }
+        out.printf("%-60s %12.1f ns/op (best %.1f)%n", name, total / MEASURE, best);
+    }
+}
@@ -0,0 +1,186 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.Random;
+
+/**
+ * Benchmarks of the dispatching and elevator hot paths, run headless (no JavaFX needed)
+ *
+ * javac -d out src/cn/leonwong/ElevatorSimulator/Model/*.java bench/cn/leonwong/ElevatorSimulator/Model/*.java
+ * java -cp out [-Dbench.filter=dispatch] cn.leonwong.ElevatorSimulator.Model.ModelBenchmarks
+ */
+public class ModelBenchmarks {
+    /// building sizes, in levels and in elevators
+    private static final int[] SIZES = {10, 100, 1000};
+    /// how many calls one dispatch iteration makes
+    private static final int CALLS = 10000;
+
+    public static void main(String[] args){
+        // the models log every step, which would be measured too
+        Log.setLevel(Log.Level.Off);
+        for (int levs : SIZES)
+            for (int elevs : SIZES)
+                benchmarkDispatch(levs, elevs);
+        for (int levs : SIZES)
+            benchmarkElevator(levs);
+        for (int levs : SIZES)
+            benchmarkBuildingStep(levs, 10);
+        benchmarkBuildingStep(100, 100);
+        for (int waiting : SIZES)
+            benchmarkCrowdedFloor(waiting * 10);
+    }
+
+    /**
+     * choosing an elevator for a call, with each built-in strategy
+     * @param levs the number of levels
+     * @param elevs the number of elevators
+     */
+    private static void benchmarkDispatch(int levs, int elevs){
+        DispatchStrategy[] strategies = {new SpeedFirstStrategy(), new LoadBalancingStrategy(), new PowerSavingStrategy(), new DestinationControlStrategy()};
+        String[] names = new String[strategies.length];
+        boolean any = false;
+        for (int i = 0; i < strategies.length; ++i){
+            names[i] = String.format("dispatch %s %d levels %d elevators", strategies[i].getName(), levs, elevs);
+            any |= Bench.enabled(names[i]);
+        }
+        if (!any)
+            return;
+        Building b = loadedBuilding(levs, elevs, 1);
+        int[] costs = new int[elevs];
+        Random rng = new Random(1);
+        int[] from = new int[CALLS];
+        int[] to = new int[CALLS];
+        randomCalls(levs, from, to, 2);
+        for (int k = 0; k < strategies.length; ++k){
+            DispatchStrategy str = strategies[k];
+            Bench.run(names[k], () -> {
+                long sum = 0;
+                for (int i = 0; i < CALLS; ++i)
+                    sum += str.choose(b, from[i], to[i], costs, rng);
+                Bench.consume(sum);
+                return CALLS;
+            });
+        }
+    }
+
+    /**
+     * an elevator's direction decision and destination queries
+     * @param levs the number of levels
+     */
+    private static void benchmarkElevator(int levs){
+        String decide = String.format("elevator decideDirection %d levels", levs);
+        String minMax = String.format("elevator getMax/MinDestination %d levels", levs);
+        if (!Bench.enabled(decide) && !Bench.enabled(minMax))
+            return;
+        Building b = loadedBuilding(levs, 10, 3);
+        Elevator e = b.elevatorList.get(0);
+        Bench.run(decide, () -> {
+            for (int i = 0; i < CALLS; ++i)
+                e.decideDirection();
+            Bench.consume(e.getDirection());
+            return CALLS;
+        });
+        Bench.run(minMax, () -> {
+            long sum = 0;
+            for (int i = 0; i < CALLS; ++i)
+                sum += e.getMaxDestination() + e.getMinDestination();
+            Bench.consume(sum);
+            return CALLS;
+        });
+    }
+
+    /**
+     * the whole building under load, in simulation events
+     * @param levs the number of levels
+     * @param elevs the number of elevators
+     */
+    private static void benchmarkBuildingStep(int levs, int elevs){
+        Bench.run(String.format("building step %d levels %d elevators", levs, elevs), () -> {
+            Simulation sim = new Simulation();
+            Building b = new Building(levs, elevs, 20, sim);
+            feed(sim, b, new SpeedFirstStrategy(), new Random(4), elevs * 2000L);
+            sim.runUntil(600000);
+            return sim.getFiredEvents();
+        });
+    }
+
+    /**
+     * an elevator stopping again and again at a level where a crowd waits, going either way
+     * @param waiting the number of passengers waiting there
+     */
+    private static void benchmarkCrowdedFloor(int waiting){
+        Bench.run(String.format("crowded floor %d waiting", waiting), () -> {
+            Simulation sim = new Simulation();
+            Building b = new Building(3, 1, 20, sim);
+            Elevator e = b.elevatorList.get(0);
+            for (int i = 0; i < waiting; ++i)
+                b.levelList.get(2).add(new Passenger(i, 2, i % 2 == 0 ? 3 : 1, 0));
+            // a new call every second brings the elevator back, each stop takes 20 from the crowd
+            for (int i = 0; i < 600; ++i)
+                sim.scheduleHallCall(1000L * i, 2, i % 2 == 0 ? 3 : 1);
+            long[] nextId = {waiting};
+            sim.setHallCallListener((from, to) -> {
+                b.levelList.get(from).add(new Passenger(nextId[0]++, from, to, sim.now()));
+                e.addDestination(from);
+            });
+            MessageBus.Handler drop = m -> { };
+            sim.setEventHook(() -> b.messageCenter.drain(drop, Integer.MAX_VALUE));
+            sim.runUntil(600000);
+            return sim.getFiredEvents();
+        });
+    }
+
+    /**
+     * create a building whose elevators are moving and carrying passengers
+     * @param levs the number of levels
+     * @param elevs the number of elevators
+     * @param seed the seed of the traffic
+     * @return the building, whose simulation has stopped
+     */
+    private static Building loadedBuilding(int levs, int elevs, long seed){
+        Simulation sim = new Simulation();
+        Building b = new Building(levs, elevs, 20, sim);
+        feed(sim, b, new SpeedFirstStrategy(), new Random(seed), elevs * 200L);
+        sim.runUntil(60000);
+        sim.stop();
+        return b;
+    }
+
+    /**
+     * schedule random hall calls within the first minute and dispatch them as the Controller does, without printing
+     * @param sim the simulation
+     * @param b the building
+     * @param str the dispatching strategy
+     * @param rng the random generator
+     * @param calls the number of calls
+     */
+    private static void feed(Simulation sim, Building b, DispatchStrategy str, Random rng, long calls){
+        int[] costs = new int[b.getElevators()];
+        sim.setHallCallListener((from, to) -> {
+            b.levelList.get(from).add(new Passenger(to));
+            b.elevatorList.get(str.choose(b, from, to, costs, rng)).addDestination(from);
+        });
+        MessageBus.Handler drop = m -> { };
+        sim.setEventHook(() -> b.messageCenter.drain(drop, Integer.MAX_VALUE));
+        for (long i = 0; i < calls; ++i){
+            int from = rng.nextInt(b.getLevels()) + 1;
+            int to = rng.nextInt(b.getLevels() - 1) + 1;
+            sim.scheduleHallCall(rng.nextInt(60000), from, to >= from ? to + 1 : to);
+        }
+    }
+
+    /**
+     * fill arrays with random calls
+     * @param levs the number of levels
+     * @param from the starting levels
+     * @param to the destinations
+     * @param seed the seed
+     */
+    private static void randomCalls(int levs, int[] from, int[] to, long seed){
+        Random rng = new Random(seed);
+        for (int i = 0; i < from.length; ++i){
+            from[i] = rng.nextInt(levs) + 1;
+            int t = rng.nextInt(levs - 1) + 1;
+            to[i] = t >= from[i] ? t + 1 : t;
+        }
+    }
+}
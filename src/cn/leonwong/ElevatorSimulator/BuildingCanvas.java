@@ -0,0 +1,287 @@
+package cn.leonwong.ElevatorSimulator;
+
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * draws a whole building on one canvas, only the floors and shafts in sight
+ * Scroll to move up and down the building, shift+scroll to move sideways, ctrl+scroll to zoom.
+ * Clicks are hit-tested: on a level's label or an elevator's number or car, the listener is told which.
+ */
+public class BuildingCanvas extends Canvas {
+    /**
+     * receives clicks on levels and elevators
+     */
+    public interface ClickListener {
+        /**
+         * a level's label is clicked
+         * @param lev the level
+         */
+        void onLevelClicked(int lev);
+
+        /**
+         * an elevator's number or car is clicked
+         * @param index the index of the elevator
+         */
+        void onElevatorClicked(int index);
+    }
+
+    /// the height of the band showing the elevators' numbers
+    private static final double HEADER = 50;
+    /// the width of the column showing the levels' labels
+    private static final double LABELS = 90;
+    /// the smallest and largest height of a floor when zooming
+    private static final double MIN_FLOOR = 12, MAX_FLOOR = 120;
+    /// how much one step of the wheel zooms
+    private static final double ZOOM_STEP = 1.1;
+    /// the sprite of an elevator, decoded once and shared by every car
+    private static Image sprite;
+
+    /// \#levels of the building
+    private int levels;
+    /// \#elevators of the building
+    private int elevators;
+    /// the level of each elevator, by its index from 1
+    private int[] elevatorLevels;
+    /// the number of passengers waiting at each level
+    private int[] waiting;
+    /// the height of a floor, which is also the width of a shaft
+    private double floorHeight;
+    /// how far (px) the view is scrolled up from the ground floor
+    private double scrollY;
+    /// how far (px) the view is scrolled right from the first shaft
+    private double scrollX;
+    /// receives clicks, may be null
+    private ClickListener listener;
+
+    /**
+     * create a canvas filling a pane
+     * @param parent the pane, whose size the canvas follows
+     */
+    public BuildingCanvas(Pane parent){
+        this.floorHeight = 60;
+        this.setBuilding(0, 0);
+        this.widthProperty().bind(parent.widthProperty());
+        this.heightProperty().bind(parent.heightProperty());
+        this.widthProperty().addListener(o -> this.draw());
+        this.heightProperty().addListener(o -> this.draw());
+        this.setOnScroll(this::onScroll);
+        this.setOnMouseClicked(this::onClick);
+    }
+
+    /**
+     * show a new building, with every elevator at the ground floor and nobody waiting
+     * @param levs \#levels
+     * @param elevs \#elevators
+     */
+    public void setBuilding(int levs, int elevs){
+        this.levels = levs;
+        this.elevators = elevs;
+        this.elevatorLevels = new int[elevs + 1];
+        for (int i = 1; i <= elevs; ++i)
+            this.elevatorLevels[i] = 1;
+        this.waiting = new int[levs + 1];
+        this.scrollY = 0;
+        this.scrollX = 0;
+    }
+
+    /**
+     * setter for the level of an elevator, drawn on the next draw()
+     * @param index the index of the elevator
+     * @param lev the level
+     */
+    public void setElevatorLevel(int index, int lev){
+        if (index >= 1 && index <= this.elevators)
+            this.elevatorLevels[index] = lev;
+    }
+
+    /**
+     * setter for the number of passengers waiting at a level, drawn on the next draw()
+     * @param lev the level
+     * @param count the number of passengers
+     */
+    public void setWaiting(int lev, int count){
+        if (lev >= 1 && lev <= this.levels)
+            this.waiting[lev] = count;
+    }
+
+    /**
+     * setter for the click listener
+     * @param l the listener
+     */
+    public void setClickListener(ClickListener l){
+        this.listener = l;
+    }
+
+    /**
+     * draw the floors and shafts in sight, the cost does not depend on the size of the building
+     */
+    public void draw(){
+        GraphicsContext g = this.getGraphicsContext2D();
+        double w = this.getWidth(), h = this.getHeight();
+        g.setFill(Color.WHITE);
+        g.fillRect(0, 0, w, h);
+        if (this.levels == 0)
+            return;
+        int firstLevel = this.levelAt(h), lastLevel = this.levelAt(HEADER);
+        int firstShaft = this.shaftAt(LABELS), lastShaft = this.shaftAt(w);
+        // floors
+        g.setStroke(Color.LIGHTGRAY);
+        g.setLineWidth(1);
+        for (int lev = firstLevel; lev <= lastLevel; ++lev){
+            double top = this.floorTop(lev);
+            g.strokeLine(LABELS, top, w, top);
+        }
+        // shafts and cars
+        g.setStroke(Color.DARKGRAY);
+        for (int i = firstShaft; i <= lastShaft; ++i){
+            double x = this.shaftLeft(i);
+            g.strokeLine(x + this.floorHeight / 2, HEADER, x + this.floorHeight / 2, h);
+            int lev = this.elevatorLevels[i];
+            if (lev < firstLevel || lev > lastLevel)
+                continue;
+            double top = this.floorTop(lev);
+            if (this.getSprite() != null)
+                g.drawImage(sprite, x, top, this.floorHeight, this.floorHeight);
+            else {
+                g.setFill(Color.STEELBLUE);
+                g.fillRect(x + 2, top + 2, this.floorHeight - 4, this.floorHeight - 4);
+            }
+        }
+        // the labels of the levels, over anything scrolled under them
+        g.setFill(Color.WHITESMOKE);
+        g.fillRect(0, HEADER, LABELS, h - HEADER);
+        g.setTextAlign(TextAlignment.LEFT);
+        for (int lev = firstLevel; lev <= lastLevel; ++lev){
+            double top = this.floorTop(lev);
+            g.setStroke(Color.LIGHTGRAY);
+            g.strokeLine(0, top, LABELS, top);
+            g.setFill(this.waiting[lev] > 0 ? Color.DARKORANGE : Color.BLACK);
+            g.fillText(this.waiting[lev] > 0 ? "#" + lev + " (" + this.waiting[lev] + ")" : "#" + lev,
+                    8, top + Math.min(this.floorHeight, 30) / 2 + 5);
+        }
+        // the numbers of the elevators
+        g.setFill(Color.WHITESMOKE);
+        g.fillRect(0, 0, w, HEADER);
+        g.setFill(Color.BLACK);
+        g.setTextAlign(TextAlignment.CENTER);
+        for (int i = firstShaft; i <= lastShaft; ++i)
+            g.fillText("#" + i, this.shaftLeft(i) + this.floorHeight / 2, HEADER / 2 + 5);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.fillText(this.levels + " levels", 8, HEADER / 2 + 5);
+    }
+
+    /**
+     * scroll or zoom the view
+     * @param e the event
+     */
+    private void onScroll(ScrollEvent e){
+        if (e.isControlDown()){
+            // zoom about the pointer, so the floor under it stays put
+            double fixed = (this.getHeight() - e.getY() + this.scrollY) / this.floorHeight;
+            double fixedX = (e.getX() - LABELS + this.scrollX) / this.floorHeight;
+            double zoom = e.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP;
+            this.floorHeight = Math.max(MIN_FLOOR, Math.min(MAX_FLOOR, this.floorHeight * zoom));
+            this.scrollY = fixed * this.floorHeight - (this.getHeight() - e.getY());
+            this.scrollX = fixedX * this.floorHeight - (e.getX() - LABELS);
+        }
+        else if (e.isShiftDown() || e.getDeltaX() != 0)
+            this.scrollX -= e.getDeltaX() != 0 ? e.getDeltaX() : e.getDeltaY();
+        else
+            this.scrollY += e.getDeltaY();
+        this.clampScroll();
+        this.draw();
+        e.consume();
+    }
+
+    /**
+     * tell the listener what was clicked
+     * @param e the event
+     */
+    private void onClick(MouseEvent e){
+        if (this.listener == null || this.levels == 0)
+            return;
+        double x = e.getX(), y = e.getY();
+        if (x < LABELS){
+            if (y >= HEADER)
+                this.listener.onLevelClicked(this.levelAt(y));
+            return;
+        }
+        int shaft = (int) Math.floor((x - LABELS + this.scrollX) / this.floorHeight) + 1;
+        if (shaft < 1 || shaft > this.elevators)
+            return;
+        // the number of a shaft, or the car in it
+        if (y < HEADER || this.levelAt(y) == this.elevatorLevels[shaft])
+            this.listener.onElevatorClicked(shaft);
+    }
+
+    /**
+     * keep the view over the building
+     */
+    private void clampScroll(){
+        double maxY = Math.max(0, this.levels * this.floorHeight - (this.getHeight() - HEADER));
+        double maxX = Math.max(0, this.elevators * this.floorHeight - (this.getWidth() - LABELS));
+        this.scrollY = Math.max(0, Math.min(maxY, this.scrollY));
+        this.scrollX = Math.max(0, Math.min(maxX, this.scrollX));
+    }
+
+    /**
+     * find the level drawn at some height, clamped to the building
+     * @param y the height on the canvas
+     * @return the level
+     */
+    private int levelAt(double y){
+        int lev = (int) Math.floor((this.getHeight() - y + this.scrollY) / this.floorHeight) + 1;
+        return Math.max(1, Math.min(this.levels, lev));
+    }
+
+    /**
+     * find the shaft drawn at some position, clamped to the building
+     * @param x the position on the canvas
+     * @return the index of the elevator
+     */
+    private int shaftAt(double x){
+        int shaft = (int) Math.floor((x - LABELS + this.scrollX) / this.floorHeight) + 1;
+        return Math.max(1, Math.min(this.elevators, shaft));
+    }
+
+    /**
+     * find where a floor is drawn
+     * @param lev the level
+     * @return the height on the canvas of its top
+     */
+    private double floorTop(int lev){
+        return this.getHeight() + this.scrollY - lev * this.floorHeight;
+    }
+
+    /**
+     * find where a shaft is drawn
+     * @param index the index of the elevator
+     * @return the position on the canvas of its left side
+     */
+    private double shaftLeft(int index){
+        return LABELS + (index - 1) * this.floorHeight - this.scrollX;
+    }
+
+    /**
+     * getter for the sprite of an elevator, decoded when first used
+     * @return the sprite, null if it cannot be loaded
+     */
+    private Image getSprite(){
+        if (sprite == null){
+            try {
+                sprite = new Image("ElevatorIcon_60_60.png");
+            }
+            catch (RuntimeException e){
+                return null;
+            }
+        }
+        return sprite;
+    }
+}
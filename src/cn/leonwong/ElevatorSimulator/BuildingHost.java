@@ -0,0 +1,341 @@
+package cn.leonwong.ElevatorSimulator;
+
+import cn.leonwong.ElevatorSimulator.Model.JourneyStats;
+import cn.leonwong.ElevatorSimulator.Model.Log;
+import cn.leonwong.ElevatorSimulator.Model.Simulation;
+import cn.leonwong.ElevatorSimulator.Model.TrafficGenerator;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs many simulated buildings in one JVM, each an independent shard with its own controller, strategy and metrics
+ * The shards take turns on a shared work-stealing pool: a shard with events due runs for a slice of CPU time,
+ * then goes to the back of the line of shards waiting to run, and an idle carrier thread picks up whichever shard
+ * is first in line. A hot building, e.g. a tall one under heavy traffic, thus gets no more than its turn while others
+ * wait, and the CPU time each shard has used is accounted.
+ */
+public class BuildingHost {
+    /**
+     * a building hosted by a BuildingHost, with its controller and simulation
+     */
+    public static class Shard {
+        /// the name shown in reports
+        private final String name;
+        /// the controller of the building
+        private final Controller controller;
+        /// the simulation driving the building
+        private final Simulation simulation;
+        /// the virtual time to run until
+        private long endTime;
+        /// denote if the shard is waiting in line or running
+        private boolean queued;
+        /// denote if the shard has been removed, or has failed
+        private volatile boolean stopped;
+        /// the CPU time (ns) used so far
+        private volatile long cpuTime;
+        /// the number of slices run so far
+        private volatile long slices;
+
+        /**
+         * create a shard
+         * @param n the name
+         * @param c the controller, whose building is driven by s
+         * @param s the simulation
+         */
+        Shard(String n, Controller c, Simulation s){
+            this.name = n;
+            this.controller = c;
+            this.simulation = s;
+        }
+
+        /**
+         * getter for the name
+         * @return the name shown in reports
+         */
+        public String getName(){
+            return this.name;
+        }
+
+        /**
+         * getter for the controller, e.g. to add traffic or read metrics
+         * @return the controller
+         */
+        public Controller getController(){
+            return this.controller;
+        }
+
+        /**
+         * getter for the simulation
+         * @return the simulation driving the building
+         */
+        public Simulation getSimulation(){
+            return this.simulation;
+        }
+
+        /**
+         * getter for the CPU time used
+         * @return the CPU time (ns) this building has used, wall time if the JVM cannot measure CPU time
+         */
+        public long getCpuTime(){
+            return this.cpuTime;
+        }
+
+        /**
+         * getter for the number of slices run
+         * @return the number of turns this building has had
+         */
+        public long getSlices(){
+            return this.slices;
+        }
+
+        /**
+         * decide whether this building has been stopped
+         * @return true if removed from its host or failed
+         */
+        public boolean isStopped(){
+            return this.stopped;
+        }
+    }
+
+    /// the most events fired between two looks at the CPU clock
+    private static final int SLICE_EVENTS = 256;
+
+    /// the carrier threads
+    private final ForkJoinPool pool;
+    /// the CPU time (ns) a shard may use in one turn
+    private final long quantum;
+    /// measures the CPU time of the carrier threads, null to measure wall time instead
+    private final ThreadMXBean cpuClock;
+    /// the hosted buildings
+    private final CopyOnWriteArrayList<Shard> shards;
+    /// the shards waiting for a turn, first come first served
+    private final ConcurrentLinkedQueue<Shard> ready;
+    /// the number of shards waiting or running
+    private int active;
+
+    /**
+     * create a host with one carrier thread per core and turns of 2 ms
+     */
+    public BuildingHost(){
+        this(Runtime.getRuntime().availableProcessors(), 2000000);
+    }
+
+    /**
+     * create a host
+     * @param threads the number of carrier threads, all cores if 0 or less
+     * @param quantumNanos the CPU time (ns) a building may use in one turn
+     */
+    public BuildingHost(int threads, long quantumNanos){
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+        this.quantum = Math.max(1, quantumNanos);
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        this.cpuClock = mx.isCurrentThreadCpuTimeSupported() ? mx : null;
+        if (this.cpuClock != null && !this.cpuClock.isThreadCpuTimeEnabled())
+            this.cpuClock.setThreadCpuTimeEnabled(true);
+        this.shards = new CopyOnWriteArrayList<>();
+        this.ready = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * host a new building, which does nothing until run
+     * @param name the name shown in reports
+     * @param levs the total levels of the building
+     * @param elevs the number of elevators
+     * @param cap the capacity of each elevator
+     * @param strategy the index of its dispatching strategy, e.g. one in Controller.DispatchingStrategy
+     * @param seed the seed of its controller's random decisions
+     * @return the shard, whose controller may be set up further, e.g. given traffic, before running
+     */
+    public Shard addBuilding(String name, int levs, int elevs, int cap, int strategy, long seed){
+        Controller c = new Controller(seed);
+        Simulation sim = new Simulation();
+        c.createBuilding(levs, elevs, cap, sim);
+        c.setStrategy(strategy);
+        Shard s = new Shard(name, c, sim);
+        this.shards.add(s);
+        return s;
+    }
+
+    /**
+     * stop a building and forget it, the slice it may be running is finished first
+     * @param s the shard
+     */
+    public void removeBuilding(Shard s){
+        s.stopped = true;
+        s.controller.stopThread();
+        this.shards.remove(s);
+    }
+
+    /**
+     * getter for the hosted buildings
+     * @return the shards, in the order they were added
+     */
+    public List<Shard> getShards(){
+        return new ArrayList<>(this.shards);
+    }
+
+    /**
+     * let a building run until some virtual time, on its turns among the others; returns at once
+     * @param s the shard
+     * @param endTime the virtual time (ms) to run until, ignored if it has been asked to run further
+     */
+    public void advance(Shard s, long endTime){
+        synchronized (s){
+            s.endTime = Math.max(s.endTime, endTime);
+            if (s.queued || s.stopped)
+                return;
+            s.queued = true;
+        }
+        synchronized (this){
+            ++this.active;
+        }
+        this.enqueue(s);
+    }
+
+    /**
+     * run every building until some virtual time, and wait until all are there
+     * @param endTime the virtual time (ms)
+     */
+    public void runUntil(long endTime){
+        for (Shard s : this.shards)
+            this.advance(s, endTime);
+        this.awaitIdle();
+    }
+
+    /**
+     * wait until no building is waiting for a turn or running
+     */
+    public synchronized void awaitIdle(){
+        try {
+            while (this.active > 0)
+                this.wait();
+        }
+        catch (InterruptedException e){
+            Log.warn(Log.Category.Controller, "BuildingHost: interrupted while waiting!");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * stop every building and the carrier threads
+     */
+    public void shutdown(){
+        for (Shard s : this.shards)
+            this.removeBuilding(s);
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * put a shard at the back of the line and have a carrier thread take a turn, there is one turn per shard in line
+     * @param s the shard
+     */
+    private void enqueue(Shard s){
+        this.ready.add(s);
+        this.pool.execute(this::runTurn);
+    }
+
+    /**
+     * give the first shard in line its turn, then put it back in line if it still has work
+     */
+    private void runTurn(){
+        Shard s = this.ready.poll();
+        if (s == null)
+            return;
+        long start = this.cpuNow();
+        boolean more = false;
+        try {
+            long end;
+            synchronized (s){
+                end = s.endTime;
+            }
+            do {
+                more = !s.stopped && s.simulation.runUntil(end, SLICE_EVENTS);
+            } while (more && this.cpuNow() - start < this.quantum);
+        }
+        catch (RuntimeException e){
+            Log.error(Log.Category.Controller, "BuildingHost: %s failed and is stopped: %s", s.name, e);
+            s.stopped = true;
+        }
+        s.cpuTime += this.cpuNow() - start;
+        ++s.slices;
+        synchronized (s){
+            // it may have been asked to run further during its turn, unless its simulation was stopped, e.g. by its controller
+            if (!more && !s.stopped && !s.simulation.isStopped() && s.simulation.now() < s.endTime)
+                more = true;
+            if (!more)
+                s.queued = false;
+        }
+        if (more){
+            this.enqueue(s);
+            return;
+        }
+        synchronized (this){
+            if (--this.active == 0)
+                this.notifyAll();
+        }
+    }
+
+    /**
+     * read the clock by which turns are timed
+     * @return the CPU time (ns) of the current thread, or the wall time if it cannot be measured
+     */
+    private long cpuNow(){
+        return this.cpuClock != null ? this.cpuClock.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * print the time, work and results of each building as a table
+     * @param out where to print
+     */
+    public void print(PrintStream out){
+        long total = 0;
+        for (Shard s : this.shards)
+            total += s.cpuTime;
+        out.printf("%-16s%-20s%12s%14s%10s%8s%10s%16s\n", "building", "strategy", "time (s)", "events", "CPU (ms)", "CPU %",
+                "turns", "mean wait (ms)");
+        for (Shard s : this.shards){
+            JourneyStats js = s.controller.getMetrics().getAll();
+            out.printf("%-16s%-20s%12.0f%14d%10.0f%8.1f%10d%16.0f\n", s.name, s.controller.getStrategy().getName(),
+                    s.simulation.now() / 1000.0, s.simulation.getFiredEvents(), s.cpuTime / 1e6,
+                    total == 0 ? 0 : 100.0 * s.cpuTime / total, s.slices, js.getWaitTime().getMean());
+        }
+    }
+
+    /**
+     * host a portfolio of buildings headless, the last one much taller and busier than the others
+     * usage: BuildingHost [buildings] [threads] [hours]
+     * @param args the arguments
+     */
+    public static void main(String[] args){
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        double hours = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+        PrintStream out = System.out;
+        Log.setLevel(Log.Level.Off);
+        BuildingHost host = new BuildingHost(threads, 2000000);
+        long duration = (long) (hours * 3600000);
+        for (int i = 0; i < n; ++i){
+            boolean hot = i == n - 1;
+            int levs = hot ? 200 : 20;
+            int elevs = hot ? 40 : 4;
+            Shard s = host.addBuilding((hot ? "hot #" : "site #") + (i + 1), levs, elevs, 10, i % 4, i + 1);
+            TrafficGenerator gen = new TrafficGenerator(levs, i + 1);
+            gen.addPhase(duration, TrafficGenerator.Pattern.InterFloor, 6.0 * elevs);
+            s.getController().addTraffic(gen);
+        }
+        out.printf("%d buildings on %d threads, %.1f hours each\n", n, host.pool.getParallelism(), hours);
+        long start = System.nanoTime();
+        host.runUntil(duration);
+        host.print(out);
+        out.printf("(%.1f s)\n", (System.nanoTime() - start) / 1e9);
+        host.shutdown();
+    }
+}
@@ -0,0 +1,21 @@
+package cn.leonwong.ElevatorSimulator;
+
+/**
+ * what the controller needs from a view, so that the controller and the models run without JavaFX
+ */
+public interface BuildingView {
+    /**
+     * re-draw an elevator at some level
+     * @param index the index of the elevator
+     * @param lev the new level the elevator is at
+     */
+    void moveElevator(int index, int lev);
+
+    /**
+     * show how many passengers are waiting at some level, by default nothing is shown
+     * @param lev the level
+     * @param count the number of passengers waiting
+     */
+    default void showWaiting(int lev, int count){
+    }
+}
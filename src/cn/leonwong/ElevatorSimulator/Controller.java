@@ -1,49 +1,139 @@
 package cn.leonwong.ElevatorSimulator;
 
+import cn.leonwong.ElevatorSimulator.Model.ArrivalSource;
+import cn.leonwong.ElevatorSimulator.Model.BatchAssigner;
 import cn.leonwong.ElevatorSimulator.Model.Building;
+import cn.leonwong.ElevatorSimulator.Model.BuildingSnapshot;
+import cn.leonwong.ElevatorSimulator.Model.DestinationControlStrategy;
+import cn.leonwong.ElevatorSimulator.Model.DispatchStrategy;
 import cn.leonwong.ElevatorSimulator.Model.Elevator;
+import cn.leonwong.ElevatorSimulator.Model.ElevatorScheduler;
+import cn.leonwong.ElevatorSimulator.Model.FloorLocks;
+import cn.leonwong.ElevatorSimulator.Model.HallQueue;
+import cn.leonwong.ElevatorSimulator.Model.IngestQueue;
+import cn.leonwong.ElevatorSimulator.Model.EventRecorder;
+import cn.leonwong.ElevatorSimulator.Model.JourneyExporter;
+import cn.leonwong.ElevatorSimulator.Model.JourneyMetrics;
+import cn.leonwong.ElevatorSimulator.Model.LiveMetrics;
+import cn.leonwong.ElevatorSimulator.Model.LoadBalancingStrategy;
+import cn.leonwong.ElevatorSimulator.Model.Log;
 import cn.leonwong.ElevatorSimulator.Model.Message;
+import cn.leonwong.ElevatorSimulator.Model.MessageBus;
+import cn.leonwong.ElevatorSimulator.Model.ParkingPlanner;
 import cn.leonwong.ElevatorSimulator.Model.Passenger;
+import cn.leonwong.ElevatorSimulator.Model.PowerSavingStrategy;
+import cn.leonwong.ElevatorSimulator.Model.Simulation;
+import cn.leonwong.ElevatorSimulator.Model.SpeedFirstStrategy;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Random;
 import java.util.Vector;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * a thread controls all the models
  */
-public class Controller extends Thread {
+public class Controller implements Runnable {
     /**
-     * an enum for dispathching strategies
+     * an enum for dispathching strategies, i.e. their indices in the registered strategies
      */
     public static class DispatchingStrategy{
         public static final int SpeedFirst = 0;
         public static final int LoadBalancing = 1;
         public static final int PowerSaving = 2;
+        public static final int DestinationControl = 3;
     }
+    /// the registered strategies, the built-in ones come first
+    private ArrayList<DispatchStrategy> strategies;
     /// the current strategy
-    private int strategy;
+    private DispatchStrategy strategy;
+    /// the costs of each elevator, reused by every dispatch
+    private int[] costs;
+    /// used to break ties between elevators and to place them randomly
+    private Random random;
+    /// how long (ms) hall calls are collected before being assigned jointly, 0 to assign each call at once
+    private long batchWindow;
+    /// the hall calls collected in the current window
+    private BatchAssigner batch;
+    /// learns where hall calls come from and sends idle elevators there, null if idle elevators stay where they stop
+    private volatile ParkingPlanner parking;
+    /// the length (ms) of the time-of-day buckets in which parking learns the demand
+    private static final long PARKING_BUCKET = 900000;
+    /// after how many days the demand learned for parking counts half as much
+    private static final double PARKING_HALF_LIFE = 7;
+    /// ends the windows and feeds workloads when elevators run on threads
+    private ScheduledExecutorService timer;
+    /// the id of the next passenger, taken by whichever thread places a hall call
+    private final AtomicLong nextPassengerId;
+    /// the calls added by addPassengers, waiting to be dispatched
+    private volatile IngestQueue ingest;
+    /// the most calls addPassengers may have waiting at once
+    private static final int INGEST_CAPACITY = 65536;
+    /// the packed calls taken from the ingest queue in one batch, used by the thread dispatching them
+    private final int[] ingestBuffer = new int[1024];
+    /// dispatches the calls of the ingest queue when elevators run on threads, null until needed
+    private Thread ingestThread;
+    /// wait, ride and journey times of the passengers who have arrived
+    private JourneyMetrics metrics;
+    /// rolling stats for a dashboard, null until asked for
+    private volatile LiveMetrics liveMetrics;
+    /// records every message, null when not recording
+    private volatile EventRecorder recorder;
+    /// writes every completed journey, null when not exporting
+    private volatile JourneyExporter exporter;
+    /// the largest number of messages handled in one drain
+    private static final int MESSAGE_BATCH = 256;
     /// message center
-    private Vector<Message> messageCenter;
-    /// an object trefering to view
-    private View view;
+    private MessageBus messageCenter;
+    /// handles each message drained from the message center
+    private MessageBus.Handler messageHandler = this::handleMessage;
+    /// an object trefering to view, null when running headless
+    private BuildingView view;
     /// the controller's thread
     private Thread t;
     /// denote the building
     private Building building;
+    /// the simulation driving the building, null if elevators run on their own threads
+    private Simulation simulation;
+    /// the workloads being fed, so that those reading files can be closed when this controller stops
+    private final ArrayList<ArrivalSource> traffic = new ArrayList<>();
 
     /**
      * default constructor, set strategy to "Speed First" and thread running
      */
     public Controller(){
-        this.strategy = DispatchingStrategy.SpeedFirst;
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * create a controller whose random decisions are reproducible
+     * @param seed the seed of the random generator
+     */
+    public Controller(long seed){
+        this.strategies = new ArrayList<>();
+        this.strategies.add(new SpeedFirstStrategy());
+        this.strategies.add(new LoadBalancingStrategy());
+        this.strategies.add(new PowerSavingStrategy());
+        this.strategies.add(new DestinationControlStrategy());
+        this.strategy = this.strategies.get(DispatchingStrategy.SpeedFirst);
+        this.costs = new int[0];
+        this.random = new Random(seed);
+        this.batchWindow = 0;
+        this.batch = new BatchAssigner();
+        this.nextPassengerId = new AtomicLong();
         this.stop = false;
     }
 
     /**
      * start this thread
      */
-    @Override
     public void start(){
         if (this.t == null){
             this.t = new Thread(this, "Controller");
@@ -56,44 +146,89 @@ public class Controller extends Thread {
      */
     @Override
     public void run(){
+        // a simulated building is driven by its simulation, which drains messages after each event
+        if (this.simulation != null){
+            this.simulation.run();
+            return;
+        }
         while (!this.stop){
             if (this.messageCenter == null){
                 try {
                     Thread.sleep(500);
                 }
                 catch (InterruptedException e){
-                    System.out.println("Message Center is NULL !! And sleep INTERRUPTED!!");
+                    Log.warn(Log.Category.Controller, "Message Center is NULL !! And sleep INTERRUPTED!!");
                 }
-                System.out.println("Message Center not initialized!");
+                Log.warn(Log.Category.Controller, "Message Center not initialized!");
                 continue;
             }
-            while (!this.messageCenter.isEmpty()){
-                Message tmp = this.messageCenter.firstElement();
-                if (tmp != null) {
-                    if (tmp.mode == Message.passengerLeaveElevator)
-                        System.out.printf("Controller: A passenger left elevator #%d at #%d floor.\n", tmp.destElevator, tmp.destLevel);
-                    else if (tmp.mode == Message.passengerEnterElevator)
-                        System.out.printf("Controller: A passenger heading for #%d floor entered elevator #%d.\n", tmp.destLevel, tmp.destElevator);
-                    else if (tmp.mode == Message.elevatorChangeFloor) {
-                        System.out.printf("Controller: Elevator #%d goes to #%d floor.\n", tmp.destElevator, tmp.destLevel);
-                        this.view.moveElevator(tmp.destElevator, tmp.destLevel);
-                    }
-                    else if (tmp.mode == Message.elevatorIsIdle)
-                        System.out.printf("Controller: Elevator #%d is idle.\n", tmp.destElevator);
-                    else
-                        System.out.println("Controller received wrong message!");
-                }
-                this.messageCenter.remove(0);
+            // sleep (as the bus's wait strategy decides) until some elevator posts a message
+            if (this.messageCenter.drain(this.messageHandler, MESSAGE_BATCH) == 0)
+                this.messageCenter.await();
+        }
+    }
 
-            }
+    /**
+     * handle all the messages in the message center
+     */
+    public void processMessages(){
+        int drained;
+        do {
+            drained = this.messageCenter.drain(this.messageHandler, MESSAGE_BATCH);
+        } while (drained == MESSAGE_BATCH);
+    }
+
+    /**
+     * dispatch the calls added by addPassengers, then handle the messages, after every event of a simulation
+     */
+    private void afterEvent(){
+        IngestQueue q = this.ingest;
+        if (q.size() > 0)
+            q.drain(this::placeHallCall, this.ingestBuffer);
+        this.processMessages();
+    }
+
+    /**
+     * handle a message from an elevator
+     * @param tmp the message
+     */
+    private void handleMessage(Message tmp){
+        EventRecorder rec = this.recorder;
+        if (rec != null)
+            rec.record(tmp);
+        if (tmp.mode == Message.passengerLeaveElevator) {
+            Log.debug(Log.Category.Controller, "A passenger left elevator #%d at #%d floor.", tmp.destElevator, tmp.destLevel);
+            this.metrics.record(tmp.pass);
+            LiveMetrics live = this.liveMetrics;
+            if (live != null)
+                live.record(tmp.pass);
+            JourneyExporter exp = this.exporter;
+            if (exp != null)
+                exp.record(tmp.pass);
+        }
+        else if (tmp.mode == Message.passengerEnterElevator) {
+            Log.debug(Log.Category.Controller, "A passenger heading for #%d floor entered elevator #%d.", tmp.destLevel, tmp.destElevator);
+            if (this.view != null)
+                this.view.showWaiting(tmp.pass.origin, this.building.levelList.get(tmp.pass.origin).size());
+        }
+        else if (tmp.mode == Message.elevatorChangeFloor) {
+            Log.debug(Log.Category.Controller, "Elevator #%d goes to #%d floor.", tmp.destElevator, tmp.destLevel);
+            if (this.view != null)
+                this.view.moveElevator(tmp.destElevator, tmp.destLevel);
+        }
+        else if (tmp.mode == Message.elevatorIsIdle) {
+            Log.debug(Log.Category.Controller, "Elevator #%d is idle.", tmp.destElevator);
+            this.parkIdleElevator(tmp.destElevator);
         }
+        else
+            Log.warn(Log.Category.Controller, "Controller received wrong message!");
     }
 
     /**
      * setter for message center
      * @param mc the message center
      */
-    public void setMessageCenter(Vector<Message> mc){
+    public void setMessageCenter(MessageBus mc){
         this.messageCenter = mc;
     }
 
@@ -101,7 +236,7 @@ public class Controller extends Thread {
      * setter fr view
      * @param v the view
      */
-    public void setView(View v){
+    public void setView(BuildingView v){
         this.view = v;
     }
 
@@ -111,8 +246,255 @@ public class Controller extends Thread {
      * @param to the destination of the passenger
      */
     public void addPassenger(int from, int to){
-        this.building.levelList.get(from).add(new Passenger(to));
-        this.arrangeForElevator(from, to);
+        // in a simulation, the passenger arrives as a hall call at the current virtual time
+        if (this.simulation != null)
+            this.simulation.scheduleHallCall(from, to);
+        else {
+            // the caller, e.g. the JavaFX thread, never waits for dispatching
+            this.startIngest();
+            if (!this.ingest.offer(from, to))
+                Log.warn(Log.Category.Controller, "A passenger from #%d to #%d floor was rejected!", from, to);
+        }
+    }
+
+    /**
+     * add many passengers at once, e.g. from a load generator, without waiting for them to be dispatched
+     * @param from the starting level of each passenger
+     * @param to the destination of each passenger
+     * @return the number of passengers accepted, see addPassengers(int[], int[], int, long)
+     */
+    public int addPassengers(int[] from, int[] to){
+        return this.addPassengers(from, to, Math.min(from.length, to.length), 0);
+    }
+
+    /**
+     * add many passengers at once, in order, to be dispatched on another thread, or in a simulation
+     * at the virtual time of its next event
+     * If the dispatcher falls behind, at most INGEST_CAPACITY calls wait; the others are rejected, once the wait is over.
+     * @param from the starting level of each passenger
+     * @param to the destination of each passenger
+     * @param count the number of passengers, from the start of the arrays
+     * @param waitMs how long (ms) to wait in all for room when too many calls are waiting, 0 not to wait
+     * @return the number of passengers accepted, the others have wrong levels or found no room
+     */
+    public int addPassengers(int[] from, int[] to, int count, long waitMs){
+        if (this.simulation == null)
+            this.startIngest();
+        return this.ingest.offer(from, to, count, waitMs);
+    }
+
+    /**
+     * getter for the queue of calls added by addPassengers
+     * @return the queue, whose counts of accepted and rejected calls may be read at any time
+     */
+    public IngestQueue getIngestQueue(){
+        return this.ingest;
+    }
+
+    /**
+     * start the thread dispatching the calls of the ingest queue, if not started yet
+     */
+    private synchronized void startIngest(){
+        if (this.ingestThread != null)
+            return;
+        this.ingestThread = new Thread(() -> {
+            while (!this.stop){
+                IngestQueue q = this.ingest;
+                try {
+                    if (this.simulation != null || q.drain(this::placeHallCall, this.ingestBuffer) == 0)
+                        q.await(100);
+                }
+                catch (InterruptedException e){
+                    return;
+                }
+            }
+        }, "Passenger Ingest");
+        this.ingestThread.setDaemon(true);
+        this.ingestThread.start();
+    }
+
+    /**
+     * put a new passenger at its level and arrange for an elevator
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     */
+    private void placeHallCall(int from, int to){
+        Passenger pass = new Passenger(this.nextPassengerId.getAndIncrement(), from, to, this.building.getScheduler().now());
+        pass.strategy = this.strategy.getName();
+        ParkingPlanner park = this.parking;
+        if (park != null)
+            park.recordCall(from, to, pass.requestTime);
+        Elevator assigned = null;
+        // destination control assigns the passenger before any elevator can see it waiting
+        if (this.strategy.assignsPassengers()){
+            assigned = this.chooseElevator(from, to);
+            assigned.assignPassenger(pass);
+        }
+        int waiting;
+        // only hold the level's lock for the list operation, never while dispatching
+        this.building.getLocks().lock(from);
+        try {
+            // recorded under the lock, so startRecording either sees the passenger waiting or sees it recorded
+            EventRecorder rec = this.recorder;
+            if (rec != null)
+                rec.record(new Message(Message.passengerArrive, 0, from, pass, pass.requestTime));
+            this.building.levelList.get(from).add(pass);
+            waiting = this.building.levelList.get(from).size();
+        }
+        finally {
+            this.building.getLocks().unlock(from);
+        }
+        if (this.view != null)
+            this.view.showWaiting(from, waiting);
+        if (assigned != null)
+            assigned.addDestination(from);
+        else if (this.batchWindow > 0)
+            this.collectForBatch(from, to);
+        else
+            this.arrangeForElevator(from, to);
+    }
+
+    /**
+     * send an idle elevator to where the learned demand wants it to wait, if parking is on
+     * @param index the index of the elevator
+     */
+    private void parkIdleElevator(int index){
+        ParkingPlanner park = this.parking;
+        if (park == null)
+            return;
+        Elevator e = this.building.elevatorList.get(index - 1);
+        int lev = park.park(this.building, e, this.building.getScheduler().now());
+        if (lev != 0){
+            Log.debug(Log.Category.Controller, "Elevator #%d parks at #%d floor.", index, lev);
+            e.addDestination(lev);
+        }
+    }
+
+    /**
+     * add a hall call to the current window, starting a window if there is none
+     * @param from the starting level
+     * @param to the destination level
+     */
+    private synchronized void collectForBatch(int from, int to){
+        if (!this.batch.add(from, to))
+            return;
+        if (this.simulation != null)
+            this.simulation.scheduleTask(this.simulation.now() + this.batchWindow, this::assignBatch);
+        else
+            this.getTimer().schedule(this::assignBatch, this.batchWindow, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * assign all the hall calls of the current window jointly
+     */
+    private synchronized void assignBatch(){
+        if (this.costs.length < this.building.getElevators())
+            this.costs = new int[this.building.getElevators()];
+        this.batch.flush(this.building, this.strategy, this.costs, this.random);
+    }
+
+    /**
+     * getter for the timer used when elevators run on threads, created when first used
+     * @return the timer
+     */
+    private synchronized ScheduledExecutorService getTimer(){
+        if (this.timer == null)
+            this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Controller Timer");
+                t.setDaemon(true);
+                return t;
+            });
+        return this.timer;
+    }
+
+    /**
+     * feed the passengers of a workload or a recorded trace into the building as they arrive, starting now
+     * Only the next arrival is drawn and scheduled at any time, so a workload of any length takes fixed memory.
+     * @param gen the workload, e.g. a TrafficGenerator or a PassengerTrace, made for as many levels as the building has
+     */
+    public void addTraffic(ArrivalSource gen){
+        synchronized (this.traffic){
+            this.traffic.add(gen);
+        }
+        long start = this.simulation != null ? this.simulation.now() : System.currentTimeMillis();
+        this.scheduleArrival(gen, start);
+    }
+
+    /**
+     * draw the next arrival of a workload and schedule its hall call
+     * @param gen the workload
+     * @param start the time (virtual time in a simulation, wall time otherwise) the workload started at
+     */
+    private void scheduleArrival(ArrivalSource gen, long start){
+        if (this.stop || !gen.next()){
+            // a trace cut off by stopping still holds its file
+            this.endTraffic(gen, this.stop);
+            return;
+        }
+        int from = gen.getFrom();
+        int to = gen.getTo();
+        Runnable arrival = () -> {
+            this.placeHallCall(from, to);
+            this.scheduleArrival(gen, start);
+        };
+        if (this.simulation != null)
+            this.simulation.scheduleTask(start + gen.getTime(), arrival);
+        else
+            this.getTimer().schedule(arrival, start + gen.getTime() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * forget a workload which is over, closing it if asked to and it holds a file
+     * @param gen the workload
+     * @param close true to close it
+     */
+    private void endTraffic(ArrivalSource gen, boolean close){
+        synchronized (this.traffic){
+            this.traffic.remove(gen);
+        }
+        if (close && gen instanceof Closeable){
+            try {
+                ((Closeable) gen).close();
+            }
+            catch (IOException e){
+                Log.warn(Log.Category.Controller, "cannot close a workload: %s", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * setter for the batching window
+     * @param ms how long (ms, virtual time in a simulation) hall calls are collected before being assigned jointly, 0 to assign each call at once
+     */
+    public synchronized void setBatchWindow(long ms){
+        this.batchWindow = ms;
+    }
+
+    /**
+     * turn predictive parking on or off: idle elevators then wait where hall calls are expected at this time of day
+     * The demand is learned afresh when parking is turned on, and kept across new buildings of the same height.
+     * @param on true to park idle elevators, false to leave them where they stop
+     */
+    public void setIdleParking(boolean on){
+        this.parking = on ? new ParkingPlanner(this.getLevels(), PARKING_BUCKET, PARKING_HALF_LIFE) : null;
+    }
+
+    /**
+     * keep parking on for a new building, learning afresh if its height differs
+     * @param levs \#levels of the new building
+     */
+    private void keepParking(int levs){
+        ParkingPlanner park = this.parking;
+        if (park != null && park.getDemand().getLevels() != levs)
+            this.parking = new ParkingPlanner(levs, PARKING_BUCKET, PARKING_HALF_LIFE);
+    }
+
+    /**
+     * getter for the parking planner
+     * @return the planner, null if parking is off
+     */
+    public ParkingPlanner getParkingPlanner(){
+        return this.parking;
     }
 
     /**
@@ -130,8 +512,210 @@ public class Controller extends Thread {
      * @param cap the capacity of each elevator
      */
     public void createBuilding(int levs, int elevs, int cap){
-        this.building = new Building(levs, elevs, cap);
+        this.createBuilding(levs, elevs, cap, null);
+    }
+
+    /**
+     * create a new building whose elevators run on a scheduler
+     * @param levs the total levels of this building
+     * @param elevs the numbers of elevators of this building
+     * @param cap the capacity of each elevator
+     * @param sched a Simulation to drive the building by events, a scheduler running elevators on threads, or null for one thread per elevator
+     */
+    public void createBuilding(int levs, int elevs, int cap, ElevatorScheduler sched){
+        Simulation sim = sched instanceof Simulation ? (Simulation) sched : null;
+        this.simulation = sim;
+        if (sim != null){
+            sim.setHallCallListener(this::placeHallCall);
+            sim.setEventHook(this::afterEvent);
+        }
+        this.building = new Building(levs, elevs, cap, sched);
         this.messageCenter = this.building.messageCenter;
+        this.nextPassengerId.set(0);
+        this.ingest = new IngestQueue(levs, INGEST_CAPACITY);
+        this.metrics = new JourneyMetrics(levs);
+        this.keepParking(levs);
+    }
+
+    /**
+     * start keeping rolling stats of the building, sampled every interval until the controller is stopped
+     * In a simulation the samples are events too, so a flat-out run() never runs out of events; use runUntil().
+     * @param interval the time (ms, virtual time in a simulation) between two samples
+     * @param points the number of samples kept
+     * @return the stats, which may be read while running
+     */
+    public LiveMetrics startLiveMetrics(long interval, int points){
+        LiveMetrics live = new LiveMetrics(this.getLevels(), this.getElevators(), interval, points);
+        this.liveMetrics = live;
+        if (this.simulation != null)
+            this.scheduleSample(live, this.simulation.now() + live.getInterval());
+        else
+            this.getTimer().scheduleAtFixedRate(() -> this.sample(live), live.getInterval(), live.getInterval(), TimeUnit.MILLISECONDS);
+        return live;
+    }
+
+    /**
+     * getter for the rolling stats
+     * @return the stats, null if not started
+     */
+    public LiveMetrics getLiveMetrics(){
+        return this.liveMetrics;
+    }
+
+    /**
+     * take a sample at some virtual time and schedule the next one, as long as the stats are in use
+     * @param live the stats
+     * @param at the virtual time
+     */
+    private void scheduleSample(LiveMetrics live, long at){
+        this.simulation.scheduleTask(at, () -> {
+            if (this.stop || this.liveMetrics != live)
+                return;
+            live.sample(this.building, at);
+            this.scheduleSample(live, at + live.getInterval());
+        });
+    }
+
+    /**
+     * take a sample now, when elevators run on threads
+     * @param live the stats
+     */
+    private void sample(LiveMetrics live){
+        if (this.liveMetrics == live)
+            live.sample(this.building, this.building.getScheduler().now());
+    }
+
+    /**
+     * save a snapshot of the running building, which restoreSnapshot can resume later or many times over
+     * @param file the file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void saveSnapshot(Path file) throws IOException{
+        BuildingSnapshot.save(this.building, this.nextPassengerId.get(), file);
+    }
+
+    /**
+     * replace the building with one restored from a snapshot, where it was when saved
+     * The journey metrics start afresh, and workloads and batching windows have to be set up again.
+     * @param file the file
+     * @param sched a new Simulation, whose clock is moved to the time of the snapshot, a scheduler running elevators on threads, or null for one thread per elevator
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public void restoreSnapshot(Path file, ElevatorScheduler sched) throws IOException{
+        Simulation sim = sched instanceof Simulation ? (Simulation) sched : null;
+        BuildingSnapshot snap = BuildingSnapshot.load(file, sched);
+        this.simulation = sim;
+        if (sim != null){
+            sim.setHallCallListener(this::placeHallCall);
+            sim.setEventHook(this::afterEvent);
+        }
+        this.building = snap.getBuilding();
+        this.messageCenter = this.building.messageCenter;
+        this.nextPassengerId.set(snap.getNextPassengerId());
+        this.ingest = new IngestQueue(this.building.getLevels(), INGEST_CAPACITY);
+        this.metrics = new JourneyMetrics(this.building.getLevels());
+        this.keepParking(this.building.getLevels());
+    }
+
+    /**
+     * record every message from now on into a file, which can be replayed by a Replayer
+     * @param file the file, replaced if it exists
+     * @throws IOException if the file cannot be created
+     */
+    public void startRecording(Path file) throws IOException{
+        this.stopRecording();
+        EventRecorder rec = new EventRecorder(file, this.getLevels(), this.getElevators());
+        // the replay starts from where the elevators and the waiting passengers are now
+        long now = this.building.getScheduler().now();
+        for (Elevator e : this.building.elevatorList)
+            rec.record(new Message(Message.elevatorChangeFloor, e.getIndex(), e.getLevel(), null, now));
+        FloorLocks locks = this.building.getLocks();
+        locks.lockAll();
+        try {
+            for (int lev = 1; lev <= this.getLevels(); ++lev)
+                for (Passenger pass : this.building.levelList.get(lev))
+                    rec.record(new Message(Message.passengerArrive, 0, lev, pass, now));
+            // published under the locks, so no passenger is placed between the two
+            this.recorder = rec;
+        }
+        finally {
+            locks.unlockAll();
+        }
+    }
+
+    /**
+     * stop recording and close the file, if recording
+     */
+    public void stopRecording(){
+        EventRecorder rec = this.recorder;
+        this.recorder = null;
+        if (rec == null)
+            return;
+        try {
+            rec.close();
+        }
+        catch (IOException e){
+            Log.error(Log.Category.Controller, "cannot close the recording: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * write every journey completed from now on into a file, and a CSV file if asked to, for analysis after the run
+     * @param file the binary file, replaced if it exists, which JourneyExporter.main can summarize or convert to CSV
+     * @param csvFile the CSV file, replaced if it exists, null not to write one
+     * @throws IOException if a file cannot be created
+     */
+    public void startExport(Path file, Path csvFile) throws IOException{
+        this.stopExport();
+        this.exporter = new JourneyExporter(file, csvFile);
+    }
+
+    /**
+     * stop exporting, write the journeys left and close the files, if exporting
+     */
+    public void stopExport(){
+        JourneyExporter exp = this.exporter;
+        this.exporter = null;
+        if (exp == null)
+            return;
+        try {
+            exp.close();
+        }
+        catch (IOException e){
+            Log.error(Log.Category.Controller, "cannot finish the journey export: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * getter for the simulation
+     * @return the simulation driving the building, null if elevators run on their own threads
+     */
+    public Simulation getSimulation(){
+        return this.simulation;
+    }
+
+    /**
+     * getter for the number of passengers
+     * @return the number of passengers who have called for an elevator in this building
+     */
+    public long getPassengerCount(){
+        return this.nextPassengerId.get();
+    }
+
+    /**
+     * getter for the journey metrics, which may be queried while running
+     * @return the wait, ride and journey times of the passengers who have arrived
+     */
+    public JourneyMetrics getMetrics(){
+        return this.metrics;
+    }
+
+    /**
+     * print the journey metrics, e.g. at the end of a run
+     * @param out where to print
+     */
+    public void dumpMetrics(PrintStream out){
+        this.metrics.dump(out);
     }
 
     /**
@@ -164,146 +748,85 @@ public class Controller extends Thread {
      * @param to the destination level
      */
     private void arrangeForElevator(int from, int to){
-        // if the strategy is Speed First...
-        if (this.strategy == DispatchingStrategy.SpeedFirst){
-            // create an ArrayList to take down estimated time of elevator arrival
-            ArrayList<Integer> waitingTime = new ArrayList<>();
-            for (Elevator e : this.building.elevatorList){
-                // if the elevator is full...
-                if (e.isFull())
-                    // add a maxInteger to the time list, i.e. ignoring this elevator
-                    waitingTime.add(Integer.MAX_VALUE);
-                // if the elevator's direction is the same as the passenger's...
-                else if (e.getDirection() * (to - from) >= 0) {
-                    // and the elevator can arrive at the passenger's level without changing ite direction...
-                    if ((e.getDirection() >= Elevator.Direction.changingDirection && from >= e.getLevel()) ||
-                            (e.getDirection() <= Elevator.Direction.changingDirection && from <= e.getLevel()))
-                        // the estimated time is just the floors which need a stop between
-                        waitingTime.add(Math.abs(from - e.getLevel()) + e.getDestinationSize());
-                    else
-                        waitingTime.add(2 * this.getLevels() - Math.abs(from - e.getLevel()));
-                }
-                // else the elevator will change its direction once and pick up the passenger
-                else {
-                    if (e.getDirection() == Elevator.Direction.Upward)
-                        waitingTime.add(e.getMaxDestination() * 2 - e.getLevel() - from + 2 + e.getDestinationSize());
-                    else if (e.getDirection() == Elevator.Direction.Downward)
-                        waitingTime.add(e.getMinDestination() + from + e.getDestinationSize());
-                }
-            }
-            // arrange for the fastest elevator
-            int fastestIndex = 0;
-            for (int i = 0; i < this.building.getElevators(); ++i){
-                if (waitingTime.get(i) < waitingTime.get(fastestIndex))
-                    fastestIndex = i;
-                else if (waitingTime.get(i).equals(waitingTime.get(fastestIndex)))
-                    if (Math.abs(new Random(System.currentTimeMillis()).nextInt() % 100) >= 50)
-                        fastestIndex = i;
-            }
-            this.building.elevatorList.get(fastestIndex).addDestination(from);
-        }
-        // if the strategy is Load Balancing...
-        // In this mode, the number of passsengers in an elevator will also "increase" the estimated time
-        else if (this.strategy == DispatchingStrategy.LoadBalancing){
-            ArrayList<Integer> waitingTime = new ArrayList<>();
-            for (Elevator e : this.building.elevatorList){
-                // if the elevator is full...
-                if (e.isFull())
-                    // add a maxInteger to the time list, i.e. ignoring this elevator
-                    waitingTime.add(Integer.MAX_VALUE);
-                    // if the elevator's direction is the same as the passenger's...
-                else if (e.getDirection() * (to - from) >= 0) {
-                    // and the elevator can arrive at the passenger's level without changing ite direction...
-                    if ((e.getDirection() >= Elevator.Direction.changingDirection && from >= e.getLevel()) ||
-                            (e.getDirection() <= Elevator.Direction.changingDirection && from <= e.getLevel()))
-                        // the estimated time is just the floors which need a stop between
-                        waitingTime.add(Math.abs(from - e.getLevel()) + e.getDestinationSize() + e.getPassengers());
-                    else
-                        waitingTime.add(2 * this.getLevels() - Math.abs(from - e.getLevel()) + e.getPassengers());
-                }
-                // else the elevator will change its direction once and pick up the passenger
-                else {
-                    if (e.getDirection() == Elevator.Direction.Upward)
-                        waitingTime.add(e.getMaxDestination() * 2 - e.getLevel() - from + 2 + e.getDestinationSize() + e.getPassengers());
-                    else if (e.getDirection() == Elevator.Direction.Downward)
-                        waitingTime.add(e.getMinDestination() + from + e.getDestinationSize() + e.getPassengers());
-                }
-            }
-            int fastestIndex = 0;
-            for (int i = 0; i < this.building.getElevators(); ++i){
-                if (waitingTime.get(i) < waitingTime.get(fastestIndex))
-                    fastestIndex = i;
-                else if (waitingTime.get(i).equals(waitingTime.get(fastestIndex)))
-                    if (Math.abs(new Random(System.currentTimeMillis()).nextInt() % 100) >= 50)
-                        fastestIndex = i;
-            }
-            this.building.elevatorList.get(fastestIndex).addDestination(from);
-        }
-        // if the strategy is Power Saving...
-        // in this mode, idle elevators will keep idle
-        else if (this.strategy == DispatchingStrategy.PowerSaving){
-            ArrayList<Integer> waitingTime = new ArrayList<>();
-            for (Elevator e : this.building.elevatorList){
-                // if the elevator is full OR IDLE
-                if (e.isFull() || e.isIdle())
-                    // add a maxInteger to the time list, i.e. ignoring this elevator
-                    waitingTime.add(Integer.MAX_VALUE);
-                    // if the elevator's direction is the same as the passenger's...
-                else if (e.getDirection() * (to - from) >= 0) {
-                    // and the elevator can arrive at the passenger's level without changing ite direction...
-                    if ((e.getDirection() >= Elevator.Direction.changingDirection && from >= e.getLevel()) ||
-                            (e.getDirection() <= Elevator.Direction.changingDirection && from <= e.getLevel()))
-                        // the estimated time is just the floors which need a stop between
-                        waitingTime.add(Math.abs(from - e.getLevel()) + e.getDestinationSize());
-                    else
-                        waitingTime.add(2 * this.getLevels() - Math.abs(from - e.getLevel()));
-                }
-                // else the elevator will change its direction once and pick up the passenger
-                else {
-                    if (e.getDirection() == Elevator.Direction.Upward)
-                        waitingTime.add(e.getMaxDestination() * 2 - e.getLevel() - from + 2 + e.getDestinationSize());
-                    else if (e.getDirection() == Elevator.Direction.Downward)
-                        waitingTime.add(e.getMinDestination() + from + e.getDestinationSize());
-                }
-            }
-            int fastestIndex = 0;
-            for (int i = 0; i < this.building.getElevators(); ++i){
-                if (waitingTime.get(i) < waitingTime.get(fastestIndex))
-                    fastestIndex = i;
-                else if (waitingTime.get(i).equals(waitingTime.get(fastestIndex)))
-                    if (Math.abs(new Random(System.currentTimeMillis()).nextInt() % 100) >= 50)
-                        fastestIndex = i;
-            }
-            // if all running elevators are full or idle...
-            if (waitingTime.get(fastestIndex) == Integer.MAX_VALUE){
-                for (int i = 0; i < this.building.getElevators(); ++i)
-                    if (this.getElevatorList().get(i).isIdle()){
-                        fastestIndex = i;
-                        break;
-                    }
-            }
-            this.building.elevatorList.get(fastestIndex).addDestination(from);
-        }
+        this.chooseElevator(from, to).addDestination(from);
+    }
+
+    /**
+     * choose an elevator for a passenger according to the dispatching strategy
+     * @param from the starting level
+     * @param to the destination level
+     * @return the chosen elevator
+     */
+    private synchronized Elevator chooseElevator(int from, int to){
+        if (this.costs.length < this.building.getElevators())
+            this.costs = new int[this.building.getElevators()];
+        int chosen = this.strategy.choose(this.building, from, to, this.costs, this.random);
+        return this.building.elevatorList.get(chosen);
     }
 
     /**
      * setter for strategy
-     * @param str the strategy
+     * @param str the index of a registered strategy, e.g. one in DispatchingStrategy
      */
     public void setStrategy(int str){
+        this.strategy = this.strategies.get(str);
+    }
+
+    /**
+     * setter for strategy
+     * @param str the strategy, which need not be registered
+     */
+    public void setStrategy(DispatchStrategy str){
         this.strategy = str;
     }
 
+    /**
+     * getter for strategy
+     * @return the current strategy
+     */
+    public DispatchStrategy getStrategy(){
+        return this.strategy;
+    }
+
+    /**
+     * register a new strategy so that it can be chosen by its index
+     * @param str the strategy
+     * @return the index of the strategy
+     */
+    public int registerStrategy(DispatchStrategy str){
+        this.strategies.add(str);
+        return this.strategies.size() - 1;
+    }
+
+    /**
+     * getter for the names of the registered strategies
+     * @return the names, in the order of their indices
+     */
+    public ArrayList<String> getStrategyNames(){
+        ArrayList<String> names = new ArrayList<>();
+        for (DispatchStrategy str : this.strategies)
+            names.add(str.getName());
+        return names;
+    }
+
+    /**
+     * reseed the random generator, so that a run can be reproduced
+     * @param seed the seed
+     */
+    public synchronized void setSeed(long seed){
+        this.random.setSeed(seed);
+    }
+
     /**
      * randomly place elevators
      */
     public void randomizeElevators(){
         for (Elevator e : this.building.elevatorList)
-            e.setLevel(Math.abs(new Random(System.currentTimeMillis()).nextInt() % (this.getLevels() - 1)) + 1);
+            e.setLevel(this.random.nextInt(this.getLevels() - 1) + 1);
     }
 
     /// denote if this thread has been ended
-    private boolean stop;
+    private volatile boolean stop;
 
     /**
      * used to stop this thread and its elevators
@@ -311,7 +834,25 @@ public class Controller extends Thread {
     public void stopThread(){
         for (Elevator e : this.building.elevatorList)
             e.stopThread();
+        if (this.simulation != null)
+            this.simulation.stop();
+        if (this.timer != null)
+            this.timer.shutdownNow();
         this.stop = true;
+        synchronized (this){
+            if (this.ingestThread != null)
+                this.ingestThread.interrupt();
+        }
+        this.stopRecording();
+        this.stopExport();
+        ArrayList<ArrivalSource> left;
+        synchronized (this.traffic){
+            left = new ArrayList<>(this.traffic);
+        }
+        for (ArrivalSource gen : left)
+            this.endTraffic(gen, true);
+        if (this.messageCenter != null)
+            this.messageCenter.wakeUp();
     }
 
     /**
@@ -324,9 +865,28 @@ public class Controller extends Thread {
 
     /**
      * getter for passenger list
-     * @return the passenger list
+     * @return the queues of passengers waiting at each level
      */
-    public Vector< Vector<Passenger> > getLevelList(){
+    public Vector<HallQueue> getLevelList(){
         return this.building.levelList;
     }
+
+    /**
+     * getter for the passengers waiting at a level, e.g. to show them
+     * @param lev the level
+     * @return a copy of them, in the order they called for an elevator
+     */
+    public ArrayList<Passenger> getWaiting(int lev){
+        ArrayList<Passenger> waiting = new ArrayList<>();
+        this.building.getLocks().lock(lev);
+        try {
+            for (Passenger pass : this.building.levelList.get(lev))
+                waiting.add(pass);
+        }
+        finally {
+            this.building.getLocks().unlock(lev);
+        }
+        waiting.sort((a, b) -> Long.compare(a.id, b.id));
+        return waiting;
+    }
 }
@@ -0,0 +1,259 @@
+package cn.leonwong.ElevatorSimulator;
+
+import cn.leonwong.ElevatorSimulator.Model.LiveMetrics;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * charts of the rolling stats of a building: throughput, wait percentiles, queues by level, and each elevator
+ * The time charts sweep from left to right like a monitor's trace: a new sample is drawn in its own column over
+ * the oldest one, so an update draws only the samples taken since the last one. Everything is redrawn only when
+ * a chart has to be rescaled.
+ */
+public class Dashboard extends Canvas {
+    /// the size of the charts
+    public static final double WIDTH = 800, HEIGHT = 620;
+    /// the width of the column of titles and scales
+    private static final double LEFT = 90;
+    /// the top and the height of each chart
+    private static final double THROUGHPUT_TOP = 10, THROUGHPUT_HEIGHT = 130;
+    private static final double WAIT_TOP = 160, WAIT_HEIGHT = 130;
+    private static final double QUEUE_TOP = 310, QUEUE_HEIGHT = 200;
+    private static final double CARS_TOP = 530, CARS_HEIGHT = 80;
+    /// queues of this many passengers or more get the darkest color
+    private static final int QUEUE_FULL_SCALE = 10;
+
+    /// the stats shown, null if none
+    private LiveMetrics metrics;
+    /// the number of the next sample to draw, -1 to redraw everything
+    private long drawn;
+    /// the throughput (per minute) at the top of its chart
+    private double throughputScale;
+    /// the wait (ms) at the top of its chart
+    private long waitScale;
+    /// the queues of a sample, by level from 1, reused by every sample
+    private int[] queueBuffer;
+
+    /**
+     * create empty charts
+     */
+    public Dashboard(){
+        super(WIDTH, HEIGHT);
+        this.setMetrics(null);
+    }
+
+    /**
+     * show other stats, from scratch
+     * @param m the stats, null to show none
+     */
+    public void setMetrics(LiveMetrics m){
+        this.metrics = m;
+        this.drawn = -1;
+        this.throughputScale = 10;
+        this.waitScale = 10000;
+        this.queueBuffer = new int[m == null ? 1 : m.getLevels() + 1];
+        this.clear();
+    }
+
+    /**
+     * draw the samples taken since the last update, cheap if there is none
+     */
+    public void update(){
+        LiveMetrics m = this.metrics;
+        if (m == null)
+            return;
+        long samples = m.getSamples();
+        if (samples == this.drawn)
+            return;
+        long from = Math.max(this.drawn, m.getOldestSample());
+        if (this.drawn < 0 || this.rescale(m, from, samples))
+            this.redraw(m, samples);
+        else {
+            for (long n = from; n < samples; ++n)
+                this.drawSample(m, n);
+        }
+        this.drawn = samples;
+        this.drawElevators(m, samples);
+    }
+
+    /**
+     * redraw all the samples kept
+     * @param m the stats
+     * @param samples the number of samples taken
+     */
+    private void redraw(LiveMetrics m, long samples){
+        this.clear();
+        for (long n = m.getOldestSample(); n < samples; ++n)
+            this.drawSample(m, n);
+    }
+
+    /**
+     * clear the charts and draw their titles and scales
+     */
+    private void clear(){
+        GraphicsContext g = this.getGraphicsContext2D();
+        g.setFill(Color.WHITE);
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        g.setFill(Color.BLACK);
+        g.setTextAlign(TextAlignment.LEFT);
+        g.fillText("Delivered", 8, THROUGHPUT_TOP + 15);
+        g.fillText("per minute", 8, THROUGHPUT_TOP + 30);
+        g.fillText(String.format("top %.0f", this.throughputScale), 8, THROUGHPUT_TOP + 55);
+        g.fillText("Wait (s)", 8, WAIT_TOP + 15);
+        g.fillText(String.format("top %.0f", this.waitScale / 1000.0), 8, WAIT_TOP + 55);
+        g.setFill(Color.DODGERBLUE);
+        g.fillText("p50", 8, WAIT_TOP + 80);
+        g.setFill(Color.DARKORANGE);
+        g.fillText("p95", 8, WAIT_TOP + 95);
+        g.setFill(Color.CRIMSON);
+        g.fillText("p99", 8, WAIT_TOP + 110);
+        g.setFill(Color.BLACK);
+        g.fillText("Queues", 8, QUEUE_TOP + 15);
+        g.fillText("by level", 8, QUEUE_TOP + 30);
+        g.fillText("Elevators", 8, CARS_TOP + 15);
+        g.setFill(Color.DODGERBLUE);
+        g.fillText("busy", 8, CARS_TOP + 35);
+        g.setFill(Color.DARKORANGE);
+        g.fillText("load", 8, CARS_TOP + 50);
+        g.setStroke(Color.LIGHTGRAY);
+        g.setLineWidth(1);
+        g.strokeRect(LEFT, THROUGHPUT_TOP, WIDTH - LEFT - 10, THROUGHPUT_HEIGHT);
+        g.strokeRect(LEFT, WAIT_TOP, WIDTH - LEFT - 10, WAIT_HEIGHT);
+        g.strokeRect(LEFT, QUEUE_TOP, WIDTH - LEFT - 10, QUEUE_HEIGHT);
+    }
+
+    /**
+     * raise the scales if some new sample would not fit
+     * @param m the stats
+     * @param from the first new sample
+     * @param to one past the last new sample
+     * @return true if a scale was raised, so everything has to be redrawn
+     */
+    private boolean rescale(LiveMetrics m, long from, long to){
+        boolean raised = false;
+        for (long n = from; n < to; ++n){
+            while (m.getThroughput(n) > this.throughputScale){
+                this.throughputScale *= 2;
+                raised = true;
+            }
+            while (m.getWait(n, 99) > this.waitScale){
+                this.waitScale *= 2;
+                raised = true;
+            }
+        }
+        return raised;
+    }
+
+    /**
+     * draw a sample in its column of each time chart, with the gap ahead of the sweep
+     * @param m the stats
+     * @param n the number of the sample
+     */
+    private void drawSample(LiveMetrics m, long n){
+        GraphicsContext g = this.getGraphicsContext2D();
+        int capacity = m.getCapacity();
+        double step = (WIDTH - LEFT - 10) / capacity;
+        int column = (int) (n % capacity);
+        double x = LEFT + column * step;
+        // wipe this column and the next, which holds the oldest sample
+        double wipe = column == capacity - 1 ? step : 2 * step;
+        g.setFill(Color.WHITE);
+        g.fillRect(x + 1, THROUGHPUT_TOP + 1, wipe, THROUGHPUT_HEIGHT - 2);
+        g.fillRect(x + 1, WAIT_TOP + 1, wipe, WAIT_HEIGHT - 2);
+        g.fillRect(x + 1, QUEUE_TOP + 1, wipe, QUEUE_HEIGHT - 2);
+        // a line from the previous sample, unless the sweep has just wrapped around
+        boolean joined = column > 0 && n > m.getOldestSample();
+        g.setLineWidth(1.5);
+        g.setStroke(Color.SEAGREEN);
+        this.drawPoint(g, joined, x, step, THROUGHPUT_TOP, THROUGHPUT_HEIGHT,
+                joined ? m.getThroughput(n - 1) / this.throughputScale : 0, m.getThroughput(n) / this.throughputScale);
+        int[] percentiles = {50, 95, 99};
+        Color[] colors = {Color.DODGERBLUE, Color.DARKORANGE, Color.CRIMSON};
+        for (int i = 0; i < percentiles.length; ++i){
+            g.setStroke(colors[i]);
+            this.drawPoint(g, joined, x, step, WAIT_TOP, WAIT_HEIGHT,
+                    joined ? (double) m.getWait(n - 1, percentiles[i]) / this.waitScale : 0,
+                    (double) m.getWait(n, percentiles[i]) / this.waitScale);
+        }
+        // a column of the heat map, the top level at the top
+        int levels = m.getLevels();
+        double row = (QUEUE_HEIGHT - 2) / levels;
+        m.copyQueues(n, this.queueBuffer);
+        for (int lev = 1; lev <= levels; ++lev){
+            int q = this.queueBuffer[lev];
+            if (q == 0)
+                continue;
+            int shade = 230 - 230 * Math.min(q, QUEUE_FULL_SCALE) / QUEUE_FULL_SCALE;
+            g.setFill(Color.rgb(255, shade, shade / 2));
+            g.fillRect(x + 1, QUEUE_TOP + QUEUE_HEIGHT - 1 - lev * row, Math.max(step, 1), Math.max(row, 1));
+        }
+        g.setLineWidth(1);
+    }
+
+    /**
+     * draw a sample of a line chart
+     * @param g where to draw
+     * @param joined whether to draw a line from the previous sample
+     * @param x the left of the sample's column
+     * @param step the width of a column
+     * @param top the top of the chart
+     * @param height the height of the chart
+     * @param previous the previous value, as a share of the chart's scale
+     * @param value the value, as a share of the chart's scale
+     */
+    private void drawPoint(GraphicsContext g, boolean joined, double x, double step, double top, double height, double previous, double value){
+        double y = top + height - 1 - value * (height - 2);
+        if (joined)
+            g.strokeLine(x - step + 1, top + height - 1 - previous * (height - 2), x + 1, y);
+        else
+            g.strokeLine(x + 1, y, x + 1, y);
+    }
+
+    /**
+     * draw the utilization and load of each elevator, and the latest figures
+     * @param m the stats
+     * @param samples the number of samples taken
+     */
+    private void drawElevators(LiveMetrics m, long samples){
+        GraphicsContext g = this.getGraphicsContext2D();
+        g.setFill(Color.WHITE);
+        g.fillRect(LEFT, CARS_TOP, WIDTH - LEFT, CARS_HEIGHT);
+        int elevators = m.getElevators();
+        double width = (WIDTH - LEFT - 10) / elevators;
+        double bar = Math.max(1, width / 2 - 1);
+        for (int i = 1; i <= elevators; ++i){
+            double x = LEFT + (i - 1) * width;
+            double busy = m.getUtilization(i) * (CARS_HEIGHT - 20);
+            double load = m.getLoad(i) * (CARS_HEIGHT - 20);
+            g.setFill(Color.DODGERBLUE);
+            g.fillRect(x, CARS_TOP + CARS_HEIGHT - 20 - busy, bar, busy);
+            g.setFill(Color.DARKORANGE);
+            g.fillRect(x + bar, CARS_TOP + CARS_HEIGHT - 20 - load, bar, load);
+            if (width >= 24){
+                g.setFill(Color.BLACK);
+                g.setTextAlign(TextAlignment.CENTER);
+                g.fillText("#" + i, x + bar, CARS_TOP + CARS_HEIGHT - 5);
+            }
+        }
+        g.setStroke(Color.LIGHTGRAY);
+        g.strokeLine(LEFT, CARS_TOP + CARS_HEIGHT - 20, WIDTH - 10, CARS_TOP + CARS_HEIGHT - 20);
+        // the latest figures, under each chart's title
+        g.setFill(Color.WHITE);
+        g.fillRect(0, THROUGHPUT_TOP + 70, LEFT - 2, 40);
+        g.fillRect(0, QUEUE_TOP + 40, LEFT - 2, 40);
+        g.setFill(Color.BLACK);
+        g.setTextAlign(TextAlignment.LEFT);
+        // nothing has been sampled yet, e.g. right after a building is created
+        if (samples == 0)
+            return;
+        long last = samples - 1;
+        g.fillText(String.format("now %.1f", m.getThroughput(last)), 8, THROUGHPUT_TOP + 85);
+        g.fillText("all " + m.getDelivered(), 8, THROUGHPUT_TOP + 100);
+        int waiting = 0;
+        for (int lev = 1; lev <= m.getLevels(); ++lev)
+            waiting += this.queueBuffer[lev];
+        g.fillText("now " + waiting, 8, QUEUE_TOP + 55);
+    }
+}
@@ -0,0 +1,397 @@
+package cn.leonwong.ElevatorSimulator;
+
+import cn.leonwong.ElevatorSimulator.Model.HallQueue;
+import cn.leonwong.ElevatorSimulator.Model.LatencyHistogram;
+import cn.leonwong.ElevatorSimulator.Model.Log;
+import cn.leonwong.ElevatorSimulator.Model.Passenger;
+import cn.leonwong.ElevatorSimulator.Model.Simulation;
+import cn.leonwong.ElevatorSimulator.Model.TrafficGenerator;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A headless sweep finding the fewest and smallest elevators which keep the p95 wait under an SLA
+ * The load is an up-peak whose arrival rate is a handling capacity, i.e. the share of the building's population
+ * arriving in five minutes. For each number of floors and strategy, elevator counts are tried from the fewest up and
+ * capacities from the largest down, so configurations with fewer or smaller cars than a failing one are never run,
+ * nor ones with more than a passing one. A run is stopped once more than 5% of the passengers its peak is expected
+ * to bring have waited longer than the SLA, by when its p95 wait is all but sure to exceed it.
+ */
+public class FleetSizing {
+    /**
+     * the outcome of one configuration
+     */
+    public static class Result {
+        /// the number of levels
+        public final int levels;
+        /// the number of elevators
+        public final int elevators;
+        /// the capacity of each elevator
+        public final int capacity;
+        /// the name of the dispatching strategy
+        public final String strategy;
+        /// the p95 wait (ms) over all replications, of the passengers served before the run ended
+        public final long p95Wait;
+        /// denote if some replication was stopped early because it could not meet the SLA
+        public final boolean pruned;
+        /// denote if the configuration meets the SLA
+        public final boolean meets;
+
+        /**
+         * create a result
+         * @param levs the number of levels
+         * @param elevs the number of elevators
+         * @param cap the capacity of each elevator
+         * @param str the name of the strategy
+         * @param p95 the p95 wait
+         * @param prn whether a replication was stopped early
+         * @param ok whether the SLA is met
+         */
+        Result(int levs, int elevs, int cap, String str, long p95, boolean prn, boolean ok){
+            this.levels = levs;
+            this.elevators = elevs;
+            this.capacity = cap;
+            this.strategy = str;
+            this.p95Wait = p95;
+            this.pruned = prn;
+            this.meets = ok;
+        }
+
+        /**
+         * describe this result in one line
+         * @return e.g. "20 levels, 4 x 13 (Speed First): p95 wait 21400 ms, meets the SLA"
+         */
+        @Override
+        public String toString(){
+            return String.format("%d levels, %d x %d (%s): p95 wait %d ms, %s", this.levels, this.elevators, this.capacity,
+                    this.strategy, this.p95Wait, this.meets ? "meets the SLA" : this.pruned ? "stopped early" : "misses the SLA");
+        }
+    }
+
+    /// how often (ms of virtual time) a running replication is checked against the SLA
+    private static final long CHECK_INTERVAL = 5000;
+    /// a replication is only judged once this many passengers have arrived
+    private static final int MIN_ARRIVALS = 20;
+
+    /// the p95 wait (ms) to stay under
+    private long sla;
+    /// the share of the population arriving in five minutes, e.g. 0.12
+    private double handlingCapacity;
+    /// the number of people on each level above the lobby
+    private int perFloor;
+    /// how long (ms) the up-peak lasts
+    private long peakTime;
+    /// how long (ms) a replication goes on after the peak, so that the last passengers are served
+    private long drainTime;
+    /// the number of replications of each configuration
+    private int replications;
+    /// the most elevators to try
+    private int maxElevators;
+    /// the seed of the first replication, the others use the following seeds
+    private long seed;
+    /// runs the groups of configurations and their replications
+    private ForkJoinPool pool;
+    /// the names of the strategies, by their indices
+    private final List<String> strategyNames;
+
+    /**
+     * create a sweep: p95 wait under 30 s at 12% five-minute handling capacity, 60 people per level
+     */
+    public FleetSizing(){
+        this.sla = 30000;
+        this.handlingCapacity = 0.12;
+        this.perFloor = 60;
+        this.peakTime = 900000;
+        this.drainTime = 300000;
+        this.replications = 3;
+        this.maxElevators = 16;
+        this.seed = 1;
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.strategyNames = new Controller(0).getStrategyNames();
+    }
+
+    /**
+     * setter for the SLA
+     * @param ms the p95 wait (ms) to stay under
+     */
+    public void setSla(long ms){
+        this.sla = ms;
+    }
+
+    /**
+     * setter for the load
+     * @param hc5 the share of the population arriving in five minutes, e.g. 0.12
+     * @param people the number of people on each level above the lobby
+     */
+    public void setLoad(double hc5, int people){
+        this.handlingCapacity = hc5;
+        this.perFloor = people;
+    }
+
+    /**
+     * setter for the number of replications
+     * @param n the number of replications of each configuration
+     */
+    public void setReplications(int n){
+        this.replications = Math.max(1, n);
+    }
+
+    /**
+     * setter for the most elevators to try
+     * @param n the most elevators
+     */
+    public void setMaxElevators(int n){
+        this.maxElevators = n;
+    }
+
+    /**
+     * setter for the seed
+     * @param s the seed of the first replication
+     */
+    public void setSeed(long s){
+        this.seed = s;
+    }
+
+    /**
+     * setter for the number of worker threads
+     * @param n the number of threads, all cores if 0 or less
+     */
+    public void setThreads(int n){
+        this.pool.shutdown();
+        this.pool = new ForkJoinPool(n > 0 ? n : Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * sweep a grid of configurations in parallel
+     * @param floors the numbers of levels
+     * @param capacities the capacities of elevators
+     * @param strategies the indices of the strategies, e.g. ones in Controller.DispatchingStrategy
+     * @return the results of the configurations which were run, by levels then strategy
+     */
+    public List<Result> sweep(int[] floors, int[] capacities, int[] strategies){
+        int[] caps = capacities.clone();
+        Arrays.sort(caps);
+        ArrayList<Callable<List<Result>>> groups = new ArrayList<>();
+        for (int levs : floors)
+            for (int str : strategies)
+                groups.add(() -> this.sweepGroup(levs, str, caps));
+        ArrayList<Result> results = new ArrayList<>();
+        for (Future<List<Result>> group : this.pool.invokeAll(groups)){
+            try {
+                results.addAll(group.get());
+            }
+            catch (InterruptedException | ExecutionException e){
+                Log.error(Log.Category.Model, "FleetSizing: a group failed: %s", e);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * find the cheapest configuration meeting the SLA for some number of levels
+     * @param results the results of a sweep
+     * @param levs the number of levels
+     * @return the result with the fewest elevators, then the smallest capacity, null if none meets the SLA
+     */
+    public static Result cheapest(List<Result> results, int levs){
+        Result best = null;
+        for (Result r : results){
+            if (r.levels != levs || !r.meets)
+                continue;
+            if (best == null || r.elevators < best.elevators || (r.elevators == best.elevators && r.capacity < best.capacity))
+                best = r;
+        }
+        return best;
+    }
+
+    /**
+     * sweep the elevators and capacities of one number of levels and one strategy
+     * @param levs the number of levels
+     * @param strategy the index of the strategy
+     * @param caps the capacities, in ascending order
+     * @return the results of the configurations which were run
+     */
+    private List<Result> sweepGroup(int levs, int strategy, int[] caps){
+        ArrayList<Result> results = new ArrayList<>();
+        // a smaller car never needs fewer elevators, so each capacity starts where the larger one passed
+        int elevs = 1;
+        for (int i = caps.length - 1; i >= 0 && elevs <= this.maxElevators; --i){
+            while (elevs <= this.maxElevators){
+                Result r = this.evaluate(levs, elevs, caps[i], strategy);
+                results.add(r);
+                if (r.meets)
+                    break;
+                ++elevs;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * run the replications of one configuration in parallel
+     * @param levs the number of levels
+     * @param elevs the number of elevators
+     * @param cap the capacity of each elevator
+     * @param strategy the index of the strategy
+     * @return the result
+     */
+    Result evaluate(int levs, int elevs, int cap, int strategy){
+        AtomicBoolean failed = new AtomicBoolean(false);
+        ArrayList<Callable<LatencyHistogram>> reps = new ArrayList<>();
+        for (int r = 0; r < this.replications; ++r){
+            long s = this.seed + r;
+            reps.add(() -> this.replicate(levs, elevs, cap, strategy, s, failed));
+        }
+        LatencyHistogram waits = new LatencyHistogram();
+        for (ForkJoinTask<LatencyHistogram> rep : ForkJoinTask.invokeAll(adapt(reps))){
+            try {
+                waits.add(rep.get());
+            }
+            catch (InterruptedException | ExecutionException e){
+                Log.error(Log.Category.Model, "FleetSizing: a replication failed: %s", e);
+                failed.set(true);
+            }
+        }
+        long p95 = waits.getValueAtPercentile(95);
+        return new Result(levs, elevs, cap, this.strategyNames.get(strategy), p95, failed.get(), !failed.get() && p95 <= this.sla);
+    }
+
+    /**
+     * run one replication, stopping it early if it cannot meet the SLA
+     * @param levs the number of levels
+     * @param elevs the number of elevators
+     * @param cap the capacity of each elevator
+     * @param strategy the index of the strategy
+     * @param s the seed of the replication
+     * @param failed set when a replication of this configuration misses the SLA, which stops the others too
+     * @return the waits of the passengers served, and of those still waiting so far
+     */
+    private LatencyHistogram replicate(int levs, int elevs, int cap, int strategy, long s, AtomicBoolean failed){
+        Controller c = new Controller(s);
+        c.setStrategy(strategy);
+        Simulation sim = new Simulation();
+        c.createBuilding(levs, elevs, cap, sim);
+        TrafficGenerator gen = new TrafficGenerator(levs, s);
+        // the handling capacity is the share of the population above the lobby arriving in five minutes
+        double perMinute = this.handlingCapacity * (levs - 1) * this.perFloor / 5;
+        gen.addPhase(this.peakTime, TrafficGenerator.Pattern.UpPeak, perMinute);
+        c.addTraffic(gen);
+        double expected = perMinute * this.peakTime / 60000;
+        sim.scheduleTask(CHECK_INTERVAL, new Runnable() {
+            @Override
+            public void run(){
+                if (failed.get() || FleetSizing.this.exceedsSla(c, sim.now(), expected)){
+                    failed.set(true);
+                    sim.stop();
+                }
+                else
+                    sim.scheduleTask(sim.now() + CHECK_INTERVAL, this);
+            }
+        });
+        sim.runUntil(this.peakTime + this.drainTime);
+        sim.stop();
+        LatencyHistogram waits = new LatencyHistogram();
+        waits.add(c.getMetrics().getAll().getWaitTime());
+        // passengers never served count with the wait they have had so far
+        for (HallQueue lev : c.getLevelList())
+            for (Passenger p : lev)
+                waits.recordValue(sim.now() - p.requestTime);
+        return waits;
+    }
+
+    /**
+     * decide whether the p95 wait of a replication is all but sure to exceed the SLA,
+     * i.e. more than 5% of the passengers of the whole peak, as many as expected or more if more came,
+     * have already waited longer, counting those still waiting
+     * It is a heuristic: a peak bringing far more passengers than expected, all served quickly, could still meet the SLA.
+     * @param c the controller of the replication
+     * @param now the virtual time
+     * @param expected the number of passengers the whole peak is expected to bring
+     * @return true if the SLA is taken as missed
+     */
+    private boolean exceedsSla(Controller c, long now, double expected){
+        long arrivals = c.getPassengerCount();
+        if (arrivals < MIN_ARRIVALS)
+            return false;
+        long late = c.getMetrics().getAll().getWaitTime().getCountAbove(this.sla);
+        for (HallQueue lev : c.getLevelList())
+            for (Passenger p : lev)
+                if (now - p.requestTime > this.sla)
+                    ++late;
+        return late * 20 > Math.max(arrivals, expected);
+    }
+
+    /**
+     * wrap callables into fork/join tasks
+     * @param calls the callables
+     * @param <T> the type of their results
+     * @return the tasks
+     */
+    private static <T> List<ForkJoinTask<T>> adapt(List<Callable<T>> calls){
+        ArrayList<ForkJoinTask<T>> tasks = new ArrayList<>();
+        for (Callable<T> call : calls)
+            tasks.add(ForkJoinTask.adapt(call));
+        return tasks;
+    }
+
+    /**
+     * parse a list of numbers
+     * @param arg e.g. "10,20,30"
+     * @return the numbers
+     */
+    private static int[] parseList(String arg){
+        String[] parts = arg.split(",");
+        int[] nums = new int[parts.length];
+        for (int i = 0; i < parts.length; ++i)
+            nums[i] = Integer.parseInt(parts[i].trim());
+        return nums;
+    }
+
+    /**
+     * find the cheapest fleet for some buildings headless
+     * usage: FleetSizing [floors,...] [capacities,...] [max elevators] [SLA s] [HC5 %] [people per level] [replications] [threads]
+     * @param args the arguments
+     */
+    public static void main(String[] args){
+        int[] floors = parseList(args.length > 0 ? args[0] : "10,20,30");
+        int[] caps = parseList(args.length > 1 ? args[1] : "8,13,20");
+        FleetSizing sweep = new FleetSizing();
+        if (args.length > 2)
+            sweep.setMaxElevators(Integer.parseInt(args[2]));
+        if (args.length > 3)
+            sweep.setSla((long) (Double.parseDouble(args[3]) * 1000));
+        double hc5 = args.length > 4 ? Double.parseDouble(args[4]) / 100 : 0.12;
+        int people = args.length > 5 ? Integer.parseInt(args[5]) : 60;
+        sweep.setLoad(hc5, people);
+        if (args.length > 6)
+            sweep.setReplications(Integer.parseInt(args[6]));
+        if (args.length > 7)
+            sweep.setThreads(Integer.parseInt(args[7]));
+        PrintStream out = System.out;
+        Log.setLevel(Log.Level.Error);
+        int[] strategies = new int[sweep.strategyNames.size()];
+        for (int i = 0; i < strategies.length; ++i)
+            strategies[i] = i;
+        out.printf("p95 wait under %d ms at %.0f%% five-minute handling capacity, %d people per level\n", sweep.sla, hc5 * 100, people);
+        long start = System.nanoTime();
+        List<Result> results = sweep.sweep(floors, caps, strategies);
+        for (Result r : results)
+            out.println("  " + r);
+        for (int levs : floors){
+            Result best = cheapest(results, levs);
+            out.printf("%d levels: %s\n", levs, best == null ? "no configuration meets the SLA" : "cheapest is " + best);
+        }
+        out.printf("(%d configurations, %.1f s)\n", results.size(), (System.nanoTime() - start) / 1e9);
+        sweep.pool.shutdown();
+        Log.flush();
+    }
+}
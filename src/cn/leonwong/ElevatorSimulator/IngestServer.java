@@ -0,0 +1,295 @@
+package cn.leonwong.ElevatorSimulator;
+
+import cn.leonwong.ElevatorSimulator.Model.IngestQueue;
+import cn.leonwong.ElevatorSimulator.Model.Log;
+import cn.leonwong.ElevatorSimulator.Model.Simulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A local endpoint through which load generators in other processes add passengers to a controller
+ * It listens on the loopback interface only. Each request is a frame of calls, big-endian:
+ * an int n (0 to MAX_FRAME), then n pairs of shorts (from, to). Each frame is answered with
+ * two ints, the calls accepted and rejected, and frames may be sent ahead without waiting for the answers.
+ * Calls go through Controller.addPassengers: when the dispatcher falls behind, a frame waits a while for room,
+ * during which the connection is not read, so TCP holds the generator back too; what still finds no room is rejected.
+ */
+public class IngestServer implements Closeable {
+    /// the most calls in a frame
+    public static final int MAX_FRAME = 65536;
+    /// how long (ms) a frame waits for room in the ingest queue before the rest is rejected
+    private static final long BACKPRESSURE_WAIT = 200;
+
+    /// the controller receiving the passengers
+    private final Controller controller;
+    /// the listening socket
+    private final ServerSocket server;
+    /// the connections open, closed with the server
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    /// denote if this server has been closed
+    private volatile boolean closed;
+
+    /**
+     * start listening, on a thread of its own
+     * @param c the controller receiving the passengers, whose building is created
+     * @param port the port, 0 for any free one
+     * @throws IOException if the port cannot be bound
+     */
+    public IngestServer(Controller c, int port) throws IOException{
+        this.controller = c;
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread t = new Thread(this::acceptLoop, "Ingest Server");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * getter for the port
+     * @return the port listened on
+     */
+    public int getPort(){
+        return this.server.getLocalPort();
+    }
+
+    /**
+     * stop listening and close the connections open, frames not answered yet are dropped
+     * @throws IOException if the listening socket cannot be closed
+     */
+    @Override
+    public void close() throws IOException{
+        this.closed = true;
+        this.server.close();
+        for (Socket s : this.connections)
+            closeQuietly(s);
+    }
+
+    /**
+     * accept connections until closed, each served on a thread of its own
+     */
+    private void acceptLoop(){
+        while (!this.closed){
+            try {
+                Socket s = this.server.accept();
+                this.connections.add(s);
+                // closed meanwhile, after close() went through the connections
+                if (this.closed){
+                    closeQuietly(s);
+                    return;
+                }
+                Thread t = new Thread(() -> this.serve(s), "Ingest Connection");
+                t.setDaemon(true);
+                t.start();
+            }
+            catch (IOException e){
+                if (!this.closed)
+                    Log.error(Log.Category.Controller, "IngestServer: cannot accept: %s", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * read the frames of a connection and answer each, until it is closed or sends a bad frame
+     * @param s the connection
+     */
+    private void serve(Socket s){
+        int[] from = new int[256], to = new int[256];
+        try (Socket socket = s;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))){
+            socket.setTcpNoDelay(true);
+            while (!this.closed){
+                int n;
+                try {
+                    n = in.readInt();
+                }
+                catch (EOFException e){
+                    return;
+                }
+                if (n < 0 || n > MAX_FRAME){
+                    Log.warn(Log.Category.Controller, "IngestServer: bad frame of %d calls, closing the connection", n);
+                    return;
+                }
+                if (n > from.length){
+                    from = new int[Integer.highestOneBit(n - 1) << 1];
+                    to = new int[from.length];
+                }
+                for (int i = 0; i < n; ++i){
+                    from[i] = in.readShort();
+                    to[i] = in.readShort();
+                }
+                int accepted = this.controller.addPassengers(from, to, n, BACKPRESSURE_WAIT);
+                out.writeInt(accepted);
+                out.writeInt(n - accepted);
+                // answers are sent when no more frames are already waiting, so pipelined frames share a packet
+                if (in.available() < 4)
+                    out.flush();
+            }
+        }
+        catch (SocketException e){
+            Log.debug(Log.Category.Controller, "IngestServer: connection closed: %s", e.getMessage());
+        }
+        catch (IOException e){
+            Log.warn(Log.Category.Controller, "IngestServer: connection failed: %s", e.getMessage());
+        }
+        finally {
+            this.connections.remove(s);
+        }
+    }
+
+    /**
+     * close a connection, logging any failure
+     * @param s the connection
+     */
+    private static void closeQuietly(Socket s){
+        try {
+            s.close();
+        }
+        catch (IOException e){
+            Log.warn(Log.Category.Controller, "IngestServer: cannot close a connection: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * a load generator's end of a connection to an IngestServer
+     */
+    public static class Client implements Closeable {
+        /// the connection
+        private final Socket socket;
+        /// where frames are written
+        private final DataOutputStream out;
+        /// where answers are read
+        private final DataInputStream in;
+        /// the answers not read yet
+        private int pending;
+        /// the calls accepted and rejected, of the answers read
+        private long accepted, rejected;
+
+        /**
+         * connect to a server on this machine
+         * @param port the server's port
+         * @throws IOException if it cannot connect
+         */
+        public Client(int port) throws IOException{
+            this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            this.socket.setTcpNoDelay(true);
+            this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream(), 1 << 16));
+            this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+        }
+
+        /**
+         * send a frame of calls without waiting for its answer
+         * @param from the starting level of each passenger
+         * @param to the destination of each passenger
+         * @param count the number of calls, at most MAX_FRAME
+         * @throws IOException if it cannot be sent
+         */
+        public void send(int[] from, int[] to, int count) throws IOException{
+            this.out.writeInt(count);
+            for (int i = 0; i < count; ++i){
+                this.out.writeShort(from[i]);
+                this.out.writeShort(to[i]);
+            }
+            ++this.pending;
+        }
+
+        /**
+         * send the frames written and read all their answers
+         * @throws IOException if the connection fails
+         */
+        public void sync() throws IOException{
+            this.out.flush();
+            for (; this.pending > 0; --this.pending){
+                this.accepted += this.in.readInt();
+                this.rejected += this.in.readInt();
+            }
+        }
+
+        /**
+         * getter for the calls accepted
+         * @return the number of calls accepted, as of the last sync()
+         */
+        public long getAccepted(){
+            return this.accepted;
+        }
+
+        /**
+         * getter for the calls rejected
+         * @return the number of calls rejected, as of the last sync()
+         */
+        public long getRejected(){
+            return this.rejected;
+        }
+
+        /**
+         * read the answers still due and close the connection
+         * @throws IOException if the connection fails
+         */
+        @Override
+        public void close() throws IOException{
+            try {
+                this.sync();
+            }
+            finally {
+                this.socket.close();
+            }
+        }
+    }
+
+    /**
+     * serve a paced simulated building and drive it from a client for a few seconds, printing the rates
+     * usage: IngestServer [levels] [elevators] [frame] [seconds] [speed]
+     * @param args the arguments
+     * @throws IOException if the loopback connection fails
+     */
+    public static void main(String[] args) throws IOException{
+        int levs = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int elevs = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int frame = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        double seconds = args.length > 3 ? Double.parseDouble(args[3]) : 5;
+        double speed = args.length > 4 ? Double.parseDouble(args[4]) : 10;
+        PrintStream out = System.out;
+        Log.setLevel(Log.Level.Off);
+        Controller c = new Controller(1);
+        Simulation sim = new Simulation(speed);
+        c.createBuilding(levs, elevs, 20, sim);
+        c.start();
+        int[] from = new int[frame], to = new int[frame];
+        Random rng = new Random(1);
+        try (IngestServer server = new IngestServer(c, 0); Client client = new Client(server.getPort())){
+            long start = System.nanoTime(), end = start + (long) (seconds * 1e9);
+            long frames = 0;
+            while (System.nanoTime() < end){
+                for (int i = 0; i < frame; ++i){
+                    from[i] = 1 + rng.nextInt(levs);
+                    to[i] = 1 + (from[i] + rng.nextInt(levs - 1)) % levs;
+                }
+                client.send(from, to, frame);
+                // keep a few frames in flight
+                if (++frames % 8 == 0)
+                    client.sync();
+            }
+            client.sync();
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            IngestQueue q = c.getIngestQueue();
+            out.printf("%d levels, %d elevators, speed %.0fx: %d calls accepted (%.0f/s), %d rejected, %d dispatched\n",
+                    levs, elevs, speed, client.getAccepted(), client.getAccepted() / elapsed, client.getRejected(),
+                    c.getPassengerCount());
+            out.printf("ingest queue: %d accepted, %d rejected, %d waiting\n", q.getAccepted(), q.getRejected(), q.size());
+        }
+        c.stopThread();
+    }
+}
@@ -0,0 +1,30 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * a stream of passengers arriving over time, read one arrival at a time so a stream of any length takes fixed memory
+ */
+public interface ArrivalSource {
+    /**
+     * move to the next arrival
+     * @return false if there is none left, true otherwise
+     */
+    boolean next();
+
+    /**
+     * getter for the time of the current arrival
+     * @return the time (ms) from the start of the stream
+     */
+    long getTime();
+
+    /**
+     * getter for the starting level of the current arrival
+     * @return the starting level
+     */
+    int getFrom();
+
+    /**
+     * getter for the destination of the current arrival
+     * @return the destination level
+     */
+    int getTo();
+}
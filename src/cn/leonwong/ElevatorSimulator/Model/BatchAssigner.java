@@ -0,0 +1,205 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Collects the hall calls of a short window and assigns them to elevators jointly
+ * Calls from the same level heading the same direction are one stop. Each stop is matched to an elevator
+ * by a min-cost assignment (Hungarian algorithm) over the costs given by the dispatching strategy,
+ * where every further stop given to the same elevator costs one more, as one more destination does.
+ * An elevator is offered a few more slots than its fair share of the stops, which keeps the matrix small;
+ * a window too big for any matrix falls back to the strategy's choice for each stop.
+ */
+public class BatchAssigner {
+    /// costs of at least this much mean the strategy ignores the elevator
+    private static final long INF = Long.MAX_VALUE / 4;
+    /// the most cells of the cost matrix, 128 MB of longs
+    private static final long MAX_CELLS = 1L << 24;
+
+    /// the level of each pending stop
+    private int[] stopLevels;
+    /// the direction of each pending stop
+    private int[] stopDirections;
+    /// the number of pending stops
+    private int stops;
+
+    /// the cost matrix, stops by (elevators * slots), reused between batches
+    private long[] matrix;
+    /// whether each stop is left to the strategy's own choice, reused between batches
+    private boolean[] fallback;
+    /// potentials and work arrays of the Hungarian algorithm, reused between batches
+    private long[] u, v, minv;
+    private int[] p, way;
+    private boolean[] used;
+
+    /**
+     * create an empty batch
+     */
+    public BatchAssigner(){
+        this.stopLevels = new int[16];
+        this.stopDirections = new int[16];
+        this.stops = 0;
+        this.matrix = new long[0];
+        this.fallback = new boolean[0];
+    }
+
+    /**
+     * add a hall call to this batch
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     * @return true if the batch was empty, i.e. a new window starts
+     */
+    public boolean add(int from, int to){
+        int dir = to > from ? Elevator.Direction.Upward : Elevator.Direction.Downward;
+        for (int i = 0; i < this.stops; ++i)
+            if (this.stopLevels[i] == from && this.stopDirections[i] == dir)
+                return false;
+        if (this.stops == this.stopLevels.length){
+            this.stopLevels = Arrays.copyOf(this.stopLevels, this.stops * 2);
+            this.stopDirections = Arrays.copyOf(this.stopDirections, this.stops * 2);
+        }
+        this.stopLevels[this.stops] = from;
+        this.stopDirections[this.stops] = dir;
+        return this.stops++ == 0;
+    }
+
+    /**
+     * getter for the number of pending stops
+     * @return the number of stops waiting to be assigned
+     */
+    public int size(){
+        return this.stops;
+    }
+
+    /**
+     * assign every pending stop to an elevator and empty this batch
+     * @param b the building
+     * @param strategy the strategy giving the cost of each elevator
+     * @param costs an array no shorter than the number of elevators, to be overwritten
+     * @param rng the random generator used when a stop falls back to the strategy
+     */
+    public void flush(Building b, DispatchStrategy strategy, int[] costs, Random rng){
+        int n = this.stops;
+        if (n == 0)
+            return;
+        int elevs = b.getElevators();
+        // each stop given to an elevator takes a slot of its own; a few more than its share is plenty
+        int slots = Math.min(n, (n + elevs - 1) / elevs + 1);
+        long cells = (long) n * elevs * slots;
+        if (cells > MAX_CELLS){
+            Log.warn(Log.Category.Model, "BatchAssigner: %d stops are too many to assign jointly", n);
+            for (int i = 0; i < n; ++i){
+                int from = this.stopLevels[i];
+                b.elevatorList.get(strategy.choose(b, from, from + this.stopDirections[i], costs, rng)).addDestination(from);
+            }
+            this.stops = 0;
+            return;
+        }
+        int cols = elevs * slots;
+        this.ensureCapacity(n, cols);
+        boolean[] fallback = this.fallback;
+        for (int i = 0; i < n; ++i){
+            int from = this.stopLevels[i];
+            strategy.evaluate(b, from, from + this.stopDirections[i], costs);
+            boolean reachable = false;
+            for (int e = 0; e < elevs; ++e){
+                long c = costs[e] == Integer.MAX_VALUE ? INF : costs[e];
+                reachable |= c < INF;
+                for (int slot = 0; slot < slots; ++slot)
+                    this.matrix[i * cols + e * slots + slot] = c >= INF ? INF : c + slot;
+            }
+            fallback[i] = !reachable;
+        }
+        this.solve(n, cols);
+        for (int j = 1; j <= cols; ++j){
+            int i = this.p[j] - 1;
+            if (i < 0 || fallback[i])
+                continue;
+            // with capped slots, a stop only few elevators can take may be left with one which cannot
+            if (this.matrix[i * cols + j - 1] >= INF)
+                fallback[i] = true;
+            else
+                b.elevatorList.get((j - 1) / slots).addDestination(this.stopLevels[i]);
+        }
+        // stops no elevator can take are left to the strategy's own choice, e.g. waking an idle one
+        for (int i = 0; i < n; ++i){
+            if (fallback[i]){
+                int from = this.stopLevels[i];
+                b.elevatorList.get(strategy.choose(b, from, from + this.stopDirections[i], costs, rng)).addDestination(from);
+            }
+        }
+        this.stops = 0;
+    }
+
+    /**
+     * grow the reused arrays if needed
+     * @param rows the number of stops
+     * @param cols the number of elevator slots, rows * cols is at most MAX_CELLS
+     */
+    private void ensureCapacity(int rows, int cols){
+        if (this.matrix.length < rows * cols)
+            this.matrix = new long[rows * cols];
+        if (this.fallback.length < rows)
+            this.fallback = new boolean[rows];
+        if (this.u == null || this.u.length < rows + 1)
+            this.u = new long[rows + 1];
+        if (this.v == null || this.v.length < cols + 1){
+            this.v = new long[cols + 1];
+            this.minv = new long[cols + 1];
+            this.p = new int[cols + 1];
+            this.way = new int[cols + 1];
+            this.used = new boolean[cols + 1];
+        }
+    }
+
+    /**
+     * the Hungarian algorithm with potentials, leaves in p[j] the (1-based) row matched to column j, 0 if none
+     * @param n the number of rows, no more than cols
+     * @param cols the number of columns
+     */
+    private void solve(int n, int cols){
+        Arrays.fill(this.u, 0, n + 1, 0);
+        Arrays.fill(this.v, 0, cols + 1, 0);
+        Arrays.fill(this.p, 0, cols + 1, 0);
+        for (int i = 1; i <= n; ++i){
+            this.p[0] = i;
+            int j0 = 0;
+            Arrays.fill(this.minv, 0, cols + 1, Long.MAX_VALUE);
+            Arrays.fill(this.used, 0, cols + 1, false);
+            do {
+                this.used[j0] = true;
+                int i0 = this.p[j0];
+                long delta = Long.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= cols; ++j){
+                    if (this.used[j])
+                        continue;
+                    long cur = this.matrix[(i0 - 1) * cols + j - 1] - this.u[i0] - this.v[j];
+                    if (cur < this.minv[j]){
+                        this.minv[j] = cur;
+                        this.way[j] = j0;
+                    }
+                    if (this.minv[j] < delta){
+                        delta = this.minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= cols; ++j){
+                    if (this.used[j]){
+                        this.u[this.p[j]] += delta;
+                        this.v[j] -= delta;
+                    }
+                    else
+                        this.minv[j] -= delta;
+                }
+                j0 = j1;
+            } while (this.p[j0] != 0);
+            do {
+                int j1 = this.way[j0];
+                this.p[j0] = this.p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+    }
+}
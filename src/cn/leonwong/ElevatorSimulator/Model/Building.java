@@ -1,11 +1,11 @@
 package cn.leonwong.ElevatorSimulator.Model;
 
 import java.util.Vector;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Building Simulator
  * Creates a building with given levels and elevators
+ * The waiting list of each level is guarded by its own lock, see FloorLocks for the locking protocol
  */
 public class Building {
 
@@ -15,12 +15,14 @@ public class Building {
     private int elevators;
     /// Note for each elevator in this building
     public Vector<Elevator> elevatorList;
-    /// Note for persons waiting for elevators in each level
-    public Vector< Vector<Passenger> > levelList;
+    /// Note for persons waiting for elevators in each level, going up and down
+    public Vector<HallQueue> levelList;
     /// A message center noting for events;
-    public Vector<Message> messageCenter;
-    /// A lock used to help lock levelList
-    private ReentrantLock lock;
+    public MessageBus messageCenter;
+    /// Locks used to help lock levelList, one per level
+    private FloorLocks locks;
+    /// The scheduler running the elevators of this building
+    private ElevatorScheduler scheduler;
 
     /**
      * Creates a building
@@ -29,19 +31,57 @@ public class Building {
      * @param maxPass max \# of passengers an elevator can contain
      */
     public Building(int levs, int elevs, int maxPass){
+        this(levs, elevs, maxPass, null);
+    }
+
+    /**
+     * Creates a building whose elevators run on a scheduler
+     * @param levs \#levels in ths building
+     * @param elevs \#elevators in this building
+     * @param maxPass max \# of passengers an elevator can contain
+     * @param sched a Simulation, a PooledScheduler or a ThreadScheduler (may be shared by buildings), null to run each elevator on its own thread
+     */
+    public Building(int levs, int elevs, int maxPass, ElevatorScheduler sched){
+        this(levs, elevs, maxPass, sched, new MessageBus());
+    }
+
+    /**
+     * Creates a building with a given message center
+     * @param levs \#levels in ths building
+     * @param elevs \#elevators in this building
+     * @param maxPass max \# of passengers an elevator can contain
+     * @param sched the scheduler, null to run each elevator on its own thread
+     * @param bus the message center, whose capacity and wait strategy suit the run
+     */
+    public Building(int levs, int elevs, int maxPass, ElevatorScheduler sched, MessageBus bus){
+        this(levs, elevs, maxPass, sched, bus, true);
+    }
+
+    /**
+     * Creates a building, whose elevators may be left stopped, e.g. to restore their state first
+     * @param levs \#levels in ths building
+     * @param elevs \#elevators in this building
+     * @param maxPass max \# of passengers an elevator can contain
+     * @param sched the scheduler, null to run each elevator on its own thread
+     * @param bus the message center
+     * @param start true to start the elevators
+     */
+    Building(int levs, int elevs, int maxPass, ElevatorScheduler sched, MessageBus bus, boolean start){
         this.levels = levs;
         this.elevators = elevs;
         this.elevatorList = new Vector<>();
         this.levelList = new Vector<>();
-        this.messageCenter = new Vector<>();
-        this.lock = new ReentrantLock();
+        this.messageCenter = bus;
+        this.locks = new FloorLocks(levs);
+        this.scheduler = sched == null ? new ThreadScheduler() : sched;
         for (int i = 1; i <= this.elevators; ++i){
-            Elevator tmp = new Elevator(i, this.levels, maxPass, this.levelList, this.messageCenter, this.lock);
-            tmp.start();
+            Elevator tmp = new Elevator(i, this.levels, maxPass, this.levelList, this.messageCenter, this.locks, this.scheduler);
+            if (start)
+                tmp.start();
             this.elevatorList.add(tmp);
         }
         for (int i = 0; i <= levs; ++i){
-            this.levelList.add(new Vector<>());
+            this.levelList.add(new HallQueue(i));
         }
     }
 
@@ -60,4 +100,28 @@ public class Building {
     public int getLevels() {
         return this.levels;
     }
-}
\ No newline at end of file
+
+    /**
+     * getter for the locks of each level
+     * @return the locks guarding levelList
+     */
+    public FloorLocks getLocks() {
+        return this.locks;
+    }
+
+    /**
+     * getter for the scheduler
+     * @return the scheduler running the elevators of this building
+     */
+    public ElevatorScheduler getScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * getter for the simulation
+     * @return the simulation driving this building, null if elevators run on threads
+     */
+    public Simulation getSimulation() {
+        return this.scheduler instanceof Simulation ? (Simulation) this.scheduler : null;
+    }
+}
@@ -0,0 +1,328 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * A versioned, compact binary snapshot of a whole building, to checkpoint, resume or fork a run
+ * A snapshot is a consistent cut: it holds every elevator's monitor (so no step is half done) and every floor lock
+ * only while the building is encoded into memory, and the file is written after they are released.
+ * In a simulation it also keeps the virtual clock, when each elevator's next step is due, and the pending hall calls.
+ * Timer tasks (dispatching windows, workloads fed by Controller.addTraffic) are code and are not kept,
+ * they have to be set up again after restoring. A snapshot taken from a simulation's own thread, e.g. in a task
+ * scheduled with scheduleTask, is exact; taken from another thread, an elevator between two steps resumes at the cut.
+ *
+ * Layout (big-endian): magic "ELVS", version, levels, elevators, capacity (ints), time, next passenger id (longs);
+ * strategy names (count, UTF); passengers (count, then id, origin, destination, elevator, strategy index,
+ * request, board and alight times); the waiting passengers of each level (count, passenger numbers);
+ * each elevator's state (see Elevator.saveState); the pending steps and hall calls in the order they will fire
+ * (count, then time, elevator or 0 for a hall call, from, to).
+ */
+public class BuildingSnapshot {
+    /// marks a file as a snapshot, "ELVS"
+    static final int MAGIC = 0x454C5653;
+    /// the version of the layout, 2 keeps which directions are getting on at a stop; version 1 can still be read
+    static final int VERSION = 2;
+
+    /// the restored building
+    private final Building building;
+    /// the time of the snapshot
+    private final long time;
+    /// the id of the next passenger
+    private final long nextPassengerId;
+
+    /**
+     * create a restored snapshot
+     * @param b the restored building
+     * @param t the time of the snapshot
+     * @param nextId the id of the next passenger
+     */
+    private BuildingSnapshot(Building b, long t, long nextId){
+        this.building = b;
+        this.time = t;
+        this.nextPassengerId = nextId;
+    }
+
+    /**
+     * take a snapshot of a running building
+     * @param b the building
+     * @param nextPassengerId the id the next passenger will get, kept so that ids stay unique after restoring
+     * @return the snapshot
+     */
+    public static byte[] capture(Building b, long nextPassengerId){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try {
+            encodeLocked(b, 0, new DataOutputStream(bytes), nextPassengerId);
+        }
+        catch (IOException e){
+            // a byte array never fails
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * take a snapshot of a running building and write it into a file
+     * @param b the building
+     * @param nextPassengerId the id the next passenger will get
+     * @param file the file, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void save(Building b, long nextPassengerId, Path file) throws IOException{
+        Files.write(file, capture(b, nextPassengerId));
+    }
+
+    /**
+     * restore a building from a snapshot, its elevators are started where they were
+     * @param data the snapshot
+     * @param sched the scheduler of the new building, null for one thread per elevator; a new Simulation's clock is moved to the time of the snapshot
+     * @return the restored snapshot
+     * @throws IOException if the snapshot is corrupt or of an unsupported version
+     */
+    public static BuildingSnapshot restore(byte[] data, ElevatorScheduler sched) throws IOException{
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (data.length < 8 || in.readInt() != MAGIC)
+            throw new IOException("Not a building snapshot");
+        int version = in.readInt();
+        if (version < 1 || version > VERSION)
+            throw new IOException("Unsupported snapshot version " + version);
+        int levs = in.readInt();
+        int elevs = in.readInt();
+        int cap = in.readInt();
+        if (levs < 1 || elevs < 0 || cap < 1)
+            throw new IOException("Corrupt snapshot: bad building");
+        long t = in.readLong();
+        long nextId = in.readLong();
+        String[] names = new String[readCount(in, data.length)];
+        for (int i = 0; i < names.length; ++i)
+            names[i] = in.readUTF();
+        Building b = new Building(levs, elevs, cap, sched, new MessageBus(), false);
+        Simulation sim = b.getSimulation();
+        if (sim != null)
+            sim.advanceTo(t);
+        // on threads the clock is the wall clock, so the passengers' times are moved to now
+        long shift = b.getScheduler().now() - t;
+        Passenger[] table = new Passenger[readCount(in, data.length)];
+        for (int i = 0; i < table.length; ++i){
+            Passenger pass = new Passenger(in.readLong(), in.readInt(), in.readInt(), 0);
+            pass.elevator = in.readInt();
+            int strategy = in.readInt();
+            pass.strategy = strategy >= 0 && strategy < names.length ? names[strategy] : null;
+            pass.requestTime = in.readLong() + shift;
+            pass.boardTime = shiftTime(in.readLong(), shift);
+            pass.alightTime = shiftTime(in.readLong(), shift);
+            if (pass.elevator < 0 || pass.elevator > elevs)
+                throw new IOException("Corrupt snapshot: bad passenger #" + pass.id);
+            nextId = Math.max(nextId, pass.id + 1);
+            table[i] = pass;
+        }
+        for (int lev = 1; lev <= levs; ++lev){
+            HallQueue waiting = b.levelList.get(lev);
+            for (int i = readCount(in, data.length); i > 0; --i){
+                int n = in.readInt();
+                if (n < 0 || n >= table.length)
+                    throw new IOException("Corrupt snapshot: bad passenger reference");
+                waiting.add(table[n]);
+            }
+        }
+        for (Elevator e : b.elevatorList)
+            e.restoreState(in, table, version);
+        // assignments are rebuilt from the waiting passengers, who know their elevators
+        for (HallQueue waiting : b.levelList)
+            for (Passenger pass : waiting)
+                if (pass.elevator != 0)
+                    b.elevatorList.get(pass.elevator - 1).assignPassenger(pass);
+        // scheduled in the order they were, so events at the same time still fire in that order
+        boolean[] scheduled = new boolean[elevs + 1];
+        for (int i = readCount(in, data.length); i > 0; --i){
+            long at = Math.max(in.readLong() + shift, b.getScheduler().now());
+            int elevator = in.readInt();
+            int from = in.readInt();
+            int to = in.readInt();
+            if (sim == null || elevator < 0 || elevator > elevs || scheduled[elevator])
+                continue;
+            if (elevator > 0){
+                sim.scheduleElevator(b.elevatorList.get(elevator - 1), at);
+                scheduled[elevator] = true;
+            }
+            else if (from >= 1 && from <= levs && to >= 1 && to <= levs)
+                sim.scheduleHallCall(at, from, to);
+        }
+        for (int i = 1; i <= elevs; ++i)
+            if (!scheduled[i])
+                b.elevatorList.get(i - 1).start();
+        return new BuildingSnapshot(b, t, nextId);
+    }
+
+    /**
+     * restore a building from a snapshot file
+     * @param file the file
+     * @param sched the scheduler of the new building, null for one thread per elevator
+     * @return the restored snapshot
+     * @throws IOException if the file cannot be read, or is corrupt or of an unsupported version
+     */
+    public static BuildingSnapshot load(Path file, ElevatorScheduler sched) throws IOException{
+        return restore(Files.readAllBytes(file), sched);
+    }
+
+    /**
+     * getter for the restored building
+     * @return the building, already running
+     */
+    public Building getBuilding(){
+        return this.building;
+    }
+
+    /**
+     * getter for the time of the snapshot
+     * @return the time (ms, virtual in a simulation) the snapshot was taken at
+     */
+    public long getTime(){
+        return this.time;
+    }
+
+    /**
+     * getter for the id of the next passenger
+     * @return the id the next passenger should get
+     */
+    public long getNextPassengerId(){
+        return this.nextPassengerId;
+    }
+
+    /**
+     * take each elevator's monitor in order of index, then every floor lock, and encode the building
+     * @param b the building
+     * @param i the index in the elevator list of the next monitor to take
+     * @param out where to write
+     * @param nextPassengerId the id of the next passenger
+     * @throws IOException if it cannot be written
+     */
+    private static void encodeLocked(Building b, int i, DataOutputStream out, long nextPassengerId) throws IOException{
+        if (i < b.elevatorList.size()){
+            synchronized (b.elevatorList.get(i)){
+                encodeLocked(b, i + 1, out, nextPassengerId);
+            }
+            return;
+        }
+        b.getLocks().lockAll();
+        try {
+            encode(b, out, nextPassengerId);
+        }
+        finally {
+            b.getLocks().unlockAll();
+        }
+    }
+
+    /**
+     * encode a building, which is not changing
+     * @param b the building
+     * @param out where to write
+     * @param nextPassengerId the id of the next passenger
+     * @throws IOException if it cannot be written
+     */
+    private static void encode(Building b, DataOutputStream out, long nextPassengerId) throws IOException{
+        Simulation sim = b.getSimulation();
+        ArrayList<SimEvent> events = sim == null ? new ArrayList<>() : sim.getEventList();
+        // the passengers waiting come first, then those riding
+        IdentityHashMap<Passenger, Integer> table = new IdentityHashMap<>();
+        ArrayList<Passenger> passengers = new ArrayList<>();
+        HashMap<String, Integer> names = new HashMap<>();
+        ArrayList<String> nameList = new ArrayList<>();
+        for (int lev = 1; lev <= b.getLevels(); ++lev)
+            for (Passenger pass : b.levelList.get(lev))
+                number(pass, table, passengers, names, nameList);
+        for (Elevator e : b.elevatorList)
+            for (int i = 0; i < e.getPassengers(); ++i)
+                number(e.getPassenger(i), table, passengers, names, nameList);
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(b.getLevels());
+        out.writeInt(b.getElevators());
+        out.writeInt(b.elevatorList.isEmpty() ? 1 : b.elevatorList.get(0).getCapacity());
+        out.writeLong(b.getScheduler().now());
+        out.writeLong(nextPassengerId);
+        out.writeInt(nameList.size());
+        for (String name : nameList)
+            out.writeUTF(name);
+        out.writeInt(passengers.size());
+        for (Passenger pass : passengers){
+            out.writeLong(pass.id);
+            out.writeInt(pass.origin);
+            out.writeInt(pass.destination);
+            out.writeInt(pass.elevator);
+            out.writeInt(pass.strategy == null ? -1 : names.get(pass.strategy));
+            out.writeLong(pass.requestTime);
+            out.writeLong(pass.boardTime);
+            out.writeLong(pass.alightTime);
+        }
+        for (int lev = 1; lev <= b.getLevels(); ++lev){
+            HallQueue waiting = b.levelList.get(lev);
+            out.writeInt(waiting.size());
+            for (Passenger pass : waiting)
+                out.writeInt(table.get(pass));
+        }
+        for (Elevator e : b.elevatorList)
+            e.saveState(out, table);
+        // timer tasks are left out, the rest in the order they will fire
+        events.removeIf(ev -> ev.mode == SimEvent.timer || (ev.mode != SimEvent.hallCall && ev.elevator == null));
+        Collections.sort(events);
+        out.writeInt(events.size());
+        for (SimEvent ev : events){
+            out.writeLong(ev.time);
+            out.writeInt(ev.mode == SimEvent.hallCall ? 0 : ev.elevator.getIndex());
+            out.writeInt(ev.from);
+            out.writeInt(ev.to);
+        }
+        out.flush();
+    }
+
+    /**
+     * give a passenger the next number of the snapshot, and its strategy a number too
+     */
+    private static void number(Passenger pass, IdentityHashMap<Passenger, Integer> table, ArrayList<Passenger> passengers,
+                               HashMap<String, Integer> names, ArrayList<String> nameList){
+        if (table.containsKey(pass))
+            return;
+        table.put(pass, passengers.size());
+        passengers.add(pass);
+        if (pass.strategy != null && !names.containsKey(pass.strategy)){
+            names.put(pass.strategy, nameList.size());
+            nameList.add(pass.strategy);
+        }
+    }
+
+    /**
+     * read the number of items that follow
+     * @param in where to read
+     * @param limit the size of the snapshot, which no count can exceed
+     * @return the count
+     * @throws IOException if it cannot be read or is out of range
+     */
+    private static int readCount(DataInputStream in, int limit) throws IOException{
+        int n = in.readInt();
+        if (n < 0 || n > limit)
+            throw new IOException("Corrupt snapshot: bad count " + n);
+        return n;
+    }
+
+    /**
+     * move a time to another clock
+     * @param time the time, -1 if not yet
+     * @param shift how far to move it
+     * @return the time moved, -1 if not yet
+     */
+    private static long shiftTime(long time, long shift){
+        return time < 0 ? time : time + shift;
+    }
+}
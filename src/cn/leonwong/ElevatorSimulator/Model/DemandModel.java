@@ -0,0 +1,161 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * Learns how many hall calls each level makes in each direction at each time of the day
+ * The day is cut into buckets, e.g. of 15 minutes, and each bucket counts the calls made in it, the calls of
+ * earlier days fading by a factor per day. Counts are decayed lazily when touched, so recording a call costs O(1).
+ * Time is taken modulo a day from 0, i.e. virtual time 0 of a simulation is midnight.
+ */
+public class DemandModel {
+    /// the length (ms) of a day
+    public static final long DAY = 86400000L;
+
+    /// \#levels
+    private final int levels;
+    /// the length (ms) of a bucket
+    private final long bucketLength;
+    /// the number of buckets in a day
+    private final int buckets;
+    /// the factor by which the calls of a day fade each following day
+    private final double dailyDecay;
+    /// the calls of each bucket, level and direction, decayed to the day in days, at ((bucket * (levels + 1)) + level) * 2 + (1 if up)
+    private final double[] counts;
+    /// the day each count was last decayed to
+    private final int[] days;
+    /// the number of calls recorded in all
+    private long calls;
+
+    /**
+     * create a model that knows nothing yet
+     * @param levs \#levels
+     * @param bucketMs the length (ms) of a bucket, a day is cut into buckets of about this length
+     * @param halfLifeDays after how many days the calls of a day count half as much, e.g. 7
+     */
+    public DemandModel(int levs, long bucketMs, double halfLifeDays){
+        this.levels = levs;
+        this.buckets = (int) Math.max(1, Math.min(DAY / Math.max(1, bucketMs), 24 * 60));
+        this.bucketLength = DAY / this.buckets;
+        this.dailyDecay = Math.pow(0.5, 1 / Math.max(halfLifeDays, 1e-3));
+        this.counts = new double[this.buckets * (levs + 1) * 2];
+        this.days = new int[this.counts.length];
+    }
+
+    /**
+     * count a hall call
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     * @param now the time of the call
+     */
+    public synchronized void record(int from, int to, long now){
+        int cell = this.cellOf(this.bucketOf(now), from, to > from);
+        int day = dayOf(now);
+        if (this.days[cell] != day){
+            this.counts[cell] *= Math.pow(this.dailyDecay, day - this.days[cell]);
+            this.days[cell] = day;
+        }
+        this.counts[cell] += 1;
+        ++this.calls;
+    }
+
+    /**
+     * getter for the learned calls of a level in a direction at some time of the day
+     * @param lev the level
+     * @param up true for the calls going up, false for those going down
+     * @param time the time, whose bucket is read
+     * @return the decayed number of calls made in that bucket on this and earlier days
+     */
+    public synchronized double getCalls(int lev, boolean up, long time){
+        return this.decayed(this.cellOf(this.bucketOf(time), lev, up), dayOf(time));
+    }
+
+    /**
+     * getter for the demand of every level expected soon after some time, both directions together
+     * It is the calls of the time's bucket, plus those of the next bucket weighted by how near it is,
+     * so that elevators get ready before a rush that came at this hour on earlier days.
+     * @param time the time
+     * @param dest where to write the demand, by level from 1
+     * @return the sum of the demand of all levels
+     */
+    public synchronized double getDemand(long time, double[] dest){
+        int bucket = this.bucketOf(time);
+        int next = (bucket + 1) % this.buckets;
+        int day = dayOf(time);
+        // the next bucket of the last one is tomorrow's first
+        int nextDay = next == 0 ? day + 1 : day;
+        double ahead = (double) (Math.floorMod(time, this.bucketLength)) / this.bucketLength;
+        double total = 0;
+        for (int lev = 1; lev <= this.levels; ++lev){
+            double d = this.decayed(this.cellOf(bucket, lev, true), day) + this.decayed(this.cellOf(bucket, lev, false), day)
+                    + ahead * (this.decayed(this.cellOf(next, lev, true), nextDay) + this.decayed(this.cellOf(next, lev, false), nextDay));
+            dest[lev] = d;
+            total += d;
+        }
+        return total;
+    }
+
+    /**
+     * getter for the number of calls recorded
+     * @return the number of calls recorded in all, which changes whenever the demand does
+     */
+    public synchronized long getRecordedCalls(){
+        return this.calls;
+    }
+
+    /**
+     * getter for the length of a bucket
+     * @return the length (ms) of a bucket
+     */
+    public long getBucketLength(){
+        return this.bucketLength;
+    }
+
+    /**
+     * getter for \#levels
+     * @return the number of levels
+     */
+    public int getLevels(){
+        return this.levels;
+    }
+
+    /**
+     * read a count decayed to some day, without changing it
+     * @param cell the count
+     * @param day the day
+     * @return the count
+     */
+    private double decayed(int cell, int day){
+        double c = this.counts[cell];
+        if (c == 0 || this.days[cell] >= day)
+            return c;
+        return c * Math.pow(this.dailyDecay, day - this.days[cell]);
+    }
+
+    /**
+     * find the bucket of a time
+     * @param time the time
+     * @return the bucket of its time of the day
+     */
+    private int bucketOf(long time){
+        return (int) (Math.floorMod(time, DAY) / this.bucketLength) % this.buckets;
+    }
+
+    /**
+     * find the day of a time
+     * @param time the time
+     * @return the number of the day, from 0
+     */
+    private static int dayOf(long time){
+        return (int) Math.floorDiv(time, DAY);
+    }
+
+    /**
+     * find a count
+     * @param bucket the bucket
+     * @param lev the level
+     * @param up the direction
+     * @return its index in counts
+     */
+    private int cellOf(int bucket, int lev, boolean up){
+        return (bucket * (this.levels + 1) + lev) * 2 + (up ? 1 : 0);
+    }
+}
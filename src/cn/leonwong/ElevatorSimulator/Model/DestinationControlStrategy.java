@@ -0,0 +1,35 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * Destination Control: passengers give their destination when calling, and each one is assigned to an elevator
+ * which already stops at (or near) that destination, so elevators make fewer stops per round trip
+ */
+public class DestinationControlStrategy extends SpeedFirstStrategy {
+    /// the cost of making an elevator stop at one more level, in floors
+    private static final int STOP_COST = 3;
+
+    @Override
+    public String getName(){
+        return "Destination Control";
+    }
+
+    @Override
+    public void evaluate(Building b, int from, int to, int[] costs){
+        for (int i = 0; i < b.getElevators(); ++i){
+            Elevator e = b.elevatorList.get(i);
+            // an elevator whose riders and assigned passengers already fill it is ignored
+            if (e.getPassengers() + e.getAssignedPassengers() >= e.getCapacity())
+                costs[i] = Integer.MAX_VALUE;
+            else if (e.willStopAt(to))
+                costs[i] = this.estimate(b, e, from, to);
+            // a new stop costs less when it is next to a stop the elevator makes anyway
+            else
+                costs[i] = this.estimate(b, e, from, to) + STOP_COST + Math.min(e.distanceToNearestStop(to), STOP_COST);
+        }
+    }
+
+    @Override
+    public boolean assignsPassengers(){
+        return true;
+    }
+}
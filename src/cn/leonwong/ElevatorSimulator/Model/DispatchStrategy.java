@@ -0,0 +1,64 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.Random;
+
+/**
+ * a strategy deciding which elevator answers a hall call
+ * Costs are written into an array owned by the caller, so dispatching allocates nothing
+ */
+public interface DispatchStrategy {
+    /**
+     * getter for the name shown to the user
+     * @return the name of this strategy
+     */
+    String getName();
+
+    /**
+     * estimate the cost of sending each elevator to a passenger
+     * @param b the building
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     * @param costs costs[i] is set for the elevator elevatorList.get(i), Integer.MAX_VALUE to ignore it
+     */
+    void evaluate(Building b, int from, int to, int[] costs);
+
+    /**
+     * choose the elevator to send, by default the cheapest one, breaking ties randomly
+     * @param b the building
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     * @param costs an array no shorter than the number of elevators, to be overwritten
+     * @param rng the random generator used to break ties
+     * @return the index of the chosen elevator in elevatorList
+     */
+    default int choose(Building b, int from, int to, int[] costs, Random rng){
+        this.evaluate(b, from, to, costs);
+        return cheapest(costs, b.getElevators(), rng);
+    }
+
+    /**
+     * decide whether the chosen elevator should be the only one taking the passenger, as in destination control
+     * @return true if passengers are assigned to elevators, false if any elevator may take them
+     */
+    default boolean assignsPassengers(){
+        return false;
+    }
+
+    /**
+     * find the cheapest elevator, a tie is won by either one at random
+     * @param costs the costs of each elevator
+     * @param n the number of elevators
+     * @param rng the random generator used to break ties
+     * @return the index of the cheapest elevator
+     */
+    static int cheapest(int[] costs, int n, Random rng){
+        int fastestIndex = 0;
+        for (int i = 1; i < n; ++i){
+            if (costs[i] < costs[fastestIndex])
+                fastestIndex = i;
+            else if (costs[i] == costs[fastestIndex] && rng.nextBoolean())
+                fastestIndex = i;
+        }
+        return fastestIndex;
+    }
+}
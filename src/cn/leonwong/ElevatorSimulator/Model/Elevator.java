@@ -1,15 +1,18 @@
 package cn.leonwong.ElevatorSimulator.Model;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Map;
 import java.util.Vector;
-import java.util.TreeSet;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Elevator Thread
+ * Elevator
+ * Its loop is cut into steps, which its scheduler runs on a thread, on a pool or in a simulation
  * @author 1652795 Leon Wong
  */
-public class Elevator extends Thread {
+public class Elevator implements Runnable {
 
     /// time interval for going to another floor
     public static final int FLOOR_INTERVAL = 500;
@@ -28,12 +31,10 @@ public class Elevator extends Thread {
     private int direction;
     /// When changing direction is needed, add another flag
     private int nextDire;
-    /// Thread for an elevator
-    private Thread t;
     /// Note for  the index of this elevator
     private int index;
     /// Note for person waiting for elevators in each level
-    private Vector< Vector<Passenger> > levelList;
+    private Vector<HallQueue> levelList;
     /// Note for max level available
     private int maxLevel;
     /// Note for maximum numbers of passengers available in this elevator
@@ -41,89 +42,217 @@ public class Elevator extends Thread {
     /// Note for which level this elevator is at
     private int level;
     /// Note for messageCenter
-    private Vector<Message> messageCenter;
+    private MessageBus messageCenter;
     /// Note for each passenger in this elevator
     private Vector<Passenger> passengerList;
     /// Note for each level that this elevator should stop and open
-    private TreeSet<Integer> destinations;
-    /// Note for the lock used to lock levelList
-    private ReentrantLock lock;
+    private FloorSet destinations;
+    /// Note for each level that some passenger in this elevator is heading for
+    private FloorSet riderFloors;
+    /// Note for how many passengers in this elevator are heading for each level
+    private int[] ridersTo;
+    /// Note for each level that some passenger assigned to (but not yet in) this elevator is heading for
+    private FloorSet assignedFloors;
+    /// Note for how many passengers assigned to this elevator are heading for each level
+    private int[] assignedTo;
+    /// Note for the number of passengers assigned to this elevator and still waiting
+    private int assignedCount;
+    /// Note for whether a passenger assigned to this elevator was left at the current stop
+    private boolean assignedLeft;
+    /// Note for whether the passengers going up and down get on at the current stop
+    private boolean boardUp, boardDown;
+    /// Note for the locks of each level in levelList
+    private FloorLocks locks;
+    /// Note for the scheduler running this elevator
+    private ElevatorScheduler scheduler;
+    /// Note for the kind of work this elevator will do on its next step, one of SimEvent's modes
+    private int nextEvent;
+    /// Note for passengers leaving at the current stop
+    private ArrayList<Passenger> stopQueue;
+    /// Note for the next passenger to handle in stopQueue
+    private int stopIndex;
+    /// Note for whether anyone got off or on at the current level
+    private boolean served;
+    /// Note for the number of floors this elevator has travelled, a measure of the energy it used
+    private long floorsTravelled;
+    /// Note for the number of stops where someone got off or on
+    private long stops;
 
     /**
-     * Start this Thread
+     * Start this elevator on its scheduler
      */
-    @Override
     public void start(){
-        System.out.printf("Elevator #%d starting.\n", this.index);
-        if (this.t == null){
-            this.t = new Thread(this, "Elevator #" + this.index);
-            this.t.start();
-        }
+        Log.info(Log.Category.Elevator, "Elevator #%d starting.", this.index);
+        this.scheduler.start(this);
     }
 
     /**
-     * Run function
+     * Run function, used when this elevator has a thread of its own
      */
     @Override
     public void run(){
+        long delay = FLOOR_INTERVAL;
         while (!this.stop){
-            try {
-                Thread.sleep(FLOOR_INTERVAL);
-            }
-            catch (InterruptedException e){
-                System.out.println("Interrupted: " + this.index);
-            }
-            this.decideDestinations();
-            // if this elevator is idle...
-            if (this.isIdle()){
-                // just do nothing and go on...
-                System.out.println("Elevator: Elevator #" + this.index + " is idle.");
-                this.messageCenter.add(new Message(
-                        Message.elevatorIsIdle, this.index, 0, null
-                ));
-            }
-            // else...
-            else {
-                // move the elevator according to the direction
-                this.level += this.direction;
-                System.out.printf("Elevator: Elevator #%d goes %+d.\n", this.index, this.direction);
-                // for each passenger who wants to get down at this level...
-                this.messageCenter.add(new Message(
-                        Message.elevatorChangeFloor, this.index, this.level, null
-                ));
-                ArrayList<Passenger> leaving = new ArrayList<>();
-                for (Passenger pass : this.passengerList){
-                    if (pass.destination == this.level)
-                        leaving.add(pass);
-                }
-                // remove them from the passenger level
-                for (Passenger pass : leaving){
-                    this.passengerLeaveElevator(this.level, pass);
-                }
-                // and remove this level from destinations
-                this.destinations.remove(this.level);
-                // for each passenger at this level...
-                // lock the levelList first
-                this.lock.lock();
+            if (delay > 0){
                 try {
-                    ArrayList<Passenger> gettingOn = new ArrayList<>();
-                    for (Passenger pass : this.levelList.get(this.level)) {
-                        // if the passenger has the SAME direction as the elevator...
-                        if ((pass.destination - this.level) * this.direction >= 0 || this.isIdle())
-                            // this passenger gets on this elevator
-                            gettingOn.add(pass);
-                    }
-                    for (Passenger pass : gettingOn) {
-                        this.passengerEnterElevetor(this.level, pass);
-                    }
+                    Thread.sleep(delay);
                 }
-                finally {
-                    this.lock.unlock();
+                catch (InterruptedException e){
+                    Log.warn(Log.Category.Elevator, "Elevator #%d interrupted.", this.index);
                 }
+            }
+            delay = this.step();
+        }
+    }
+
+    /**
+     * do the next piece of work of this elevator, one pause of the run loop at a time
+     * It holds this elevator's monitor, so a snapshot never sees a step half done.
+     * @return the time (ms) this piece of work takes, i.e. how long to wait before the next step
+     */
+    public synchronized long step(){
+        switch (this.nextEvent){
+            case SimEvent.alight:
+                return this.alightNext();
+            case SimEvent.doorOpen:
+                return this.openDoor();
+            case SimEvent.board:
+                return this.boardNext();
+            default:
+                return this.arriveAtFloor();
+        }
+    }
+
+    /**
+     * move to the next floor if there is something to do, and find the passengers getting down here
+     * @return the time this step takes
+     */
+    private long arriveAtFloor(){
+        this.decideDestinations();
+        // if this elevator is idle...
+        if (this.isIdle()){
+            // just do nothing and go on...
+            Log.debug(Log.Category.Elevator, "Elevator #%d is idle.", this.index);
+            this.messageCenter.add(new Message(
+                    Message.elevatorIsIdle, this.index, 0, null, this.scheduler.now()
+            ));
+            return FLOOR_INTERVAL;
+        }
+        // move the elevator according to the direction
+        this.level += this.direction;
+        if (this.direction != Direction.changingDirection)
+            ++this.floorsTravelled;
+        Log.debug(Log.Category.Elevator, "Elevator #%d goes %+d.", this.index, this.direction);
+        this.messageCenter.add(new Message(
+                Message.elevatorChangeFloor, this.index, this.level, null, this.scheduler.now()
+        ));
+        // for each passenger who wants to get down at this level...
+        this.stopQueue.clear();
+        for (Passenger pass : this.passengerList){
+            if (pass.destination == this.level)
+                this.stopQueue.add(pass);
+        }
+        this.stopIndex = 0;
+        this.nextEvent = SimEvent.alight;
+        return 0;
+    }
+
+    /**
+     * let the next passenger getting down at this level leave
+     * @return the time this step takes
+     */
+    private long alightNext(){
+        if (this.stopIndex < this.stopQueue.size()){
+            Passenger pass = this.stopQueue.get(this.stopIndex++);
+            if (!this.passengerLeaveElevator(this.level, pass))
+                return 0;
+            this.served = true;
+            return PASS_INTERVAL;
+        }
+        // and remove this level from destinations
+        this.destinations.remove(this.level);
+        this.nextEvent = SimEvent.doorOpen;
+        return 0;
+    }
 
-                this.decideDirection();
+    /**
+     * decide which passengers at this level get on: those heading for the same direction, or all if idle,
+     * turning, or at the top or bottom where the elevator leaves the other way
+     * @return the time this step takes
+     */
+    private long openDoor(){
+        boolean any = this.boardsAnyDirection();
+        this.boardUp = any || this.direction == Direction.Upward;
+        this.boardDown = any || this.direction == Direction.Downward;
+        // lock this level first
+        this.locks.lock(this.level);
+        try {
+            // passengers assigned to this elevator but going the other way are left for now
+            this.assignedLeft = this.levelList.get(this.level).hasAssigned(this.index, !this.boardUp, !this.boardDown);
+        }
+        finally {
+            this.locks.unlock(this.level);
+        }
+        this.nextEvent = SimEvent.board;
+        return 0;
+    }
+
+    /**
+     * let the next waiting passenger get on, and decide the direction when all are on
+     * @return the time this step takes
+     */
+    private long boardNext(){
+        if (!this.isFull()){
+            if (this.passengerEnterElevetor(this.level)){
+                this.served = true;
+                return PASS_INTERVAL;
+            }
+        }
+        else {
+            Log.debug(Log.Category.Elevator, "Elevator #%d is full!", this.index);
+            this.locks.lock(this.level);
+            try {
+                if (this.levelList.get(this.level).hasAssigned(this.index, this.boardUp, this.boardDown))
+                    this.assignedLeft = true;
             }
+            finally {
+                this.locks.unlock(this.level);
+            }
+        }
+        if (this.served){
+            ++this.stops;
+            this.served = false;
         }
+        this.decideDirection();
+        // come back for the passengers assigned to this elevator who could not get on
+        if (this.assignedLeft)
+            this.addDestination(this.level);
+        this.nextEvent = SimEvent.arriveAtFloor;
+        return FLOOR_INTERVAL;
+    }
+
+    /**
+     * getter for the number of floors travelled
+     * @return the number of floors this elevator has travelled
+     */
+    public long getFloorsTravelled(){
+        return this.floorsTravelled;
+    }
+
+    /**
+     * getter for the number of stops
+     * @return the number of stops where someone got off or on
+     */
+    public long getStops(){
+        return this.stops;
+    }
+
+    /**
+     * getter for the index of this elevator
+     * @return the index, starting from 1
+     */
+    public int getIndex(){
+        return this.index;
     }
 
     @Override
@@ -138,50 +267,78 @@ public class Elevator extends Thread {
      * @param maxPass the capacity of this elevator
      * @param levs a list for passengers in each level
      * @param mess message center
-     * @param l a reentrantlock to lock level list
+     * @param l the locks of each level in level list
+     */
+    public Elevator(int name, int max, int maxPass, Vector<HallQueue> levs, MessageBus mess, FloorLocks l){
+        this(name, max, maxPass, levs, mess, l, null);
+    }
+
+    /**
+     * create a new elevator run by a scheduler
+     * @param name the in dex of this elevator
+     * @param max the max level of the building
+     * @param maxPass the capacity of this elevator
+     * @param levs a list for passengers in each level
+     * @param mess message center
+     * @param l the locks of each level in level list
+     * @param sched the scheduler, null to run on its own thread
      */
-    public Elevator(int name, int max, int maxPass, Vector< Vector<Passenger> > levs, Vector<Message> mess, ReentrantLock l){
+    public Elevator(int name, int max, int maxPass, Vector<HallQueue> levs, MessageBus mess, FloorLocks l, ElevatorScheduler sched){
         this.index = name;
         this.maxLevel = max;
         this.maxPassenger = maxPass;
         this.levelList = levs;
         this.messageCenter = mess;
-        this.lock = l;
+        this.locks = l;
         this.level = 1;
         this.direction = Direction.changingDirection;
         this.passengerList = new Vector<>();
-        this.destinations = new TreeSet<>();
+        this.destinations = new FloorSet(max);
+        this.riderFloors = new FloorSet(max);
+        this.ridersTo = new int[max + 1];
+        this.assignedFloors = new FloorSet(max);
+        this.assignedTo = new int[max + 1];
+        this.assignedCount = 0;
         this.nextDire = Direction.Upward;
+        this.scheduler = sched == null ? new ThreadScheduler() : sched;
+        this.nextEvent = SimEvent.arriveAtFloor;
+        this.stopQueue = new ArrayList<>();
         this.stop = false;
     }
 
     /**
-     * add one passenger into this elevator
+     * let the passenger who has waited longest at a level among those getting on enter this elevator
      * @param lev where the passenger entered the elevator
-     * @param pass an object refering to the passenger
-     * @return true if the passenger entered this elevator successfully, false otherwise
+     * @return true if a passenger entered this elevator, false if nobody is left to get on
      */
-    private synchronized boolean passengerEnterElevetor(int lev, Passenger pass){
-        if (this.isFull()) {
-            System.out.printf("Elevator: Elevator #%d is full!\n", this.index);
-            return false;
+    private synchronized boolean passengerEnterElevetor(int lev){
+        Passenger pass;
+        this.locks.lock(lev);
+        try {
+            // another elevator may have taken some since the door opened
+            pass = this.levelList.get(lev).poll(this.index, this.boardUp, this.boardDown);
         }
-        else {
-            this.passengerList.add(pass);
-            this.messageCenter.add(
-                    new Message(Message.passengerEnterElevator, this.index, pass.destination, pass)
-            );
-            this.destinations.add(pass.destination);
-            try {
-                Thread.sleep(PASS_INTERVAL);
-            }
-            catch (InterruptedException e){
-                System.out.println("Interrupted: " + this.index);
-            }
-            System.out.printf("Elevator: A passenger heading for #%d floor entered elevator #%d at level #%d.\n", pass.destination, this.index, this.level);
-            this.levelList.get(lev).remove(pass);
-            return true;
+        finally {
+            this.locks.unlock(lev);
         }
+        if (pass == null)
+            return false;
+        this.passengerList.add(pass);
+        pass.boardTime = this.scheduler.now();
+        if (pass.elevator == this.index){
+            --this.assignedCount;
+            if (--this.assignedTo[pass.destination] == 0)
+                this.assignedFloors.remove(pass.destination);
+        }
+        pass.elevator = this.index;
+        if (this.ridersTo[pass.destination]++ == 0)
+            this.riderFloors.add(pass.destination);
+        this.messageCenter.add(
+                new Message(Message.passengerEnterElevator, this.index, pass.destination, pass, pass.boardTime)
+        );
+        this.destinations.add(pass.destination);
+        Log.debug(Log.Category.Elevator, "A passenger heading for #%d floor entered elevator #%d at level #%d.", pass.destination, this.index, this.level);
+        return true;
     }
 
     /**
@@ -194,17 +351,13 @@ public class Elevator extends Thread {
         if (this.isEmpty())
             return false;
         else {
-            this.passengerList.remove(pass);
+            if (this.passengerList.remove(pass) && --this.ridersTo[pass.destination] == 0)
+                this.riderFloors.remove(pass.destination);
+            pass.alightTime = this.scheduler.now();
             this.messageCenter.add(
-                    new Message(Message.passengerLeaveElevator, this.index, lev, pass)
+                    new Message(Message.passengerLeaveElevator, this.index, lev, pass, pass.alightTime)
             );
-            try {
-                Thread.sleep(PASS_INTERVAL);
-            }
-            catch (InterruptedException e){
-                System.out.println("Interrupted: " + this.index);
-            }
-            System.out.printf("Elevator: A passenger left the elevator #%d at #%d floor.\n", this.index, this.level);
+            Log.debug(Log.Category.Elevator, "A passenger left the elevator #%d at #%d floor.", this.index, this.level);
             return true;
         }
     }
@@ -241,6 +394,71 @@ public class Elevator extends Thread {
         this.destinations.add(dest);
     }
 
+    /**
+     * assign a waiting passenger to this elevator, only this elevator will take the passenger
+     * @param pass the passenger, already waiting at its level
+     */
+    public synchronized void assignPassenger(Passenger pass){
+        pass.elevator = this.index;
+        ++this.assignedCount;
+        if (this.assignedTo[pass.destination]++ == 0)
+            this.assignedFloors.add(pass.destination);
+    }
+
+    /**
+     * getter for the number of passengers assigned to this elevator and still waiting
+     * @return the number of assigned passengers
+     */
+    public int getAssignedPassengers(){
+        return this.assignedCount;
+    }
+
+    /**
+     * getter for the capacity
+     * @return the maximum number of passengers in this elevator
+     */
+    public int getCapacity(){
+        return this.maxPassenger;
+    }
+
+    /**
+     * decide whether this elevator will stop at a level, for a pick-up, a rider or an assigned passenger
+     * @param lev the level
+     * @return true if it will stop there, false otherwise
+     */
+    public boolean willStopAt(int lev){
+        return this.destinations.contains(lev) || this.riderFloors.contains(lev) || this.assignedFloors.contains(lev);
+    }
+
+    /**
+     * getter for the distance from a level to the nearest level this elevator will stop at
+     * @param lev the level
+     * @return the number of floors between, maxLevel if this elevator will not stop anywhere
+     */
+    public int distanceToNearestStop(int lev){
+        int best = this.maxLevel;
+        best = Math.min(best, distanceToNearest(this.destinations, lev));
+        best = Math.min(best, distanceToNearest(this.riderFloors, lev));
+        return Math.min(best, distanceToNearest(this.assignedFloors, lev));
+    }
+
+    /**
+     * getter for the distance from a level to the nearest level of a set
+     * @param set the set of levels
+     * @param lev the level
+     * @return the number of floors between, Integer.MAX_VALUE if the set is empty
+     */
+    private static int distanceToNearest(FloorSet set, int lev){
+        int best = Integer.MAX_VALUE;
+        int above = set.nextSetBit(lev);
+        int below = set.previousSetBit(lev);
+        if (above != -1)
+            best = above - lev;
+        if (below != -1)
+            best = Math.min(best, lev - below);
+        return best;
+    }
+
     /**
      * getter for the current level this elevator is at
      * @return the current level this elevator is at
@@ -252,7 +470,7 @@ public class Elevator extends Thread {
     /**
      * decide what direction this elevator should go after a level's all work done
      */
-    private synchronized void decideDirection(){
+    synchronized void decideDirection(){
         // if the elevator has just changed its direction...
         if (this.direction == Direction.changingDirection){
             // use the direction decided just now
@@ -268,11 +486,11 @@ public class Elevator extends Thread {
             return;
         }
         // or if the elevator is still running towards the same direction...
-        for (int i = this.level + this.direction; i != 0 && i != maxLevel + 1; i = i + this.direction){
-            // find if it is needed to go on towards the current direction
-            if (this.destinations.contains(i))
-                return;
-        }
+        // find if it is needed to go on towards the current direction
+        if (this.direction == Direction.Upward && this.destinations.nextSetBit(this.level + 1) != -1)
+            return;
+        if (this.direction == Direction.Downward && this.destinations.previousSetBit(this.level - 1) >= 1)
+            return;
         // Otherwise, change its direction
         this.nextDire = -this.direction;
         this.direction = Direction.changingDirection;
@@ -291,14 +509,7 @@ public class Elevator extends Thread {
      * @return the biggest number of level in destination list
      */
     public int getMaxDestination(){
-        int maxLev = 0;
-        for (Passenger p : this.passengerList)
-            if (p.destination > maxLev)
-                maxLev = p.destination;
-        for (Integer i : this.destinations)
-            if (i > maxLev)
-                maxLev = i;
-        return maxLev;
+        return Math.max(0, Math.max(this.riderFloors.max(), this.destinations.max()));
     }
 
     /**
@@ -307,12 +518,12 @@ public class Elevator extends Thread {
      */
     public int getMinDestination(){
         int minLev = this.maxLevel;
-        for (Passenger p : this.passengerList)
-            if (p.destination < minLev)
-                minLev = p.destination;
-        for (Integer i : this.destinations)
-            if (i < minLev)
-                minLev = i;
+        int riders = this.riderFloors.min();
+        int dests = this.destinations.min();
+        if (riders != -1 && riders < minLev)
+            minLev = riders;
+        if (dests != -1 && dests < minLev)
+            minLev = dests;
         return minLev;
     }
 
@@ -324,12 +535,21 @@ public class Elevator extends Thread {
         return this.passengerList.size();
     }
 
+    /**
+     * getter for a passenger in this elevator
+     * @param i the position of the passenger, in the order they got on
+     * @return the passenger
+     */
+    Passenger getPassenger(int i){
+        return this.passengerList.get(i);
+    }
+
     /**
      * use this to ensure that every passenger's destination is in this destination list
      */
     private void decideDestinations(){
-        for (Passenger pass : this.passengerList)
-            this.destinations.add(pass.destination);
+        for (int i = this.riderFloors.nextSetBit(0); i != -1; i = this.riderFloors.nextSetBit(i + 1))
+            this.destinations.add(i);
     }
 
     /**
@@ -341,7 +561,7 @@ public class Elevator extends Thread {
     }
 
     /// decide whether this thread has been stopped
-    private boolean stop;
+    private volatile boolean stop;
 
     /**
      * used to stop this thread
@@ -350,6 +570,138 @@ public class Elevator extends Thread {
         this.stop = true;
     }
 
+    /**
+     * decide whether this elevator has been stopped
+     * @return true if stopped, false otherwise
+     */
+    boolean isStopped(){
+        return this.stop;
+    }
+
+    /**
+     * getter for the kind of work this elevator will do on its next step
+     * @return one of SimEvent's modes
+     */
+    int getNextEvent(){
+        return this.nextEvent;
+    }
+
+    /**
+     * write the state of this elevator into a snapshot, the caller holds this elevator's monitor
+     * The passengers already handled at the current stop are left out of the stop queue of those getting off.
+     * @param out where to write
+     * @param table the number of each passenger in the snapshot
+     * @throws IOException if it cannot be written
+     */
+    void saveState(DataOutput out, Map<Passenger, Integer> table) throws IOException{
+        out.writeInt(this.level);
+        out.writeByte(this.direction);
+        out.writeByte(this.nextDire);
+        out.writeByte(this.nextEvent);
+        out.writeBoolean(this.served);
+        out.writeBoolean(this.assignedLeft);
+        out.writeBoolean(this.boardUp);
+        out.writeBoolean(this.boardDown);
+        out.writeLong(this.floorsTravelled);
+        out.writeLong(this.stops);
+        out.writeInt(this.destinations.size());
+        for (int i = this.destinations.nextSetBit(0); i != -1; i = this.destinations.nextSetBit(i + 1))
+            out.writeInt(i);
+        out.writeInt(this.passengerList.size());
+        for (Passenger pass : this.passengerList)
+            out.writeInt(table.get(pass));
+        out.writeInt(this.stopQueue.size() - this.stopIndex);
+        for (int i = this.stopIndex; i < this.stopQueue.size(); ++i){
+            // a passenger taken and delivered by another elevator is gone from the building
+            Integer n = table.get(this.stopQueue.get(i));
+            out.writeInt(n == null ? -1 : n);
+        }
+    }
+
+    /**
+     * read the state of this elevator from a snapshot, before it is started
+     * The passengers assigned to this elevator are not read, they are assigned again by the snapshot.
+     * @param in where to read
+     * @param table the passengers of the snapshot, by their numbers
+     * @param version the version of the snapshot's layout
+     * @throws IOException if it cannot be read or is corrupt
+     */
+    void restoreState(DataInput in, Passenger[] table, int version) throws IOException{
+        this.level = this.readLevel(in);
+        this.direction = in.readByte();
+        this.nextDire = in.readByte();
+        this.nextEvent = in.readByte();
+        if (Math.abs(this.direction) > 1 || Math.abs(this.nextDire) > 1 || this.nextEvent < SimEvent.arriveAtFloor || this.nextEvent > SimEvent.board)
+            throw new IOException("Corrupt snapshot: bad state of elevator #" + this.index);
+        this.served = in.readBoolean();
+        this.assignedLeft = in.readBoolean();
+        if (version >= 2){
+            this.boardUp = in.readBoolean();
+            this.boardDown = in.readBoolean();
+        }
+        this.floorsTravelled = in.readLong();
+        this.stops = in.readLong();
+        for (int i = in.readInt(); i > 0; --i)
+            this.destinations.add(this.readLevel(in));
+        for (int i = in.readInt(); i > 0; --i){
+            Passenger pass = readPassenger(in, table);
+            if (pass == null || pass.destination < 1 || pass.destination > this.maxLevel)
+                throw new IOException("Corrupt snapshot: bad passenger in elevator #" + this.index);
+            this.passengerList.add(pass);
+            if (this.ridersTo[pass.destination]++ == 0)
+                this.riderFloors.add(pass.destination);
+        }
+        for (int i = in.readInt(); i > 0; --i){
+            Passenger pass = readPassenger(in, table);
+            if (pass != null)
+                this.stopQueue.add(pass);
+        }
+        this.stopIndex = 0;
+        // version 1 kept those getting on in the stop queue, they are still waiting at the level
+        if (version < 2 && this.nextEvent == SimEvent.board){
+            this.stopQueue.clear();
+            boolean any = this.boardsAnyDirection();
+            this.boardUp = any || this.direction == Direction.Upward;
+            this.boardDown = any || this.direction == Direction.Downward;
+        }
+    }
+
+    /**
+     * decide whether passengers going either way get on at this level
+     * @return true if idle, turning, or at the top or bottom where the elevator leaves the other way
+     */
+    private boolean boardsAnyDirection(){
+        return this.isIdle() || this.direction == Direction.changingDirection
+                || this.level == 1 || this.level == this.maxLevel;
+    }
+
+    /**
+     * read a level of this building
+     * @param in where to read
+     * @return the level
+     * @throws IOException if it cannot be read or is not a level of this building
+     */
+    private int readLevel(DataInput in) throws IOException{
+        int lev = in.readInt();
+        if (lev < 1 || lev > this.maxLevel)
+            throw new IOException("Corrupt snapshot: bad level of elevator #" + this.index);
+        return lev;
+    }
+
+    /**
+     * read a reference to a passenger
+     * @param in where to read
+     * @param table the passengers of the snapshot, by their numbers
+     * @return the passenger, null if gone
+     * @throws IOException if it cannot be read or is out of the table
+     */
+    private static Passenger readPassenger(DataInput in, Passenger[] table) throws IOException{
+        int n = in.readInt();
+        if (n < -1 || n >= table.length)
+            throw new IOException("Corrupt snapshot: bad passenger reference");
+        return n == -1 ? null : table[n];
+    }
+
     /**
      * getter for a list of destinations of this elevator in a String
      * @return the String of list of destinations
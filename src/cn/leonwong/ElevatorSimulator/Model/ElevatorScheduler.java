@@ -0,0 +1,26 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * decides where the steps of elevators run: on their own threads, on a shared pool, or in a simulation
+ * A scheduler may be shared by many buildings
+ */
+public interface ElevatorScheduler {
+    /**
+     * start running an elevator, its first step is due one floor interval later
+     * @param e the elevator
+     */
+    void start(Elevator e);
+
+    /**
+     * getter for the clock that elevators and passengers are timed by
+     * @return the current time in ms, virtual in a simulation and wall clock otherwise
+     */
+    default long now(){
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * release the threads of this scheduler, elevators still running will be stopped
+     */
+    void shutdown();
+}
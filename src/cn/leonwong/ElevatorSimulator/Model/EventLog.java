@@ -0,0 +1,185 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A recording written by EventRecorder, mapped read-only and read by record index
+ * Records are in the order they were recorded, which is the order of their times but for the few ms
+ * a message may wait in the message bus, so the record at any time is found by binary search.
+ */
+public class EventLog implements Closeable {
+    /// the number of records mapped in each chunk, so that a chunk stays under 2 GB
+    private static final int CHUNK_RECORDS = 1 << 25;
+
+    /// the file
+    private final FileChannel channel;
+    /// the mapped records, CHUNK_RECORDS in each but the last
+    private final MappedByteBuffer[] chunks;
+    /// the number of records
+    private final long size;
+    /// the number of levels of the building recorded
+    private final int levels;
+    /// the number of elevators of the building recorded
+    private final int elevators;
+
+    /**
+     * open a recording
+     * @param file the file
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public EventLog(Path file) throws IOException{
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (this.channel.size() < EventRecorder.HEADER_SIZE)
+                throw new IOException("Not an elevator recording: " + file);
+            MappedByteBuffer header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, EventRecorder.HEADER_SIZE);
+            if (header.getInt(0) != EventRecorder.MAGIC)
+                throw new IOException("Not an elevator recording: " + file);
+            if (header.getInt(4) != EventRecorder.VERSION)
+                throw new IOException("Unsupported recording version " + header.getInt(4) + ": " + file);
+            this.levels = header.getInt(8);
+            this.elevators = header.getInt(12);
+            // a file cut short keeps the records it holds in full
+            long stored = (this.channel.size() - EventRecorder.HEADER_SIZE) / EventRecorder.RECORD_SIZE;
+            this.size = Math.min(header.getLong(EventRecorder.COUNT_OFFSET), stored);
+            this.chunks = new MappedByteBuffer[(int) ((this.size + CHUNK_RECORDS - 1) / CHUNK_RECORDS)];
+            for (int i = 0; i < this.chunks.length; ++i){
+                long first = (long) i * CHUNK_RECORDS;
+                long records = Math.min(CHUNK_RECORDS, this.size - first);
+                this.chunks[i] = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                        EventRecorder.HEADER_SIZE + first * EventRecorder.RECORD_SIZE, records * EventRecorder.RECORD_SIZE);
+            }
+        }
+        catch (IOException e){
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * getter for the number of records
+     * @return the number of records
+     */
+    public long size(){
+        return this.size;
+    }
+
+    /**
+     * getter for the number of levels
+     * @return the number of levels of the building recorded
+     */
+    public int getLevels(){
+        return this.levels;
+    }
+
+    /**
+     * getter for the number of elevators
+     * @return the number of elevators of the building recorded
+     */
+    public int getElevators(){
+        return this.elevators;
+    }
+
+    /**
+     * getter for the time of a record
+     * @param i the index of the record
+     * @return the time (ms) the message took place
+     */
+    public long getTime(long i){
+        return this.chunk(i).getLong(offset(i));
+    }
+
+    /**
+     * getter for the passenger of a record
+     * @param i the index of the record
+     * @return the id of the passenger, -1 if none
+     */
+    public long getPassenger(long i){
+        return this.chunk(i).getLong(offset(i) + 8);
+    }
+
+    /**
+     * getter for the kind of a record
+     * @param i the index of the record
+     * @return one of the modes in Message
+     */
+    public int getMode(long i){
+        return this.chunk(i).getInt(offset(i) + 16);
+    }
+
+    /**
+     * getter for the elevator of a record
+     * @param i the index of the record
+     * @return the index of the elevator, 0 if none
+     */
+    public int getElevator(long i){
+        return this.chunk(i).getInt(offset(i) + 20);
+    }
+
+    /**
+     * getter for the level of a record
+     * @param i the index of the record
+     * @return the level of the message, the destination for a passenger entering an elevator
+     */
+    public int getLevel(long i){
+        return this.chunk(i).getInt(offset(i) + 24);
+    }
+
+    /**
+     * getter for the starting level of the passenger of a record
+     * @param i the index of the record
+     * @return the starting level, 0 if there is no passenger
+     */
+    public int getOrigin(long i){
+        return this.chunk(i).getInt(offset(i) + 28);
+    }
+
+    /**
+     * find the first record at or after some time
+     * @param time the time (ms)
+     * @return the index of the record, size() if none
+     */
+    public long indexAt(long time){
+        long lo = 0, hi = this.size;
+        while (lo < hi){
+            long mid = (lo + hi) >>> 1;
+            if (this.getTime(mid) < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * close the file
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException{
+        this.channel.close();
+    }
+
+    /**
+     * find the chunk holding a record
+     * @param i the index of the record
+     * @return the chunk
+     */
+    private MappedByteBuffer chunk(long i){
+        return this.chunks[(int) (i / CHUNK_RECORDS)];
+    }
+
+    /**
+     * find where a record is in its chunk
+     * @param i the index of the record
+     * @return the offset in bytes
+     */
+    private static int offset(long i){
+        return (int) (i % CHUNK_RECORDS) * EventRecorder.RECORD_SIZE;
+    }
+}
@@ -0,0 +1,134 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends messages to a binary, memory-mapped file, one fixed-size record each
+ * The file is mapped a segment at a time, so recording a message is a few stores into memory and
+ * never a system call. The header keeps the number of records written, so a file cut short by a crash
+ * can still be read up to its last complete record.
+ *
+ * Header (32 bytes): magic, version, levels, elevators (ints), record count (long), 8 bytes reserved.
+ * Record (32 bytes): time (long), passenger id (long, -1 if none), mode, elevator, level,
+ * starting level of the passenger (ints, 0 if none).
+ */
+public class EventRecorder implements Closeable {
+    /// marks a file as a recording, "ELVR"
+    static final int MAGIC = 0x454C5652;
+    /// the version of the file layout
+    static final int VERSION = 1;
+    /// the size of the header in bytes
+    static final int HEADER_SIZE = 32;
+    /// the size of a record in bytes
+    static final int RECORD_SIZE = 32;
+    /// the offset of the record count in the header
+    static final int COUNT_OFFSET = 16;
+    /// the number of records mapped at a time
+    private static final int SEGMENT_RECORDS = 1 << 20;
+
+    /// the file
+    private final FileChannel channel;
+    /// the mapped header
+    private final MappedByteBuffer header;
+    /// the mapped segment being written
+    private MappedByteBuffer segment;
+    /// the number of records written
+    private long count;
+    /// denote if recording has failed or the file has been closed
+    private boolean closed;
+
+    /**
+     * create a new recording, replacing the file if it exists
+     * @param file the file
+     * @param levs the number of levels of the building
+     * @param elevs the number of elevators of the building
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public EventRecorder(Path file, int levs, int elevs) throws IOException{
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.header = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        this.header.putInt(0, MAGIC);
+        this.header.putInt(4, VERSION);
+        this.header.putInt(8, levs);
+        this.header.putInt(12, elevs);
+        this.header.putLong(COUNT_OFFSET, 0);
+        this.count = 0;
+        this.closed = false;
+    }
+
+    /**
+     * append a message
+     * @param m the message, its time must be set
+     */
+    public synchronized void record(Message m){
+        if (this.closed)
+            return;
+        int slot = (int) (this.count % SEGMENT_RECORDS);
+        if (slot == 0 && !this.mapSegment())
+            return;
+        int at = slot * RECORD_SIZE;
+        this.segment.putLong(at, m.time);
+        this.segment.putLong(at + 8, m.pass == null ? -1 : m.pass.id);
+        this.segment.putInt(at + 16, m.mode);
+        this.segment.putInt(at + 20, m.destElevator);
+        this.segment.putInt(at + 24, m.destLevel);
+        this.segment.putInt(at + 28, m.pass == null ? 0 : m.pass.origin);
+        // published after the record, so the count never covers a partial record
+        this.header.putLong(COUNT_OFFSET, ++this.count);
+    }
+
+    /**
+     * getter for the number of records
+     * @return the number of messages recorded
+     */
+    public synchronized long getCount(){
+        return this.count;
+    }
+
+    /**
+     * flush the recording to disk and close the file, trimming the unused end of the last segment
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException{
+        if (this.closed && !this.channel.isOpen())
+            return;
+        this.closed = true;
+        if (this.segment != null)
+            this.segment.force();
+        this.header.force();
+        this.segment = null;
+        try {
+            this.channel.truncate(HEADER_SIZE + this.count * RECORD_SIZE);
+        }
+        catch (IOException e){
+            // some platforms cannot shrink a mapped file, readers only use the records counted in the header
+        }
+        this.channel.close();
+    }
+
+    /**
+     * map the next segment of the file
+     * @return false if it cannot be mapped, in which case recording stops
+     */
+    private boolean mapSegment(){
+        try {
+            if (this.segment != null)
+                this.segment.force();
+            long offset = HEADER_SIZE + this.count * RECORD_SIZE;
+            this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, offset, (long) SEGMENT_RECORDS * RECORD_SIZE);
+            return true;
+        }
+        catch (IOException e){
+            Log.error(Log.Category.Model, "EventRecorder: cannot map the recording, recording stopped: %s", e.getMessage());
+            this.closed = true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One lock per floor guarding the passengers waiting there
+ *
+ * Locking protocol:
+ * 1. the waiting list of a level (Building.levelList.get(level)) is only read or changed while holding lock(level);
+ * 2. a floor lock is held for a single list operation, never across a sleep or a simulated pause;
+ * 3. an elevator's monitor may be held when taking a floor lock, but never the other way round;
+ * 4. a thread holds at most one floor lock, except lockAll(), which takes them in ascending order.
+ * So elevators stopping at different floors never wait for each other.
+ */
+public class FloorLocks {
+    /// the lock of each level, index 0 is unused like Building.levelList
+    private final ReentrantLock[] locks;
+
+    /**
+     * create locks for a building
+     * @param levs the number of levels
+     */
+    public FloorLocks(int levs){
+        this.locks = new ReentrantLock[levs + 1];
+        for (int i = 0; i <= levs; ++i)
+            this.locks[i] = new ReentrantLock();
+    }
+
+    /**
+     * lock a level
+     * @param level the level
+     */
+    public void lock(int level){
+        this.locks[level].lock();
+    }
+
+    /**
+     * unlock a level
+     * @param level the level
+     */
+    public void unlock(int level){
+        this.locks[level].unlock();
+    }
+
+    /**
+     * lock every level in ascending order, e.g. to take a consistent view of the whole building
+     */
+    public void lockAll(){
+        for (ReentrantLock l : this.locks)
+            l.lock();
+    }
+
+    /**
+     * unlock every level locked by lockAll()
+     */
+    public void unlockAll(){
+        for (int i = this.locks.length - 1; i >= 0; --i)
+            this.locks[i].unlock();
+    }
+}
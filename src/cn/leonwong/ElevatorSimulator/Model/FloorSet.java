@@ -0,0 +1,186 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * A set of levels kept as a bitset
+ * Adding, removing and finding the lowest or highest level never allocate, and min/max are kept up to date as levels change
+ */
+public class FloorSet {
+    /// one bit per level
+    private final long[] words;
+    /// the number of levels in this set
+    private int size;
+    /// the lowest level in this set, -1 if empty
+    private int min;
+    /// the highest level in this set, -1 if empty
+    private int max;
+
+    /**
+     * create an empty set
+     * @param maxLevel the highest level which can be added
+     */
+    public FloorSet(int maxLevel){
+        this.words = new long[(maxLevel >> 6) + 1];
+        this.size = 0;
+        this.min = -1;
+        this.max = -1;
+    }
+
+    /**
+     * add a level
+     * @param level the level
+     * @return true if the level was not in this set
+     */
+    public synchronized boolean add(int level){
+        long bit = 1L << level;
+        int w = level >> 6;
+        if ((this.words[w] & bit) != 0)
+            return false;
+        this.words[w] |= bit;
+        if (this.size++ == 0){
+            this.min = level;
+            this.max = level;
+        }
+        else {
+            if (level < this.min)
+                this.min = level;
+            if (level > this.max)
+                this.max = level;
+        }
+        return true;
+    }
+
+    /**
+     * remove a level
+     * @param level the level
+     * @return true if the level was in this set
+     */
+    public synchronized boolean remove(int level){
+        long bit = 1L << level;
+        int w = level >> 6;
+        if ((this.words[w] & bit) == 0)
+            return false;
+        this.words[w] &= ~bit;
+        if (--this.size == 0){
+            this.min = -1;
+            this.max = -1;
+        }
+        else {
+            if (level == this.min)
+                this.min = this.nextSetBit(level + 1);
+            if (level == this.max)
+                this.max = this.previousSetBit(level - 1);
+        }
+        return true;
+    }
+
+    /**
+     * decide whether a level is in this set
+     * @param level the level
+     * @return true if it is in this set, false otherwise
+     */
+    public synchronized boolean contains(int level){
+        return level >= 0 && (level >> 6) < this.words.length && (this.words[level >> 6] & (1L << level)) != 0;
+    }
+
+    /**
+     * find the lowest level in this set no lower than some level
+     * @param from the level to start from
+     * @return the level found, -1 if there is none
+     */
+    public synchronized int nextSetBit(int from){
+        if (from < 0)
+            from = 0;
+        int w = from >> 6;
+        if (w >= this.words.length)
+            return -1;
+        long word = this.words[w] & (-1L << from);
+        while (true){
+            if (word != 0)
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == this.words.length)
+                return -1;
+            word = this.words[w];
+        }
+    }
+
+    /**
+     * find the highest level in this set no higher than some level
+     * @param from the level to start from
+     * @return the level found, -1 if there is none
+     */
+    public synchronized int previousSetBit(int from){
+        if (from < 0)
+            return -1;
+        int w = from >> 6;
+        if (w >= this.words.length){
+            w = this.words.length - 1;
+            from = (w << 6) + 63;
+        }
+        long word = this.words[w] & (-1L >>> (63 - (from & 63)));
+        while (true){
+            if (word != 0)
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            if (w-- == 0)
+                return -1;
+            word = this.words[w];
+        }
+    }
+
+    /**
+     * getter for the lowest level
+     * @return the lowest level, -1 if empty
+     */
+    public synchronized int min(){
+        return this.min;
+    }
+
+    /**
+     * getter for the highest level
+     * @return the highest level, -1 if empty
+     */
+    public synchronized int max(){
+        return this.max;
+    }
+
+    /**
+     * getter for the number of levels
+     * @return the number of levels in this set
+     */
+    public synchronized int size(){
+        return this.size;
+    }
+
+    /**
+     * decide whether this set is empty
+     * @return true if empty, false otherwise
+     */
+    public synchronized boolean isEmpty(){
+        return this.size == 0;
+    }
+
+    /**
+     * remove all levels
+     */
+    public synchronized void clear(){
+        for (int i = 0; i < this.words.length; ++i)
+            this.words[i] = 0;
+        this.size = 0;
+        this.min = -1;
+        this.max = -1;
+    }
+
+    /**
+     * list the levels in ascending order, in the same form as a TreeSet
+     * @return e.g. "[2, 5, 7]"
+     */
+    @Override
+    public synchronized String toString(){
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = this.nextSetBit(0); i >= 0; i = this.nextSetBit(i + 1)){
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(i);
+        }
+        return sb.append(']').toString();
+    }
+}
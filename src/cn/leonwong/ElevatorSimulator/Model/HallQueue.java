@@ -0,0 +1,298 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The passengers waiting at a level, in separate first-come-first-served queues for each direction
+ * An elevator stopping here takes the passengers going its way from the heads of the queues, so boarding k of
+ * them costs O(k) however many are waiting, and whether anyone is going up or down is known in O(1).
+ * Passengers assigned to an elevator by destination control wait in that elevator's own queues.
+ * Like the Vector it replaces, it is only read or changed while holding the level's lock (see FloorLocks),
+ * except size() and the counts, which may be read at any time.
+ */
+public class HallQueue implements Iterable<Passenger> {
+    /**
+     * a growable ring buffer of passengers, oldest first
+     */
+    static final class Ring {
+        /// the passengers, from head
+        private Passenger[] items;
+        /// the position of the oldest passenger
+        private int head;
+        /// the number of passengers
+        private int size;
+
+        /**
+         * create an empty ring
+         */
+        Ring(){
+            this.items = new Passenger[8];
+        }
+
+        /**
+         * put a passenger at the end, doubling the buffer if full
+         * @param p the passenger
+         */
+        void add(Passenger p){
+            if (this.size == this.items.length){
+                Passenger[] bigger = new Passenger[this.items.length * 2];
+                for (int i = 0; i < this.size; ++i)
+                    bigger[i] = this.get(i);
+                this.items = bigger;
+                this.head = 0;
+            }
+            this.items[(this.head + this.size++) & (this.items.length - 1)] = p;
+        }
+
+        /**
+         * getter for the oldest passenger
+         * @return the passenger, null if empty
+         */
+        Passenger peek(){
+            return this.size == 0 ? null : this.items[this.head];
+        }
+
+        /**
+         * take the oldest passenger
+         * @return the passenger, null if empty
+         */
+        Passenger poll(){
+            if (this.size == 0)
+                return null;
+            Passenger p = this.items[this.head];
+            this.items[this.head] = null;
+            this.head = (this.head + 1) & (this.items.length - 1);
+            --this.size;
+            return p;
+        }
+
+        /**
+         * getter for a passenger
+         * @param i the position, 0 for the oldest
+         * @return the passenger
+         */
+        Passenger get(int i){
+            return this.items[(this.head + i) & (this.items.length - 1)];
+        }
+
+        /**
+         * getter for the number of passengers
+         * @return the number of passengers
+         */
+        int size(){
+            return this.size;
+        }
+    }
+
+    /// the level
+    private final int level;
+    /// the passengers going up whom any elevator may take
+    private final Ring up;
+    /// the passengers going down whom any elevator may take
+    private final Ring down;
+    /// the passengers going up assigned to each elevator, by its index; created when first used
+    private Ring[] assignedUp;
+    /// the passengers going down assigned to each elevator, by its index; created when first used
+    private Ring[] assignedDown;
+    /// the number of passengers going up, assigned or not
+    private volatile int upCount;
+    /// the number of passengers going down, assigned or not
+    private volatile int downCount;
+
+    /**
+     * create an empty queue
+     * @param lev the level
+     */
+    public HallQueue(int lev){
+        this.level = lev;
+        this.up = new Ring();
+        this.down = new Ring();
+    }
+
+    /**
+     * put a passenger at the end of the queue of its direction, or of its elevator's if it is assigned one
+     * @param p the passenger
+     */
+    public void add(Passenger p){
+        boolean goingUp = p.destination > this.level;
+        if (p.elevator == 0)
+            (goingUp ? this.up : this.down).add(p);
+        else
+            this.assignedRing(p.elevator, goingUp, true).add(p);
+        if (goingUp)
+            ++this.upCount;
+        else
+            ++this.downCount;
+    }
+
+    /**
+     * take the passenger who has waited longest among those an elevator may take in some directions
+     * @param elevator the index of the elevator
+     * @param goingUp whether passengers going up get on
+     * @param goingDown whether passengers going down get on
+     * @return the passenger, now removed, or null if there is none
+     */
+    public Passenger poll(int elevator, boolean goingUp, boolean goingDown){
+        Ring best = null;
+        if (goingUp){
+            best = earlier(best, this.up);
+            best = earlier(best, this.assignedRing(elevator, true, false));
+        }
+        if (goingDown){
+            best = earlier(best, this.down);
+            best = earlier(best, this.assignedRing(elevator, false, false));
+        }
+        if (best == null)
+            return null;
+        Passenger p = best.poll();
+        if (p.destination > this.level)
+            --this.upCount;
+        else
+            --this.downCount;
+        return p;
+    }
+
+    /**
+     * decide whether passengers assigned to an elevator wait here in some directions
+     * @param elevator the index of the elevator
+     * @param goingUp whether to count those going up
+     * @param goingDown whether to count those going down
+     * @return true if there is one
+     */
+    public boolean hasAssigned(int elevator, boolean goingUp, boolean goingDown){
+        Ring r;
+        return (goingUp && (r = this.assignedRing(elevator, true, false)) != null && r.size() > 0) ||
+                (goingDown && (r = this.assignedRing(elevator, false, false)) != null && r.size() > 0);
+    }
+
+    /**
+     * getter for the number of passengers waiting
+     * @return the number of passengers waiting here
+     */
+    public int size(){
+        return this.upCount + this.downCount;
+    }
+
+    /**
+     * decide whether nobody is waiting
+     * @return true if nobody is waiting here
+     */
+    public boolean isEmpty(){
+        return this.size() == 0;
+    }
+
+    /**
+     * getter for the number of passengers going up, i.e. whether the up indicator is lit
+     * @return the number of passengers waiting to go up
+     */
+    public int getUpCount(){
+        return this.upCount;
+    }
+
+    /**
+     * getter for the number of passengers going down, i.e. whether the down indicator is lit
+     * @return the number of passengers waiting to go down
+     */
+    public int getDownCount(){
+        return this.downCount;
+    }
+
+    /**
+     * go through the passengers waiting: those going up then down, then those assigned to each elevator,
+     * each queue oldest first
+     * @return an iterator, which must not be used across a change
+     */
+    @Override
+    public Iterator<Passenger> iterator(){
+        return new Iterator<Passenger>() {
+            /// the queue being gone through: 0 up, 1 down, then assigned up and down of each elevator in turn
+            private int queue = 0;
+            /// the position in it
+            private int position = 0;
+
+            @Override
+            public boolean hasNext(){
+                while (this.queue < 2 + 2 * assignedLength()){
+                    Ring r = ringAt(this.queue);
+                    if (r != null && this.position < r.size())
+                        return true;
+                    ++this.queue;
+                    this.position = 0;
+                }
+                return false;
+            }
+
+            @Override
+            public Passenger next(){
+                if (!this.hasNext())
+                    throw new NoSuchElementException();
+                return ringAt(this.queue).get(this.position++);
+            }
+        };
+    }
+
+    /**
+     * find a queue by its number in the order of iterator()
+     * @param n the number
+     * @return the queue, null if there is none
+     */
+    private Ring ringAt(int n){
+        if (n == 0)
+            return this.up;
+        if (n == 1)
+            return this.down;
+        int i = (n - 2) / 2;
+        if (i >= this.assignedLength())
+            return null;
+        return n % 2 == 0 ? this.assignedUp[i] : this.assignedDown[i];
+    }
+
+    /**
+     * getter for the size of the arrays of assigned queues
+     * @return the size, 0 if none has been created
+     */
+    private int assignedLength(){
+        return this.assignedUp == null ? 0 : this.assignedUp.length;
+    }
+
+    /**
+     * find the queue of the passengers assigned to an elevator
+     * @param elevator the index of the elevator
+     * @param goingUp the direction of the queue
+     * @param create whether to create it if missing
+     * @return the queue, null if missing and not created
+     */
+    private Ring assignedRing(int elevator, boolean goingUp, boolean create){
+        if (elevator >= this.assignedLength()){
+            if (!create)
+                return null;
+            Ring[] ups = new Ring[elevator + 1], downs = new Ring[elevator + 1];
+            for (int i = 0; i < this.assignedLength(); ++i){
+                ups[i] = this.assignedUp[i];
+                downs[i] = this.assignedDown[i];
+            }
+            this.assignedUp = ups;
+            this.assignedDown = downs;
+        }
+        Ring[] rings = goingUp ? this.assignedUp : this.assignedDown;
+        if (rings[elevator] == null && create)
+            rings[elevator] = new Ring();
+        return rings[elevator];
+    }
+
+    /**
+     * choose the queue whose head has waited longer
+     * @param a a queue, may be null or empty
+     * @param b another queue, may be null or empty
+     * @return the queue whose head came first, null if both are null or empty
+     */
+    private static Ring earlier(Ring a, Ring b){
+        Passenger pa = a == null ? null : a.peek(), pb = b == null ? null : b.peek();
+        if (pb == null)
+            return pa == null ? null : a;
+        if (pa == null)
+            return b;
+        return pb.id < pa.id ? b : a;
+    }
+}
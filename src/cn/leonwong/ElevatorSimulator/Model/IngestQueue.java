@@ -0,0 +1,175 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * A bounded queue of hall calls between the threads adding passengers and the one dispatching them
+ * Calls are offered in bulk and taken in batches, each under one short lock, and kept packed in a ring of ints,
+ * so tens of thousands of calls a second cost no allocation. When the dispatcher falls behind and the ring is full,
+ * offers are cut short: the caller learns how many calls were accepted, and may wait for room or give up.
+ */
+public class IngestQueue {
+    /// \#levels, calls from or to other levels are rejected
+    private final int levels;
+    /// the calls, each packed as from << 16 | to, from head
+    private final int[] ring;
+    /// the position of the oldest call
+    private int head;
+    /// the number of calls waiting
+    private volatile int size;
+    /// the number of calls accepted so far
+    private long accepted;
+    /// the number of calls rejected so far, because the queue was full or the levels were wrong
+    private long rejected;
+
+    /**
+     * create an empty queue
+     * @param levs \#levels of the building
+     * @param capacity the most calls waiting at once, rounded up to a power of 2
+     */
+    public IngestQueue(int levs, int capacity){
+        this.levels = levs;
+        int cap = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.ring = new int[cap];
+    }
+
+    /**
+     * add a hall call unless the queue is full
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     * @return true if accepted
+     */
+    public synchronized boolean offer(int from, int to){
+        if (!this.isValid(from, to) || this.size == this.ring.length){
+            ++this.rejected;
+            return false;
+        }
+        this.push(from, to);
+        ++this.accepted;
+        this.notifyAll();
+        return true;
+    }
+
+    /**
+     * add hall calls in order, as many as there is room for, waiting a while for room if the queue fills up
+     * Calls with wrong levels are rejected and skipped; once the wait is over, the calls left are rejected.
+     * @param from the starting level of each passenger
+     * @param to the destination of each passenger
+     * @param count the number of calls, from the start of the arrays
+     * @param waitMs how long (ms) to wait in all for the dispatcher to make room, 0 not to wait
+     * @return the number of calls accepted
+     */
+    public synchronized int offer(int[] from, int[] to, int count, long waitMs){
+        long deadline = waitMs > 0 ? System.nanoTime() + waitMs * 1000000 : 0;
+        int taken = 0;
+        int i = 0;
+        try {
+            while (i < count){
+                if (this.size == this.ring.length){
+                    long left = deadline - System.nanoTime();
+                    if (waitMs <= 0 || left <= 0)
+                        break;
+                    this.wait(left / 1000000, (int) (left % 1000000));
+                    continue;
+                }
+                if (this.isValid(from[i], to[i])){
+                    this.push(from[i], to[i]);
+                    ++taken;
+                }
+                ++i;
+            }
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        this.accepted += taken;
+        this.rejected += count - taken;
+        if (taken > 0)
+            this.notifyAll();
+        return taken;
+    }
+
+    /**
+     * take the waiting calls in order, up to some number, and hand each to a listener outside the lock
+     * @param l receives each call
+     * @param buffer where the packed calls are copied while taking them, its length is the most calls taken
+     * @return the number of calls taken
+     */
+    public int drain(Simulation.HallCallListener l, int[] buffer){
+        int n;
+        synchronized (this){
+            n = Math.min(this.size, buffer.length);
+            int mask = this.ring.length - 1;
+            for (int i = 0; i < n; ++i)
+                buffer[i] = this.ring[(this.head + i) & mask];
+            this.head = (this.head + n) & mask;
+            this.size -= n;
+            // producers waiting for room may go on
+            if (n > 0)
+                this.notifyAll();
+        }
+        for (int i = 0; i < n; ++i)
+            l.onHallCall(buffer[i] >>> 16, buffer[i] & 0xffff);
+        return n;
+    }
+
+    /**
+     * wait until some call is waiting
+     * @param timeoutMs the longest wait (ms)
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized void await(long timeoutMs) throws InterruptedException{
+        if (this.size == 0)
+            this.wait(timeoutMs);
+    }
+
+    /**
+     * getter for the number of calls waiting, may be read at any time
+     * @return the number of calls waiting
+     */
+    public int size(){
+        return this.size;
+    }
+
+    /**
+     * getter for the capacity
+     * @return the most calls waiting at once
+     */
+    public int getCapacity(){
+        return this.ring.length;
+    }
+
+    /**
+     * getter for the calls accepted
+     * @return the number of calls accepted so far
+     */
+    public synchronized long getAccepted(){
+        return this.accepted;
+    }
+
+    /**
+     * getter for the calls rejected
+     * @return the number of calls rejected so far, because the queue was full or the levels were wrong
+     */
+    public synchronized long getRejected(){
+        return this.rejected;
+    }
+
+    /**
+     * put a call at the end of the ring, the caller has checked there is room
+     * @param from the starting level
+     * @param to the destination level
+     */
+    private void push(int from, int to){
+        this.ring[(this.head + this.size) & (this.ring.length - 1)] = from << 16 | to;
+        ++this.size;
+    }
+
+    /**
+     * decide whether a call is between two different levels of the building
+     * @param from the starting level
+     * @param to the destination level
+     * @return true if valid
+     */
+    private boolean isValid(int from, int to){
+        return from >= 1 && from <= this.levels && to >= 1 && to <= this.levels && from != to;
+    }
+}
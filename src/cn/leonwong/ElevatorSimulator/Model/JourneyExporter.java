@@ -0,0 +1,471 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Writes every completed journey to a file as it happens, for analysis after a run
+ * Journeys are copied into blocks of primitive columns, and full blocks are handed to a writer thread,
+ * so recording one costs a few stores and the passenger is not kept. The blocks are taken from a small fixed pool:
+ * if the disk falls behind, the thread recording waits for the writer instead of holding more journeys.
+ *
+ * The binary file is an int MAGIC and an int VERSION, then blocks, big-endian, each of:
+ * the number of journeys n (int); the strategy names so far (a short count, then each in modified UTF-8);
+ * then the columns one after the other: passenger ids (n longs), origins, destinations (n ints each),
+ * request, board and alight times (n longs each), elevators (n ints) and strategies (n shorts, indices of the names,
+ * -1 if none). A CSV file with one line per journey may be written as well.
+ */
+public class JourneyExporter implements Closeable {
+    /// the first int of an export, "ELJX"
+    public static final int MAGIC = 0x454C4A58;
+    /// the layout of the blocks
+    public static final int VERSION = 1;
+    /// the header of the CSV file
+    public static final String CSV_HEADER = "id,origin,destination,request,board,alight,elevator,strategy";
+    /// the journeys in a block
+    private static final int BLOCK = 8192;
+    /// the blocks in the pool, one being filled and the others written or waiting to be
+    private static final int POOL = 4;
+
+    /**
+     * the columns of a number of journeys
+     */
+    private static class Block {
+        /// the number of journeys
+        private int count;
+        /// the strategy names, indexed by the strategy column
+        private String[] names;
+        /// the ids of the passengers
+        private final long[] id;
+        /// the starting levels
+        private final int[] origin;
+        /// the destinations
+        private final int[] destination;
+        /// when the passengers called for an elevator
+        private final long[] request;
+        /// when the passengers got on
+        private final long[] board;
+        /// when the passengers got off
+        private final long[] alight;
+        /// the elevators ridden
+        private final int[] elevator;
+        /// the indices of the strategies which dispatched the passengers, -1 if none
+        private final short[] strategy;
+
+        /**
+         * create an empty block
+         * @param size the most journeys it holds
+         */
+        Block(int size){
+            this.names = new String[0];
+            this.id = new long[size];
+            this.origin = new int[size];
+            this.destination = new int[size];
+            this.request = new long[size];
+            this.board = new long[size];
+            this.alight = new long[size];
+            this.elevator = new int[size];
+            this.strategy = new short[size];
+        }
+
+        /**
+         * getter for the size in bytes of the columns of some journeys
+         * @param n the number of journeys
+         * @return the size in bytes
+         */
+        static int columnBytes(int n){
+            return n * (8 + 4 + 4 + 8 + 8 + 8 + 4 + 2);
+        }
+
+        /**
+         * write the block to the binary file
+         * @param out the file
+         * @param buf a buffer of at least columnBytes(BLOCK) bytes
+         * @throws IOException if it cannot be written
+         */
+        void writeTo(FileChannel out, ByteBuffer buf) throws IOException{
+            ByteBuffer head = ByteBuffer.wrap(this.header());
+            while (head.hasRemaining())
+                out.write(head);
+            buf.clear();
+            int n = this.count;
+            for (int i = 0; i < n; ++i)
+                buf.putLong(this.id[i]);
+            for (int i = 0; i < n; ++i)
+                buf.putInt(this.origin[i]);
+            for (int i = 0; i < n; ++i)
+                buf.putInt(this.destination[i]);
+            for (int i = 0; i < n; ++i)
+                buf.putLong(this.request[i]);
+            for (int i = 0; i < n; ++i)
+                buf.putLong(this.board[i]);
+            for (int i = 0; i < n; ++i)
+                buf.putLong(this.alight[i]);
+            for (int i = 0; i < n; ++i)
+                buf.putInt(this.elevator[i]);
+            for (int i = 0; i < n; ++i)
+                buf.putShort(this.strategy[i]);
+            buf.flip();
+            while (buf.hasRemaining())
+                out.write(buf);
+        }
+
+        /**
+         * encode the count and the strategy names of the block
+         * @return the bytes
+         */
+        private byte[] header(){
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)){
+                out.writeInt(this.count);
+                out.writeShort(this.names.length);
+                for (String s : this.names)
+                    out.writeUTF(s);
+            }
+            catch (IOException e){
+                // cannot happen in memory
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        /**
+         * read the next block of a binary file
+         * @param in the file, after its header
+         * @param buf a buffer of at least columnBytes(BLOCK) bytes
+         * @return false at the end of the file
+         * @throws IOException if it cannot be read or is cut short
+         */
+        boolean readFrom(DataInputStream in, byte[] buf) throws IOException{
+            int n;
+            try {
+                n = in.readInt();
+            }
+            catch (EOFException e){
+                return false;
+            }
+            if (n < 0 || n > this.id.length)
+                throw new IOException("Bad block of " + n + " journeys");
+            String[] s = new String[in.readShort()];
+            for (int i = 0; i < s.length; ++i)
+                s[i] = in.readUTF();
+            in.readFully(buf, 0, columnBytes(n));
+            ByteBuffer b = ByteBuffer.wrap(buf);
+            for (int i = 0; i < n; ++i)
+                this.id[i] = b.getLong();
+            for (int i = 0; i < n; ++i)
+                this.origin[i] = b.getInt();
+            for (int i = 0; i < n; ++i)
+                this.destination[i] = b.getInt();
+            for (int i = 0; i < n; ++i)
+                this.request[i] = b.getLong();
+            for (int i = 0; i < n; ++i)
+                this.board[i] = b.getLong();
+            for (int i = 0; i < n; ++i)
+                this.alight[i] = b.getLong();
+            for (int i = 0; i < n; ++i)
+                this.elevator[i] = b.getInt();
+            for (int i = 0; i < n; ++i)
+                this.strategy[i] = b.getShort();
+            this.count = n;
+            this.names = s;
+            return true;
+        }
+
+        /**
+         * write the block as CSV lines
+         * @param out where to write
+         * @param sb a builder to reuse
+         * @throws IOException if it cannot be written
+         */
+        void writeCsv(Writer out, StringBuilder sb) throws IOException{
+            for (int i = 0; i < this.count; ++i){
+                sb.setLength(0);
+                sb.append(this.id[i]).append(',').append(this.origin[i]).append(',').append(this.destination[i])
+                        .append(',').append(this.request[i]).append(',').append(this.board[i]).append(',')
+                        .append(this.alight[i]).append(',').append(this.elevator[i]).append(',');
+                if (this.strategy[i] >= 0)
+                    sb.append(this.names[this.strategy[i]]);
+                sb.append('\n');
+                out.append(sb);
+            }
+        }
+    }
+
+    /// the binary file
+    private final FileChannel binary;
+    /// the CSV file, null if none
+    private final Writer csv;
+    /// the blocks ready to be filled
+    private final ArrayBlockingQueue<Block> free;
+    /// the blocks to be written, in order
+    private final ArrayBlockingQueue<Block> full;
+    /// handed to the writer after the last block
+    private final Block end;
+    /// writes the full blocks
+    private final Thread writer;
+    /// the block being filled, null once closed
+    private Block current;
+    /// the strategy names seen so far, replaced when one is added
+    private String[] names;
+    /// the index of each strategy name
+    private final HashMap<String, Short> nameIndex;
+    /// the number of journeys recorded
+    private long count;
+    /// the failure of the writer, null if none
+    private volatile IOException failure;
+
+    /**
+     * create an export, replacing the files if they exist, and start its writer thread
+     * @param file the binary file
+     * @param csvFile the CSV file, null not to write one
+     * @throws IOException if a file cannot be created
+     */
+    public JourneyExporter(Path file, Path csvFile) throws IOException{
+        this.binary = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        Writer w = null;
+        try {
+            ByteBuffer head = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+            head.flip();
+            while (head.hasRemaining())
+                this.binary.write(head);
+            if (csvFile != null){
+                w = Files.newBufferedWriter(csvFile, StandardCharsets.UTF_8);
+                w.write(CSV_HEADER);
+                w.write('\n');
+            }
+        }
+        catch (IOException e){
+            this.binary.close();
+            if (w != null)
+                w.close();
+            throw e;
+        }
+        this.csv = w;
+        this.free = new ArrayBlockingQueue<>(POOL);
+        this.full = new ArrayBlockingQueue<>(POOL + 1);
+        for (int i = 1; i < POOL; ++i)
+            this.free.add(new Block(BLOCK));
+        this.current = new Block(BLOCK);
+        this.end = new Block(0);
+        this.names = new String[0];
+        this.nameIndex = new HashMap<>();
+        this.writer = new Thread(this::writeLoop, "Journey Export");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * record the journey of a passenger who has arrived, waiting for the writer if all blocks are full
+     * @param p the passenger
+     */
+    public synchronized void record(Passenger p){
+        Block b = this.current;
+        if (b == null || this.failure != null)
+            return;
+        int i = b.count;
+        b.id[i] = p.id;
+        b.origin[i] = p.origin;
+        b.destination[i] = p.destination;
+        b.request[i] = p.requestTime;
+        b.board[i] = p.boardTime;
+        b.alight[i] = p.alightTime;
+        b.elevator[i] = p.elevator;
+        b.strategy[i] = this.indexOf(p.strategy);
+        ++this.count;
+        if (++b.count == BLOCK)
+            this.current = this.handOff(b);
+    }
+
+    /**
+     * getter for the number of journeys recorded
+     * @return the number of journeys recorded so far, some of which may not be written yet
+     */
+    public synchronized long getCount(){
+        return this.count;
+    }
+
+    /**
+     * write the journeys left, wait for the writer and close the files
+     * @throws IOException if the export could not be written
+     */
+    @Override
+    public void close() throws IOException{
+        synchronized (this){
+            if (this.current == null)
+                return;
+            if (this.current.count > 0)
+                this.handOff(this.current);
+            this.current = null;
+            this.putFull(this.end);
+        }
+        try {
+            this.writer.join();
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while finishing the export");
+        }
+        if (this.failure != null)
+            throw this.failure;
+    }
+
+    /**
+     * give a full block to the writer and take an empty one
+     * @param b the block
+     * @return an empty block, null if interrupted
+     */
+    private Block handOff(Block b){
+        b.names = this.names;
+        this.putFull(b);
+        try {
+            Block next = this.free.take();
+            next.count = 0;
+            return next;
+        }
+        catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            Log.warn(Log.Category.Model, "JourneyExporter: interrupted while waiting for the writer, export stopped");
+            // the writer finishes the blocks it has and closes the files
+            this.putFull(this.end);
+            return null;
+        }
+    }
+
+    /**
+     * queue a block for the writer, there is always room since the blocks are fewer than its capacity
+     * @param b the block
+     */
+    private void putFull(Block b){
+        this.full.add(b);
+    }
+
+    /**
+     * getter for the index of a strategy name, adding it if new
+     * @param name the name, may be null
+     * @return its index, -1 if null
+     */
+    private short indexOf(String name){
+        if (name == null)
+            return -1;
+        Short index = this.nameIndex.get(name);
+        if (index == null){
+            index = (short) this.names.length;
+            this.names = Arrays.copyOf(this.names, this.names.length + 1);
+            this.names[index] = name;
+            this.nameIndex.put(name, index);
+        }
+        return index;
+    }
+
+    /**
+     * write the full blocks in order until the last one, then close the files
+     */
+    private void writeLoop(){
+        ByteBuffer buf = ByteBuffer.allocateDirect(Block.columnBytes(BLOCK));
+        StringBuilder sb = new StringBuilder(128);
+        try {
+            Block b;
+            while ((b = this.full.take()) != this.end){
+                if (this.failure == null){
+                    try {
+                        b.writeTo(this.binary, buf);
+                        if (this.csv != null)
+                            b.writeCsv(this.csv, sb);
+                    }
+                    catch (IOException e){
+                        Log.error(Log.Category.Model, "JourneyExporter: cannot write the export, export stopped: %s", e.getMessage());
+                        this.failure = e;
+                    }
+                }
+                // after a failure the blocks still go back, so whoever records never waits for good
+                this.free.add(b);
+            }
+        }
+        catch (InterruptedException e){
+            this.failure = new IOException("Interrupted while writing the export");
+        }
+        finally {
+            this.closeFiles();
+        }
+    }
+
+    /**
+     * close the files, keeping the first failure
+     */
+    private void closeFiles(){
+        try {
+            if (this.csv != null)
+                this.csv.close();
+        }
+        catch (IOException e){
+            if (this.failure == null)
+                this.failure = e;
+        }
+        try {
+            this.binary.close();
+        }
+        catch (IOException e){
+            if (this.failure == null)
+                this.failure = e;
+        }
+    }
+
+    /**
+     * summarize a binary export, and convert it to CSV if asked to
+     * usage: JourneyExporter export [csv output]
+     * @param args the arguments
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException{
+        PrintStream out = System.out;
+        if (args.length < 1){
+            out.println("usage: JourneyExporter export [csv output]");
+            return;
+        }
+        Block b = new Block(BLOCK);
+        byte[] buf = new byte[Block.columnBytes(BLOCK)];
+        StringBuilder sb = new StringBuilder(128);
+        long n = 0, waited = 0, journeys = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(Paths.get(args[0])), 1 << 16));
+             Writer w = args.length > 1 ? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8) : null){
+            if (in.readInt() != MAGIC || in.readInt() != VERSION){
+                out.println(args[0] + " is not a journey export!");
+                return;
+            }
+            if (w != null){
+                w.write(CSV_HEADER);
+                w.write('\n');
+            }
+            while (b.readFrom(in, buf)){
+                for (int i = 0; i < b.count; ++i){
+                    waited += b.board[i] - b.request[i];
+                    journeys += b.alight[i] - b.request[i];
+                }
+                n += b.count;
+                if (w != null)
+                    b.writeCsv(w, sb);
+            }
+        }
+        out.printf("%d journeys, mean wait %.0f ms, mean journey %.0f ms\n", n, n == 0 ? 0.0 : (double) waited / n,
+                n == 0 ? 0.0 : (double) journeys / n);
+    }
+}
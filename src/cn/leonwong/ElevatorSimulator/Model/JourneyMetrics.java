@@ -0,0 +1,110 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * journey stats of all passengers, of each dispatching strategy and of each starting level
+ * Memory is fixed: a few histograms per strategy and per level used
+ */
+public class JourneyMetrics {
+    /// stats of all passengers
+    private final JourneyStats all;
+    /// stats of the passengers dispatched by each strategy, by the strategy's name
+    private final Map<String, JourneyStats> byStrategy;
+    /// stats of the passengers starting at each level, created when first used
+    private final JourneyStats[] byLevel;
+
+    /**
+     * create empty metrics
+     * @param levs the number of levels
+     */
+    public JourneyMetrics(int levs){
+        this.all = new JourneyStats();
+        this.byStrategy = new LinkedHashMap<>();
+        this.byLevel = new JourneyStats[levs + 1];
+    }
+
+    /**
+     * record the journey of a passenger who has left the elevator
+     * @param p the passenger
+     */
+    public void record(Passenger p){
+        this.all.record(p);
+        this.getStrategy(p.strategy == null ? "Unknown" : p.strategy, true).record(p);
+        this.getLevel(p.origin, true).record(p);
+    }
+
+    /**
+     * getter for the stats of all passengers
+     * @return the stats
+     */
+    public JourneyStats getAll(){
+        return this.all;
+    }
+
+    /**
+     * getter for the stats of a strategy
+     * @param name the name of the strategy
+     * @return the stats, null if no passenger dispatched by it has arrived
+     */
+    public JourneyStats getStrategy(String name){
+        return this.getStrategy(name, false);
+    }
+
+    /**
+     * getter for the stats of a starting level
+     * @param level the level
+     * @return the stats, null if no passenger from it has arrived
+     */
+    public JourneyStats getLevel(int level){
+        return this.getLevel(level, false);
+    }
+
+    /**
+     * print all the stats
+     * @param out where to print
+     */
+    public synchronized void dump(PrintStream out){
+        out.println("All passengers:");
+        out.println(this.all);
+        for (Map.Entry<String, JourneyStats> e : this.byStrategy.entrySet()){
+            out.println("Strategy " + e.getKey() + ":");
+            out.println(e.getValue());
+        }
+        for (int i = 1; i < this.byLevel.length; ++i){
+            if (this.byLevel[i] != null){
+                out.println("Level #" + i + ":");
+                out.println(this.byLevel[i]);
+            }
+        }
+    }
+
+    /**
+     * getter for the stats of a strategy
+     * @param name the name of the strategy
+     * @param create whether to create the stats if missing
+     * @return the stats
+     */
+    private synchronized JourneyStats getStrategy(String name, boolean create){
+        JourneyStats s = this.byStrategy.get(name);
+        if (s == null && create){
+            s = new JourneyStats();
+            this.byStrategy.put(name, s);
+        }
+        return s;
+    }
+
+    /**
+     * getter for the stats of a starting level
+     * @param level the level
+     * @param create whether to create the stats if missing
+     * @return the stats
+     */
+    private synchronized JourneyStats getLevel(int level, boolean create){
+        if (this.byLevel[level] == null && create)
+            this.byLevel[level] = new JourneyStats();
+        return this.byLevel[level];
+    }
+}
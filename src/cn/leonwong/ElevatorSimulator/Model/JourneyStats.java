@@ -0,0 +1,67 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * histograms of the wait, ride and whole journey times of some passengers
+ */
+public class JourneyStats {
+    /// from calling for an elevator to getting on
+    private final LatencyHistogram waitTime;
+    /// from getting on to getting off
+    private final LatencyHistogram rideTime;
+    /// from calling for an elevator to getting off
+    private final LatencyHistogram journeyTime;
+
+    /**
+     * create empty stats
+     */
+    public JourneyStats(){
+        this.waitTime = new LatencyHistogram();
+        this.rideTime = new LatencyHistogram();
+        this.journeyTime = new LatencyHistogram();
+    }
+
+    /**
+     * record the journey of a passenger who has left the elevator
+     * @param p the passenger
+     */
+    public void record(Passenger p){
+        this.waitTime.recordValue(p.boardTime - p.requestTime);
+        this.rideTime.recordValue(p.alightTime - p.boardTime);
+        this.journeyTime.recordValue(p.alightTime - p.requestTime);
+    }
+
+    /**
+     * getter for the wait times
+     * @return the histogram of wait times
+     */
+    public LatencyHistogram getWaitTime(){
+        return this.waitTime;
+    }
+
+    /**
+     * getter for the ride times
+     * @return the histogram of ride times
+     */
+    public LatencyHistogram getRideTime(){
+        return this.rideTime;
+    }
+
+    /**
+     * getter for the journey times
+     * @return the histogram of journey times
+     */
+    public LatencyHistogram getJourneyTime(){
+        return this.journeyTime;
+    }
+
+    /**
+     * describe these stats
+     * @return one line for each histogram
+     */
+    @Override
+    public String toString(){
+        return "wait    " + this.waitTime + "\n" +
+                "ride    " + this.rideTime + "\n" +
+                "journey " + this.journeyTime;
+    }
+}
@@ -0,0 +1,177 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * A recording histogram of latencies (ms) in fixed memory, in the style of HdrHistogram
+ * Values below 128 are counted exactly, larger ones in log-linear buckets 1/64 of a power of 2 wide,
+ * so any percentile is within about 1.6% of the true value, up to HIGHEST_TRACKABLE.
+ */
+public class LatencyHistogram {
+    /// the highest value counted in its own bucket (about 50 days in ms), larger values are clamped
+    public static final long HIGHEST_TRACKABLE = (1L << 32) - 1;
+    /// values below this are counted exactly
+    private static final int LINEAR_BITS = 7;
+    /// the number of buckets in each power of 2 above the linear range
+    private static final int SUB_BUCKETS = 1 << (LINEAR_BITS - 1);
+    /// the number of buckets
+    private static final int BUCKETS = indexOf(HIGHEST_TRACKABLE) + 1;
+
+    /// the count of each bucket
+    private final long[] counts;
+    /// the number of values recorded
+    private long count;
+    /// the sum of values recorded
+    private long sum;
+    /// the smallest value recorded
+    private long min;
+    /// the largest value recorded
+    private long max;
+
+    /**
+     * create an empty histogram
+     */
+    public LatencyHistogram(){
+        this.counts = new long[BUCKETS];
+        this.reset();
+    }
+
+    /**
+     * record a value
+     * @param value the latency in ms, negative values are ignored
+     */
+    public synchronized void recordValue(long value){
+        if (value < 0)
+            return;
+        ++this.counts[indexOf(Math.min(value, HIGHEST_TRACKABLE))];
+        ++this.count;
+        this.sum += value;
+        if (value < this.min)
+            this.min = value;
+        if (value > this.max)
+            this.max = value;
+    }
+
+    /**
+     * add all the values of another histogram into this one
+     * @param other the other histogram
+     */
+    public synchronized void add(LatencyHistogram other){
+        synchronized (other){
+            for (int i = 0; i < BUCKETS; ++i)
+                this.counts[i] += other.counts[i];
+            this.count += other.count;
+            this.sum += other.sum;
+            this.min = Math.min(this.min, other.min);
+            this.max = Math.max(this.max, other.max);
+        }
+    }
+
+    /**
+     * forget all values
+     */
+    public synchronized void reset(){
+        for (int i = 0; i < BUCKETS; ++i)
+            this.counts[i] = 0;
+        this.count = 0;
+        this.sum = 0;
+        this.min = Long.MAX_VALUE;
+        this.max = 0;
+    }
+
+    /**
+     * getter for the number of values
+     * @return the number of values recorded
+     */
+    public synchronized long getCount(){
+        return this.count;
+    }
+
+    /**
+     * getter for the mean
+     * @return the mean of the values recorded, 0 if none
+     */
+    public synchronized double getMean(){
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * getter for the smallest value
+     * @return the smallest value recorded, 0 if none
+     */
+    public synchronized long getMin(){
+        return this.count == 0 ? 0 : this.min;
+    }
+
+    /**
+     * getter for the largest value
+     * @return the largest value recorded, 0 if none
+     */
+    public synchronized long getMax(){
+        return this.max;
+    }
+
+    /**
+     * find the value at a percentile
+     * @param percentile between 0 and 100
+     * @return the highest value of the bucket holding that percentile (never above the max), 0 if none
+     */
+    public synchronized long getValueAtPercentile(double percentile){
+        if (this.count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * this.count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i){
+            seen += this.counts[i];
+            if (seen >= rank)
+                return Math.min(lowestValueOf(i + 1) - 1, this.max);
+        }
+        return this.max;
+    }
+
+    /**
+     * count the values above some value
+     * @param value the value
+     * @return the number of values recorded in buckets wholly above the value, which may miss a few just above it
+     */
+    public synchronized long getCountAbove(long value){
+        if (value < 0)
+            return this.count;
+        long above = 0;
+        for (int i = indexOf(Math.min(value, HIGHEST_TRACKABLE)) + 1; i < BUCKETS; ++i)
+            above += this.counts[i];
+        return above;
+    }
+
+    /**
+     * describe this histogram in one line
+     * @return e.g. "n=12 mean=3400 p50=3100 p95=8000 p99=9000 max=9100"
+     */
+    @Override
+    public synchronized String toString(){
+        return String.format("n=%d mean=%.0f p50=%d p95=%d p99=%d max=%d", this.count, this.getMean(),
+                this.getValueAtPercentile(50), this.getValueAtPercentile(95), this.getValueAtPercentile(99), this.max);
+    }
+
+    /**
+     * find the bucket of a value
+     * @param value a value between 0 and HIGHEST_TRACKABLE
+     * @return the index of the bucket
+     */
+    private static int indexOf(long value){
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - LINEAR_BITS + 1;
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * find the lowest value of a bucket
+     * @param index the index of the bucket
+     * @return the lowest value counted in it
+     */
+    private static long lowestValueOf(int index){
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+        int k = index - 2 * SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + k % SUB_BUCKETS) << (k / SUB_BUCKETS + 1);
+    }
+}
@@ -0,0 +1,257 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * Rolling operations stats of a running building, in fixed memory however long it runs
+ * Arrivals are counted as they come, and every interval a sample closes the interval: the throughput over
+ * the last minute, the wait percentiles of the interval, the queue at each level and the load of each elevator.
+ * The last few hundred samples are kept in ring buffers; sample n stays readable until n + getCapacity() is taken,
+ * so a chart only reads the samples taken since it last looked.
+ */
+public class LiveMetrics {
+    /// the length (ms) of an interval, i.e. the time between two samples
+    private final long interval;
+    /// the number of samples kept
+    private final int capacity;
+    /// the number of intervals in a minute, over which throughput and utilization are averaged
+    private final int window;
+    /// \#levels
+    private final int levels;
+    /// \#elevators
+    private final int elevators;
+
+    /// the number of samples taken so far
+    private long samples;
+    /// the time of each sample kept
+    private final long[] times;
+    /// the passengers delivered per minute, averaged over the minute before each sample
+    private final double[] throughput;
+    /// the wait percentiles (ms) of the passengers delivered in each interval
+    private final long[] waitP50, waitP95, waitP99;
+    /// the queue at each level at each sample, levels of a sample side by side
+    private final int[] queues;
+
+    /// the passengers delivered in each of the last intervals, a ring of window entries
+    private final int[] delivered;
+    /// the sum of delivered
+    private int deliveredInWindow;
+    /// the waits of the passengers delivered in the current interval
+    private final LatencyHistogram intervalWaits;
+    /// the passengers delivered in the current interval
+    private int deliveredNow;
+    /// the passengers delivered in all
+    private long deliveredTotal;
+
+    /// whether each elevator was busy at each of the last samples, a ring of window rows
+    private final boolean[] busy;
+    /// the number of the last samples at which each elevator was busy
+    private final int[] busyInWindow;
+    /// the number of passengers in each elevator at the last sample
+    private final int[] load;
+    /// the capacity of each elevator
+    private final int[] capacities;
+
+    /**
+     * create empty stats
+     * @param levs \#levels
+     * @param elevs \#elevators
+     * @param intervalMs the time (ms, virtual time in a simulation) between two samples
+     * @param points the number of samples kept
+     */
+    public LiveMetrics(int levs, int elevs, long intervalMs, int points){
+        this.interval = Math.max(1, intervalMs);
+        this.capacity = Math.max(2, points);
+        this.window = (int) Math.max(1, 60000 / this.interval);
+        this.levels = levs;
+        this.elevators = elevs;
+        this.samples = 0;
+        this.times = new long[this.capacity];
+        this.throughput = new double[this.capacity];
+        this.waitP50 = new long[this.capacity];
+        this.waitP95 = new long[this.capacity];
+        this.waitP99 = new long[this.capacity];
+        this.queues = new int[this.capacity * levs];
+        this.delivered = new int[this.window];
+        this.intervalWaits = new LatencyHistogram();
+        this.busy = new boolean[this.window * elevs];
+        this.busyInWindow = new int[elevs];
+        this.load = new int[elevs];
+        this.capacities = new int[elevs];
+    }
+
+    /**
+     * count a passenger who has left the elevator
+     * @param p the passenger
+     */
+    public synchronized void record(Passenger p){
+        ++this.deliveredNow;
+        ++this.deliveredTotal;
+        this.intervalWaits.recordValue(p.boardTime - p.requestTime);
+    }
+
+    /**
+     * close the current interval and take a sample of a building
+     * The cost depends on the size of the building, not on how long it has run.
+     * @param b the building
+     * @param now the time of the sample
+     */
+    public synchronized void sample(Building b, long now){
+        int slot = (int) (this.samples % this.capacity);
+        int minute = (int) (this.samples % this.window);
+        this.times[slot] = now;
+        // the oldest interval of the minute makes room for this one
+        this.deliveredInWindow += this.deliveredNow - this.delivered[minute];
+        this.delivered[minute] = this.deliveredNow;
+        long spanned = Math.min(this.samples + 1, this.window) * this.interval;
+        this.throughput[slot] = this.deliveredInWindow * 60000.0 / spanned;
+        this.deliveredNow = 0;
+        this.waitP50[slot] = this.intervalWaits.getValueAtPercentile(50);
+        this.waitP95[slot] = this.intervalWaits.getValueAtPercentile(95);
+        this.waitP99[slot] = this.intervalWaits.getValueAtPercentile(99);
+        this.intervalWaits.reset();
+        for (int lev = 1; lev <= this.levels; ++lev)
+            this.queues[slot * this.levels + lev - 1] = b.levelList.get(lev).size();
+        for (int i = 0; i < this.elevators; ++i){
+            Elevator e = b.elevatorList.get(i);
+            boolean isBusy = !e.isIdle();
+            int cell = minute * this.elevators + i;
+            if (this.busy[cell] != isBusy)
+                this.busyInWindow[i] += isBusy ? 1 : -1;
+            this.busy[cell] = isBusy;
+            this.load[i] = e.getPassengers();
+            this.capacities[i] = e.getCapacity();
+        }
+        ++this.samples;
+    }
+
+    /**
+     * getter for the number of samples taken
+     * @return the number of samples taken so far, the next one taken is numbered this
+     */
+    public synchronized long getSamples(){
+        return this.samples;
+    }
+
+    /**
+     * getter for the oldest sample kept
+     * @return the number of the oldest sample still readable
+     */
+    public synchronized long getOldestSample(){
+        return Math.max(0, this.samples - this.capacity);
+    }
+
+    /**
+     * getter for the number of samples kept
+     * @return the size of the ring buffers
+     */
+    public int getCapacity(){
+        return this.capacity;
+    }
+
+    /**
+     * getter for the interval
+     * @return the time (ms) between two samples
+     */
+    public long getInterval(){
+        return this.interval;
+    }
+
+    /**
+     * getter for \#levels
+     * @return the number of levels
+     */
+    public int getLevels(){
+        return this.levels;
+    }
+
+    /**
+     * getter for \#elevators
+     * @return the number of elevators
+     */
+    public int getElevators(){
+        return this.elevators;
+    }
+
+    /**
+     * getter for the passengers delivered in all
+     * @return the number of passengers who have left an elevator since these stats were created
+     */
+    public synchronized long getDelivered(){
+        return this.deliveredTotal;
+    }
+
+    /**
+     * getter for the time of a sample
+     * @param n the number of the sample, between getOldestSample() and getSamples() - 1
+     * @return the time (ms) it was taken at
+     */
+    public synchronized long getTime(long n){
+        return this.times[this.slotOf(n)];
+    }
+
+    /**
+     * getter for the throughput at a sample
+     * @param n the number of the sample
+     * @return the passengers delivered per minute, over the minute before the sample
+     */
+    public synchronized double getThroughput(long n){
+        return this.throughput[this.slotOf(n)];
+    }
+
+    /**
+     * getter for a wait percentile at a sample
+     * @param n the number of the sample
+     * @param percentile 50, 95 or 99
+     * @return the percentile (ms) of the waits of the passengers delivered in the interval, 0 if none
+     */
+    public synchronized long getWait(long n, int percentile){
+        int slot = this.slotOf(n);
+        return percentile >= 99 ? this.waitP99[slot] : percentile >= 95 ? this.waitP95[slot] : this.waitP50[slot];
+    }
+
+    /**
+     * getter for the queue at a level at a sample
+     * @param n the number of the sample
+     * @param lev the level
+     * @return the number of passengers waiting there
+     */
+    public synchronized int getQueue(long n, int lev){
+        return this.queues[this.slotOf(n) * this.levels + lev - 1];
+    }
+
+    /**
+     * copy the queues of all levels at a sample
+     * @param n the number of the sample
+     * @param dest where to copy them, by level from 1
+     */
+    public synchronized void copyQueues(long n, int[] dest){
+        System.arraycopy(this.queues, this.slotOf(n) * this.levels, dest, 1, this.levels);
+    }
+
+    /**
+     * getter for the utilization of an elevator
+     * @param index the index of the elevator, from 1
+     * @return the share of the samples in the last minute at which it was busy, between 0 and 1
+     */
+    public synchronized double getUtilization(int index){
+        long counted = Math.min(this.samples, this.window);
+        return counted == 0 ? 0 : (double) this.busyInWindow[index - 1] / counted;
+    }
+
+    /**
+     * getter for the load of an elevator
+     * @param index the index of the elevator, from 1
+     * @return the share of its capacity taken at the last sample, between 0 and 1
+     */
+    public synchronized double getLoad(int index){
+        return this.capacities[index - 1] == 0 ? 0 : (double) this.load[index - 1] / this.capacities[index - 1];
+    }
+
+    /**
+     * find where a sample is kept
+     * @param n the number of the sample
+     * @return its slot in the ring buffers
+     */
+    private int slotOf(long n){
+        return (int) (n % this.capacity);
+    }
+}
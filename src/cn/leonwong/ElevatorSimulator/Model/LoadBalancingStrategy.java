@@ -0,0 +1,17 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * Load Balancing: the number of passengers in an elevator also "increases" the estimated time
+ */
+public class LoadBalancingStrategy extends SpeedFirstStrategy {
+
+    @Override
+    public String getName(){
+        return "Load Balancing";
+    }
+
+    @Override
+    protected int estimate(Building b, Elevator e, int from, int to){
+        return super.estimate(b, e, from, to) + e.getPassengers();
+    }
+}
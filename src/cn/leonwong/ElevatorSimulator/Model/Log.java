@@ -0,0 +1,417 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.io.BufferedOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous logging with levels and a switch for each category
+ * A call below the level of its category returns after one array read. Otherwise the format and its arguments
+ * are put into a lock-free ring buffer (numbers without boxing), and a writer thread formats and prints them,
+ * so no thread ever waits for the console. When the ring is full, entries are dropped and counted.
+ *
+ * Levels can be set with -Dlog.level=debug for all categories and e.g. -Dlog.Elevator=off for one.
+ */
+public final class Log {
+    /**
+     * an enum for log levels, a category logs the entries at or below its level
+     */
+    public static final class Level {
+        public static final int Off = 0;
+        public static final int Error = 1;
+        public static final int Warn = 2;
+        public static final int Info = 3;
+        public static final int Debug = 4;
+        /// the names of the levels, by their values
+        static final String[] NAMES = {"OFF", "ERROR", "WARN", "INFO", "DEBUG"};
+    }
+
+    /**
+     * an enum for log categories
+     */
+    public static final class Category {
+        public static final int Elevator = 0;
+        public static final int Controller = 1;
+        public static final int View = 2;
+        public static final int Model = 3;
+        /// the names of the categories, by their values
+        static final String[] NAMES = {"Elevator", "Controller", "View", "Model"};
+    }
+
+    /**
+     * an entry in the ring buffer, reused lap after lap
+     */
+    private static final class Entry {
+        int category;
+        int level;
+        String format;
+        /// the number of arguments in a, b and c, or -1 if they are in args
+        int argc;
+        long a, b, c;
+        Object[] args;
+    }
+
+    /// the number of entries in the ring buffer
+    private static final int CAPACITY = 1 << 13;
+    /// the longest time the writer sleeps before checking again
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /// the level of each category, replaced as a whole when changed
+    private static volatile int[] levels;
+    /// the ring buffer
+    private static final Entry[] ring;
+    /// for each entry, the sequence it is ready for: equal to a claim when free, one more than it when written
+    private static final AtomicLongArray sequences;
+    /// the next sequence a logging thread will claim
+    private static final AtomicLong tail = new AtomicLong();
+    /// the next sequence the writer will print, only touched by the writer
+    private static volatile long head;
+    /// the number of entries dropped because the ring was full
+    private static final AtomicLong dropped = new AtomicLong();
+    /// where entries are printed
+    private static volatile PrintStream out;
+
+    static {
+        ring = new Entry[CAPACITY];
+        sequences = new AtomicLongArray(CAPACITY);
+        for (int i = 0; i < CAPACITY; ++i){
+            ring[i] = new Entry();
+            sequences.set(i, i);
+        }
+        int[] lv = new int[Category.NAMES.length];
+        int all = parseLevel(System.getProperty("log.level"), Level.Info);
+        for (int i = 0; i < lv.length; ++i)
+            lv[i] = parseLevel(System.getProperty("log." + Category.NAMES[i]), all);
+        levels = lv;
+        out = new PrintStream(new BufferedOutputStream(System.out, 1 << 16), false);
+        Thread writer = new Thread(Log::write, "Log Writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "Log Flusher"));
+    }
+
+    private Log(){
+    }
+
+    /**
+     * decide whether a category logs entries of some level, to skip building expensive arguments
+     * @param category the category, one in Category
+     * @param level the level, one in Level
+     * @return true if such entries are logged
+     */
+    public static boolean isEnabled(int category, int level){
+        return level <= levels[category];
+    }
+
+    /**
+     * setter for the level of all categories
+     * @param level the level, one in Level, Off to log nothing
+     */
+    public static synchronized void setLevel(int level){
+        int[] lv = new int[Category.NAMES.length];
+        for (int i = 0; i < lv.length; ++i)
+            lv[i] = level;
+        levels = lv;
+    }
+
+    /**
+     * setter for the level of a category
+     * @param category the category, one in Category
+     * @param level the level, one in Level, Off to log nothing
+     */
+    public static synchronized void setLevel(int category, int level){
+        int[] lv = levels.clone();
+        lv[category] = level;
+        levels = lv;
+    }
+
+    /**
+     * getter for the level of a category
+     * @param category the category, one in Category
+     * @return the level
+     */
+    public static int getLevel(int category){
+        return levels[category];
+    }
+
+    /**
+     * setter for where entries are printed, System.out by default
+     * @param stream the stream
+     */
+    public static void setOutput(PrintStream stream){
+        flush();
+        out = stream;
+    }
+
+    /**
+     * getter for the number of entries dropped
+     * @return the number of entries dropped because the writer could not keep up
+     */
+    public static long getDropped(){
+        return dropped.get();
+    }
+
+    /**
+     * wait until every entry logged so far has been printed, and flush the output
+     */
+    public static void flush(){
+        long target = tail.get();
+        while (head < target)
+            LockSupport.parkNanos(100000);
+        out.flush();
+    }
+
+    /**
+     * log a debug entry
+     * @param category the category, one in Category
+     * @param message the message
+     */
+    public static void debug(int category, String message){
+        if (Level.Debug <= levels[category])
+            append(category, Level.Debug, message, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * log a debug entry
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param a the first argument
+     */
+    public static void debug(int category, String format, long a){
+        if (Level.Debug <= levels[category])
+            append(category, Level.Debug, format, 1, a, 0, 0, null);
+    }
+
+    /**
+     * log a debug entry
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param a the first argument
+     * @param b the second argument
+     */
+    public static void debug(int category, String format, long a, long b){
+        if (Level.Debug <= levels[category])
+            append(category, Level.Debug, format, 2, a, b, 0, null);
+    }
+
+    /**
+     * log a debug entry
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param a the first argument
+     * @param b the second argument
+     * @param c the third argument
+     */
+    public static void debug(int category, String format, long a, long b, long c){
+        if (Level.Debug <= levels[category])
+            append(category, Level.Debug, format, 3, a, b, c, null);
+    }
+
+    /**
+     * log a debug entry
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param args the arguments
+     */
+    public static void debug(int category, String format, Object... args){
+        if (Level.Debug <= levels[category])
+            append(category, Level.Debug, format, -1, 0, 0, 0, args);
+    }
+
+    /**
+     * log an info entry
+     * @param category the category, one in Category
+     * @param message the message
+     */
+    public static void info(int category, String message){
+        if (Level.Info <= levels[category])
+            append(category, Level.Info, message, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * log an info entry
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param a the first argument
+     */
+    public static void info(int category, String format, long a){
+        if (Level.Info <= levels[category])
+            append(category, Level.Info, format, 1, a, 0, 0, null);
+    }
+
+    /**
+     * log an info entry
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param a the first argument
+     * @param b the second argument
+     */
+    public static void info(int category, String format, long a, long b){
+        if (Level.Info <= levels[category])
+            append(category, Level.Info, format, 2, a, b, 0, null);
+    }
+
+    /**
+     * log an info entry
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param a the first argument
+     * @param b the second argument
+     * @param c the third argument
+     */
+    public static void info(int category, String format, long a, long b, long c){
+        if (Level.Info <= levels[category])
+            append(category, Level.Info, format, 3, a, b, c, null);
+    }
+
+    /**
+     * log an info entry
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param args the arguments
+     */
+    public static void info(int category, String format, Object... args){
+        if (Level.Info <= levels[category])
+            append(category, Level.Info, format, -1, 0, 0, 0, args);
+    }
+
+    /**
+     * log a warning
+     * @param category the category, one in Category
+     * @param message the message
+     */
+    public static void warn(int category, String message){
+        if (Level.Warn <= levels[category])
+            append(category, Level.Warn, message, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * log a warning
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param args the arguments
+     */
+    public static void warn(int category, String format, Object... args){
+        if (Level.Warn <= levels[category])
+            append(category, Level.Warn, format, -1, 0, 0, 0, args);
+    }
+
+    /**
+     * log an error
+     * @param category the category, one in Category
+     * @param message the message
+     */
+    public static void error(int category, String message){
+        if (Level.Error <= levels[category])
+            append(category, Level.Error, message, 0, 0, 0, 0, null);
+    }
+
+    /**
+     * log an error
+     * @param category the category, one in Category
+     * @param format the format, as in String.format
+     * @param args the arguments
+     */
+    public static void error(int category, String format, Object... args){
+        if (Level.Error <= levels[category])
+            append(category, Level.Error, format, -1, 0, 0, 0, args);
+    }
+
+    /**
+     * put an entry into the ring buffer, or drop it if the ring is full
+     */
+    private static void append(int category, int level, String format, int argc, long a, long b, long c, Object[] args){
+        while (true){
+            long t = tail.get();
+            int slot = (int) (t & (CAPACITY - 1));
+            long seq = sequences.get(slot);
+            if (seq == t){
+                if (tail.compareAndSet(t, t + 1)){
+                    Entry e = ring[slot];
+                    e.category = category;
+                    e.level = level;
+                    e.format = format;
+                    e.argc = argc;
+                    e.a = a;
+                    e.b = b;
+                    e.c = c;
+                    e.args = args;
+                    sequences.set(slot, t + 1);
+                    return;
+                }
+            }
+            // the slot still holds an entry from the last lap
+            else if (seq < t){
+                dropped.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    /**
+     * the writer thread: print entries as they come, flushing whenever the ring is empty
+     */
+    private static void write(){
+        long nanos = 1000;
+        while (true){
+            int slot = (int) (head & (CAPACITY - 1));
+            if (sequences.get(slot) != head + 1){
+                out.flush();
+                LockSupport.parkNanos(nanos);
+                nanos = Math.min(nanos << 1, MAX_PARK_NANOS);
+                continue;
+            }
+            nanos = 1000;
+            Entry e = ring[slot];
+            String line = format(e);
+            e.format = null;
+            e.args = null;
+            sequences.lazySet(slot, head + CAPACITY);
+            out.println(line);
+            ++head;
+        }
+    }
+
+    /**
+     * format an entry into a line
+     * @param e the entry
+     * @return e.g. "DEBUG Elevator: Elevator #1 goes +1."
+     */
+    private static String format(Entry e){
+        String message;
+        try {
+            if (e.argc == 0)
+                message = e.format;
+            else if (e.argc == 1)
+                message = String.format(e.format, e.a);
+            else if (e.argc == 2)
+                message = String.format(e.format, e.a, e.b);
+            else if (e.argc == 3)
+                message = String.format(e.format, e.a, e.b, e.c);
+            else
+                message = String.format(e.format, e.args);
+        }
+        catch (RuntimeException ex){
+            message = e.format + " (bad format: " + ex + ")";
+        }
+        return String.format("%-5s %s: %s", Level.NAMES[e.level], Category.NAMES[e.category], message);
+    }
+
+    /**
+     * parse a level
+     * @param name e.g. "debug", null for the default
+     * @param def the default
+     * @return the level
+     */
+    private static int parseLevel(String name, int def){
+        if (name == null)
+            return def;
+        for (int i = 0; i < Level.NAMES.length; ++i)
+            if (Level.NAMES[i].equalsIgnoreCase(name.trim()))
+                return i;
+        return def;
+    }
+}
@@ -12,6 +12,8 @@ public class Message {
     public static final int elevatorChangeFloor = 2;
     /// used to indicate this message is describing an elevator is idle
     public static final int elevatorIsIdle = 3;
+    /// used to indicate this message is describing a passenger calling for an elevator
+    public static final int passengerArrive = 4;
 
     /// to denote which kind of message this one is
     public int mode;
@@ -21,6 +23,8 @@ public class Message {
     public int destLevel;
     /// to denote the passenger related to this message
     public Passenger pass;
+    /// to denote when (ms, virtual time in a simulation) this message took place
+    public long time;
 
     /**
      * to build a new messafe
@@ -30,9 +34,22 @@ public class Message {
      * @param passenger the related passenger
      */
     public Message(int modeOfMessage, int elevatorSender, int levelHappened, Passenger passenger){
+        this(modeOfMessage, elevatorSender, levelHappened, passenger, 0);
+    }
+
+    /**
+     * to build a new message with the time it took place
+     * @param modeOfMessage the kind of message
+     * @param elevatorSender the elevator this message took place in
+     * @param levelHappened the level this message took place at
+     * @param passenger the related passenger
+     * @param timeHappened when (ms) this message took place
+     */
+    public Message(int modeOfMessage, int elevatorSender, int levelHappened, Passenger passenger, long timeHappened){
         this.mode = modeOfMessage;
         this.destElevator = elevatorSender;
         this.destLevel = levelHappened;
         this.pass = passenger;
+        this.time = timeHappened;
     }
 }
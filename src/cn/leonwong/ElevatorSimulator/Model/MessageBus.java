@@ -0,0 +1,231 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, lock-free message bus
+ * Many elevators publish messages into a ring buffer, and a single consumer (the controller) drains them in batches
+ */
+public class MessageBus {
+
+    /**
+     * how the consumer waits for messages, and how producers wait for free slots
+     */
+    public static final class WaitStrategy {
+        /// park for a short, growing time; producers never pay for waking the consumer
+        public static final int Park = 0;
+        /// spin and yield; lowest latency but keeps a core busy
+        public static final int Yield = 1;
+        /// sleep on a condition until a producer signals; costs nothing when idle
+        public static final int Block = 2;
+    }
+
+    /**
+     * handles messages drained from the bus
+     */
+    public interface Handler {
+        /**
+         * handle one message
+         * @param m the message
+         */
+        void onMessage(Message m);
+    }
+
+    /// default number of slots in the ring buffer
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    /// the longest time a parking consumer sleeps before checking again
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /// the ring buffer
+    private final Message[] buffer;
+    /// for each slot, the sequence it is ready for: equal to a claim when free, one more than it when published
+    private final AtomicLongArray sequences;
+    /// buffer.length - 1, capacity is a power of 2
+    private final int mask;
+    /// the next sequence a producer will claim
+    private final AtomicLong tail;
+    /// the next sequence the consumer will read, only touched by the consumer
+    private long head;
+    /// the wait strategy
+    private final int waitStrategy;
+    /// used by the Block strategy
+    private final ReentrantLock lock;
+    /// signalled by producers when the consumer blocks
+    private final Condition notEmpty;
+    /// denote whether the consumer is blocking
+    private volatile boolean consumerWaiting;
+    /// set to make a waiting consumer return
+    private volatile boolean woken;
+
+    /**
+     * create a bus with the default capacity, blocking when idle
+     */
+    public MessageBus(){
+        this(DEFAULT_CAPACITY, WaitStrategy.Block);
+    }
+
+    /**
+     * create a bus
+     * @param capacity the number of slots, rounded up to a power of 2
+     * @param strategy the wait strategy
+     */
+    public MessageBus(int capacity, int strategy){
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.buffer = new Message[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; ++i)
+            this.sequences.set(i, i);
+        this.mask = size - 1;
+        this.tail = new AtomicLong();
+        this.head = 0;
+        this.waitStrategy = strategy;
+        this.lock = new ReentrantLock();
+        this.notEmpty = this.lock.newCondition();
+    }
+
+    /**
+     * try to publish a message
+     * @param m the message
+     * @return true if published, false if the bus is full
+     */
+    public boolean offer(Message m){
+        while (true){
+            long t = this.tail.get();
+            int slot = (int) (t & this.mask);
+            long seq = this.sequences.get(slot);
+            if (seq == t){
+                if (this.tail.compareAndSet(t, t + 1)){
+                    this.buffer[slot] = m;
+                    this.sequences.set(slot, t + 1);
+                    if (this.consumerWaiting)
+                        this.signalConsumer();
+                    return true;
+                }
+            }
+            // the slot still holds a message from the last lap
+            else if (seq < t)
+                return false;
+        }
+    }
+
+    /**
+     * publish a message, waiting for a free slot if the bus is full
+     * @param m the message
+     */
+    public void add(Message m){
+        int spins = 0;
+        while (!this.offer(m)){
+            if (this.waitStrategy == WaitStrategy.Yield || spins++ < 100)
+                Thread.yield();
+            else
+                LockSupport.parkNanos(MAX_PARK_NANOS);
+        }
+    }
+
+    /**
+     * hand waiting messages to a handler, must only be called by the single consumer
+     * @param h the handler
+     * @param maxBatch the maximum number of messages to drain
+     * @return the number of messages drained
+     */
+    public int drain(Handler h, int maxBatch){
+        int drained = 0;
+        while (drained < maxBatch){
+            int slot = (int) (this.head & this.mask);
+            if (this.sequences.get(slot) != this.head + 1)
+                break;
+            Message m = this.buffer[slot];
+            this.buffer[slot] = null;
+            this.sequences.lazySet(slot, this.head + this.buffer.length);
+            ++this.head;
+            ++drained;
+            h.onMessage(m);
+        }
+        return drained;
+    }
+
+    /**
+     * wait until there may be a message, or until woken up
+     */
+    public void await(){
+        if (this.waitStrategy == WaitStrategy.Yield){
+            while (this.isEmpty() && !this.woken)
+                Thread.yield();
+        }
+        else if (this.waitStrategy == WaitStrategy.Park){
+            long nanos = 1000;
+            while (this.isEmpty() && !this.woken){
+                LockSupport.parkNanos(nanos);
+                nanos = Math.min(nanos << 1, MAX_PARK_NANOS);
+            }
+        }
+        else {
+            this.lock.lock();
+            try {
+                this.consumerWaiting = true;
+                while (this.isEmpty() && !this.woken)
+                    this.notEmpty.await();
+            }
+            catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                this.consumerWaiting = false;
+                this.lock.unlock();
+            }
+        }
+        this.woken = false;
+    }
+
+    /**
+     * make a waiting consumer return, e.g. when stopping
+     */
+    public void wakeUp(){
+        this.woken = true;
+        this.signalConsumer();
+    }
+
+    /**
+     * decide whether there is no message to drain
+     * @return true if the bus is empty, false otherwise
+     */
+    public boolean isEmpty(){
+        return this.sequences.get((int) (this.head & this.mask)) != this.head + 1;
+    }
+
+    /**
+     * getter for the number of messages waiting, an estimate while producers are running
+     * @return the number of messages waiting
+     */
+    public int size(){
+        return (int) Math.max(0, this.tail.get() - this.head);
+    }
+
+    /**
+     * getter for the capacity
+     * @return the number of slots
+     */
+    public int getCapacity(){
+        return this.buffer.length;
+    }
+
+    /**
+     * wake up a consumer blocking on the condition
+     */
+    private void signalConsumer(){
+        if (this.waitStrategy != WaitStrategy.Block)
+            return;
+        this.lock.lock();
+        try {
+            this.notEmpty.signal();
+        }
+        finally {
+            this.lock.unlock();
+        }
+    }
+}
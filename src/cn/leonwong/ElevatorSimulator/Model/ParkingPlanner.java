@@ -0,0 +1,207 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.Arrays;
+
+/**
+ * Decides where idle elevators wait, so that the next hall calls are answered soon
+ * The free elevators, i.e. the idle ones and those on their way to park, are spread over the expected demand
+ * of each level (see DemandModel): the demand is cut into as many equal shares as there are free elevators,
+ * level order kept, and each share gets an elevator at its median level, which minimizes the expected distance
+ * to its calls. Free elevators are matched to these levels in order, so none crosses another on the way.
+ * A plan costs one pass over the levels plus sorting the free elevators, and is redone only when the calls,
+ * the bucket of time or the free elevators change.
+ */
+public class ParkingPlanner {
+    /// below this many expected calls in all, elevators stay where they are
+    private static final double MIN_DEMAND = 1.0;
+
+    /// the learned demand
+    private final DemandModel demand;
+    /// the demand of each level, by level from 1, reused by every plan
+    private final double[] weights;
+    /// the level each elevator was last sent to park at, by index from 1, 0 if none
+    private int[] parkingAt;
+    /// whether each elevator was free at the last plan, by index from 1
+    private boolean[] wasFree;
+    /// the free elevators of the last plan, sorted by where they are or are going
+    private int[] free;
+    /// the number of free elevators of the last plan
+    private int freeCount;
+    /// the parking level of each free elevator of the last plan, in the order of free
+    private int[] targets;
+    /// the calls recorded and the bucket of time when the last plan was made, to know when to plan again
+    private long plannedCalls, plannedBucket;
+    /// the calls recorded, the bucket of time and the floors travelled when each elevator was last decided for, by index from 1
+    private long[] decidedCalls, decidedBucket, decidedFloors;
+
+    /**
+     * create a planner that has not learned anything yet
+     * @param levs \#levels
+     * @param bucketMs the length (ms) of the time-of-day buckets of the demand, e.g. 15 minutes
+     * @param halfLifeDays after how many days the calls of a day count half as much
+     */
+    public ParkingPlanner(int levs, long bucketMs, double halfLifeDays){
+        this.demand = new DemandModel(levs, bucketMs, halfLifeDays);
+        this.weights = new double[levs + 1];
+        this.parkingAt = new int[1];
+        this.wasFree = new boolean[1];
+        this.decidedCalls = new long[1];
+        this.decidedBucket = new long[1];
+        this.decidedFloors = new long[1];
+        this.free = new int[0];
+        this.targets = new int[0];
+        this.plannedCalls = -1;
+    }
+
+    /**
+     * learn from a hall call
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     * @param now the time of the call
+     */
+    public void recordCall(int from, int to, long now){
+        this.demand.record(from, to, now);
+    }
+
+    /**
+     * getter for the learned demand
+     * @return the demand model
+     */
+    public DemandModel getDemand(){
+        return this.demand;
+    }
+
+    /**
+     * decide where an idle elevator should go and wait
+     * @param b the building
+     * @param e the idle elevator
+     * @param now the time
+     * @return the level to send it to, 0 to leave it where it is
+     */
+    public synchronized int park(Building b, Elevator e, long now){
+        int elevs = b.getElevators();
+        if (this.parkingAt.length <= elevs){
+            this.parkingAt = Arrays.copyOf(this.parkingAt, elevs + 1);
+            this.wasFree = Arrays.copyOf(this.wasFree, elevs + 1);
+            this.decidedCalls = Arrays.copyOf(this.decidedCalls, elevs + 1);
+            this.decidedBucket = Arrays.copyOf(this.decidedBucket, elevs + 1);
+            this.decidedFloors = Arrays.copyOf(this.decidedFloors, elevs + 1);
+            Arrays.fill(this.decidedCalls, -1);
+        }
+        int index = e.getIndex();
+        long calls = this.demand.getRecordedCalls();
+        long bucket = now / this.demand.getBucketLength();
+        long floors = e.getFloorsTravelled();
+        // an idle elevator says so again and again, nothing is decided anew until it has moved or some call or the time of day changes
+        if (this.decidedCalls[index] == calls && this.decidedBucket[index] == bucket && this.decidedFloors[index] == floors)
+            return 0;
+        this.decidedCalls[index] = calls;
+        this.decidedBucket[index] = bucket;
+        this.decidedFloors[index] = floors;
+        this.parkingAt[index] = 0;
+        if (!this.sameFreeElevators(b) || this.plannedCalls != calls || this.plannedBucket != bucket)
+            this.plan(b, now);
+        for (int i = 0; i < this.freeCount; ++i){
+            if (this.free[i] != index)
+                continue;
+            int target = this.targets[i];
+            if (target == 0 || target == e.getLevel())
+                return 0;
+            this.parkingAt[index] = target;
+            return target;
+        }
+        return 0;
+    }
+
+    /**
+     * spread the free elevators over the demand
+     * @param b the building
+     * @param now the time
+     */
+    private void plan(Building b, long now){
+        this.plannedCalls = this.demand.getRecordedCalls();
+        this.plannedBucket = now / this.demand.getBucketLength();
+        this.collectFreeElevators(b);
+        int k = this.freeCount;
+        Arrays.fill(this.targets, 0, k, 0);
+        double total = this.demand.getDemand(now, this.weights);
+        if (k == 0 || total < MIN_DEMAND)
+            return;
+        // the j-th elevator goes to the level where the cumulative demand reaches (j + 1/2) / k of the total
+        int levels = this.weights.length - 1;
+        double cumulative = 0;
+        int lev = 1;
+        for (int j = 0; j < k; ++j){
+            double quantile = (j + 0.5) / k * total;
+            while (lev < levels && cumulative + this.weights[lev] < quantile)
+                cumulative += this.weights[lev++];
+            this.targets[j] = lev;
+        }
+    }
+
+    /**
+     * find the free elevators and sort them by the level they are at or are going to park at
+     * @param b the building
+     */
+    private void collectFreeElevators(Building b){
+        int elevs = b.getElevators();
+        if (this.free.length < elevs){
+            this.free = new int[elevs];
+            this.targets = new int[elevs];
+        }
+        this.freeCount = 0;
+        for (int i = 1; i <= elevs; ++i){
+            this.wasFree[i] = this.isFree(b.elevatorList.get(i - 1));
+            if (this.wasFree[i])
+                this.free[this.freeCount++] = i;
+            else
+                this.parkingAt[i] = 0;
+        }
+        // insertion sort, there are few elevators
+        for (int i = 1; i < this.freeCount; ++i){
+            int x = this.free[i];
+            int j = i - 1;
+            while (j >= 0 && this.positionOf(b, this.free[j]) > this.positionOf(b, x)){
+                this.free[j + 1] = this.free[j];
+                --j;
+            }
+            this.free[j + 1] = x;
+        }
+    }
+
+    /**
+     * decide whether the free elevators are those of the last plan
+     * @param b the building
+     * @return true if they are the same
+     */
+    private boolean sameFreeElevators(Building b){
+        for (int i = 1; i <= b.getElevators(); ++i)
+            if (this.isFree(b.elevatorList.get(i - 1)) != this.wasFree[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * decide whether an elevator is free: idle, or going empty to park and nowhere else
+     * @param e the elevator
+     * @return true if free
+     */
+    private boolean isFree(Elevator e){
+        if (e.isIdle())
+            return true;
+        int target = this.parkingAt[e.getIndex()];
+        return target != 0 && e.getDestinationSize() == 1 && e.willStopAt(target)
+                && e.getPassengers() == 0 && e.getAssignedPassengers() == 0;
+    }
+
+    /**
+     * getter for where a free elevator is, or will be once parked
+     * @param b the building
+     * @param index the index of the elevator
+     * @return the level
+     */
+    private int positionOf(Building b, int index){
+        int target = this.parkingAt[index];
+        return target != 0 ? target : b.elevatorList.get(index - 1).getLevel();
+    }
+}
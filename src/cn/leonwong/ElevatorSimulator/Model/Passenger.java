@@ -4,8 +4,22 @@ package cn.leonwong.ElevatorSimulator.Model;
  * an easy model of a passenger who wants to go to some floor
  */
 public class Passenger {
+    /// the id of this passenger, unique in a building
+    public long id;
+    /// the level this passenger starts at
+    public int origin;
     /// the destination of this passenger
     public int destination;
+    /// the elevator this passenger is assigned to by destination control, or riding; 0 if any elevator may take it
+    public int elevator;
+    /// the name of the strategy which dispatched this passenger
+    public String strategy;
+    /// when (ms, virtual time in a simulation) this passenger called for an elevator
+    public long requestTime;
+    /// when this passenger got on an elevator, -1 if not yet
+    public long boardTime;
+    /// when this passenger got off, -1 if not yet
+    public long alightTime;
 
     /**
      * create a new passenger heading for some floor
@@ -13,6 +27,23 @@ public class Passenger {
      */
     public Passenger(int dest){
         this.destination = dest;
+        this.elevator = 0;
+        this.boardTime = -1;
+        this.alightTime = -1;
+    }
+
+    /**
+     * create a new passenger calling for an elevator
+     * @param passengerId the id of this passenger
+     * @param from the level this passenger starts at
+     * @param dest the destination of this passenger
+     * @param time when this passenger calls for an elevator
+     */
+    public Passenger(long passengerId, int from, int dest, long time){
+        this(dest);
+        this.id = passengerId;
+        this.origin = from;
+        this.requestTime = time;
     }
 
 }
@@ -0,0 +1,339 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A recorded stream of passenger arrivals read from a file, e.g. months of hall-call logs, to feed Controller.addTraffic
+ * Two formats are read, told apart by their first bytes:
+ * CSV, one "time,from,to" line per passenger with the time in ms, where lines that are not three integers
+ * (a header, comments) are skipped and counted; and a compact binary format, an int MAGIC and an int VERSION, then
+ * one record per passenger of a long time (ms) and two shorts, from and to, big-endian.
+ * The file is memory-mapped a window at a time and parsed in place as arrivals are asked for, so a trace of any size
+ * takes fixed memory and is read at disk speed. Times are given from the first arrival's; arrivals from or to
+ * levels the building does not have are skipped and counted. The file is closed once the last arrival is read.
+ */
+public class PassengerTrace implements ArrivalSource, Closeable {
+    /// the first int of a binary trace, "ELTR"
+    public static final int MAGIC = 0x454C5452;
+    /// the layout of binary traces written by write()
+    public static final int VERSION = 1;
+    /// the size (bytes) of the header and of each record of a binary trace
+    private static final int HEADER = 8, RECORD = 12;
+    /// the size (bytes) of the part of the file mapped at once
+    private static final long WINDOW = 64L << 20;
+
+    /// the file
+    private final FileChannel channel;
+    /// the size of the file
+    private final long size;
+    /// denote if the file is binary, CSV otherwise
+    private final boolean binary;
+    /// \#levels of the building, arrivals from or to other levels are skipped
+    private final int levels;
+    /// the part of the file mapped, null before the first read
+    private MappedByteBuffer window;
+    /// the position in the file of the start of the window
+    private long windowStart;
+    /// the position in the file of the next byte to read
+    private long position;
+    /// the numbers of the fields of a CSV line being parsed, reused by every line
+    private final long[] fields;
+
+    /// the time (ms) in the file of the first arrival, Long.MIN_VALUE before it is read
+    private long firstTime;
+    /// the time (ms) of the current arrival, from the first one
+    private long time;
+    /// the starting level of the current arrival
+    private int from;
+    /// the destination of the current arrival
+    private int to;
+    /// the number of arrivals read so far
+    private long arrivals;
+    /// the number of lines or records skipped so far
+    private long skipped;
+    /// denote if the file is closed
+    private boolean closed;
+
+    /**
+     * open a trace
+     * @param file the file, CSV or binary
+     * @param levs \#levels of the building the trace feeds
+     * @throws IOException if the file cannot be opened, or is a binary trace of an unknown version
+     */
+    public PassengerTrace(Path file, int levs) throws IOException{
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.size = this.channel.size();
+        this.levels = levs;
+        this.fields = new long[3];
+        this.firstTime = Long.MIN_VALUE;
+        boolean bin = false;
+        if (this.size >= HEADER){
+            this.map(0);
+            if (this.window.getInt(0) == MAGIC){
+                int version = this.window.getInt(4);
+                if (version != VERSION){
+                    this.channel.close();
+                    throw new IOException("Unknown trace version " + version + " of " + file);
+                }
+                bin = true;
+                this.position = HEADER;
+            }
+        }
+        this.binary = bin;
+    }
+
+    /**
+     * read the next arrival
+     * @return false if the trace is over or cannot be read, true otherwise
+     */
+    @Override
+    public synchronized boolean next(){
+        if (this.closed)
+            return false;
+        try {
+            if (this.binary ? this.nextRecord() : this.nextLine())
+                return true;
+        }
+        catch (IOException e){
+            Log.error(Log.Category.Model, "PassengerTrace: cannot read the trace: %s", e.getMessage());
+        }
+        this.closeQuietly();
+        return false;
+    }
+
+    @Override
+    public long getTime(){
+        return this.time;
+    }
+
+    @Override
+    public int getFrom(){
+        return this.from;
+    }
+
+    @Override
+    public int getTo(){
+        return this.to;
+    }
+
+    /**
+     * getter for the number of arrivals read
+     * @return the number of arrivals read so far
+     */
+    public long getArrivals(){
+        return this.arrivals;
+    }
+
+    /**
+     * getter for the number of lines or records skipped
+     * @return the number skipped so far, because they could not be parsed or had wrong levels
+     */
+    public long getSkipped(){
+        return this.skipped;
+    }
+
+    /**
+     * decide whether the trace is binary
+     * @return true if binary, false if CSV
+     */
+    public boolean isBinary(){
+        return this.binary;
+    }
+
+    /**
+     * close the file, no more arrivals will be read; may be called from any thread
+     * @throws IOException if it cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException{
+        this.closed = true;
+        this.window = null;
+        this.channel.close();
+    }
+
+    /**
+     * read the next valid record of a binary trace
+     * @return false if there is none
+     * @throws IOException if the file cannot be mapped
+     */
+    private boolean nextRecord() throws IOException{
+        while (this.position + RECORD <= this.size){
+            if (this.window == null || this.position + RECORD > this.windowStart + this.window.limit())
+                this.map(this.position);
+            int at = (int) (this.position - this.windowStart);
+            long t = this.window.getLong(at);
+            int f = this.window.getShort(at + 8);
+            int d = this.window.getShort(at + 10);
+            this.position += RECORD;
+            if (this.accept(t, f, d))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * read the next valid line of a CSV trace
+     * @return false if there is none
+     * @throws IOException if the file cannot be mapped
+     */
+    private boolean nextLine() throws IOException{
+        while (this.position < this.size){
+            int n = 0;
+            long value = 0;
+            boolean digits = false, bad = false, blank = true;
+            int c;
+            while ((c = this.read()) >= 0 && c != '\n'){
+                if (c >= '0' && c <= '9'){
+                    // more than 18 digits would overflow
+                    if (value > 99999999999999999L)
+                        bad = true;
+                    value = value * 10 + (c - '0');
+                    digits = true;
+                    blank = false;
+                }
+                else if (c == ','){
+                    if (!digits || n == this.fields.length)
+                        bad = true;
+                    else
+                        this.fields[n++] = value;
+                    value = 0;
+                    digits = false;
+                    blank = false;
+                }
+                else if (c != ' ' && c != '\t' && c != '\r'){
+                    bad = true;
+                    blank = false;
+                }
+            }
+            if (blank)
+                continue;
+            if (!bad && digits && n < this.fields.length)
+                this.fields[n++] = value;
+            else
+                bad = true;
+            if (bad || n != this.fields.length){
+                ++this.skipped;
+                continue;
+            }
+            if (this.accept(this.fields[0], this.fields[1], this.fields[2]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * make an arrival current if its levels are in the building, count it as skipped otherwise
+     * @param t the time (ms) in the file
+     * @param f the starting level
+     * @param d the destination
+     * @return true if it is the current arrival now
+     */
+    private boolean accept(long t, long f, long d){
+        if (f < 1 || f > this.levels || d < 1 || d > this.levels || f == d){
+            ++this.skipped;
+            return false;
+        }
+        if (this.firstTime == Long.MIN_VALUE)
+            this.firstTime = t;
+        this.time = t - this.firstTime;
+        this.from = (int) f;
+        this.to = (int) d;
+        ++this.arrivals;
+        return true;
+    }
+
+    /**
+     * read the next byte of the file
+     * @return the byte, -1 at the end of the file
+     * @throws IOException if the file cannot be mapped
+     */
+    private int read() throws IOException{
+        if (this.position >= this.size)
+            return -1;
+        if (this.window == null || this.position >= this.windowStart + this.window.limit())
+            this.map(this.position);
+        return this.window.get((int) (this.position++ - this.windowStart));
+    }
+
+    /**
+     * map the part of the file from some position on
+     * @param start the position
+     * @throws IOException if it cannot be mapped
+     */
+    private void map(long start) throws IOException{
+        this.windowStart = start;
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW, this.size - start));
+    }
+
+    /**
+     * close the file, logging any failure
+     */
+    private void closeQuietly(){
+        try {
+            this.close();
+        }
+        catch (IOException e){
+            Log.warn(Log.Category.Model, "PassengerTrace: cannot close the trace: %s", e.getMessage());
+        }
+    }
+
+    /**
+     * write the arrivals of a stream as a binary trace, e.g. to convert a CSV trace or to save a workload
+     * @param src the arrivals, read to their end
+     * @param file the file, replaced if it exists
+     * @return the number of arrivals written
+     * @throws IOException if the file cannot be written
+     */
+    public static long write(ArrivalSource src, Path file) throws IOException{
+        long n = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            while (src.next()){
+                out.writeLong(src.getTime());
+                out.writeShort(src.getFrom());
+                out.writeShort(src.getTo());
+                ++n;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * convert a CSV trace to a binary one, or read a trace through, and print how fast it was read
+     * usage: PassengerTrace levels trace [binary output]
+     * @param args the arguments
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException{
+        PrintStream out = System.out;
+        if (args.length < 2){
+            out.println("usage: PassengerTrace levels trace [binary output]");
+            return;
+        }
+        int levs = Integer.parseInt(args[0]);
+        long start = System.nanoTime();
+        long n = 0;
+        try (PassengerTrace trace = new PassengerTrace(Paths.get(args[1]), levs)){
+            if (args.length > 2)
+                n = write(trace, Paths.get(args[2]));
+            else {
+                while (trace.next())
+                    ++n;
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            out.printf("%d arrivals (%d skipped) over %.1f hours of %s trace, read in %.2f s (%.0f per second)\n", n,
+                    trace.getSkipped(), trace.getTime() / 3600000.0, trace.isBinary() ? "binary" : "CSV", seconds, n / seconds);
+        }
+    }
+}
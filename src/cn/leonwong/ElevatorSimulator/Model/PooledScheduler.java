@@ -0,0 +1,78 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * runs the steps of many elevators on a small, fixed pool of carrier threads
+ * An elevator holds no thread between steps, so thousands of them fit in one JVM
+ */
+public class PooledScheduler implements ElevatorScheduler {
+    /// the carrier threads
+    private ScheduledThreadPoolExecutor pool;
+
+    /**
+     * create a pool with one carrier thread per core
+     */
+    public PooledScheduler(){
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * create a pool
+     * @param threads the number of carrier threads
+     */
+    public PooledScheduler(int threads){
+        this.pool = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread t = new Thread(r, "Elevator Carrier");
+            t.setDaemon(true);
+            return t;
+        });
+        this.pool.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * schedule the first step of an elevator
+     * @param e the elevator
+     */
+    @Override
+    public void start(Elevator e){
+        this.pool.schedule(new Stepper(e), Elevator.FLOOR_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stop the carrier threads
+     */
+    @Override
+    public void shutdown(){
+        this.pool.shutdownNow();
+    }
+
+    /**
+     * does the due steps of an elevator and schedules its next one
+     */
+    private class Stepper implements Runnable {
+        /// the elevator
+        private Elevator elevator;
+
+        /**
+         * constructor
+         * @param e the elevator
+         */
+        Stepper(Elevator e){
+            this.elevator = e;
+        }
+
+        /**
+         * run the steps which take no time at once, then wait for the next one on the pool
+         */
+        @Override
+        public void run(){
+            long delay = 0;
+            while (delay == 0 && !this.elevator.isStopped())
+                delay = this.elevator.step();
+            if (!this.elevator.isStopped() && !pool.isShutdown())
+                pool.schedule(this, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.Random;
+
+/**
+ * Power Saving: idle elevators keep idle unless all running elevators are full
+ */
+public class PowerSavingStrategy extends SpeedFirstStrategy {
+
+    @Override
+    public String getName(){
+        return "Power Saving";
+    }
+
+    @Override
+    public void evaluate(Building b, int from, int to, int[] costs){
+        for (int i = 0; i < b.getElevators(); ++i){
+            Elevator e = b.elevatorList.get(i);
+            // if the elevator is full OR IDLE, ignore it
+            costs[i] = e.isFull() || e.isIdle() ? Integer.MAX_VALUE : this.estimate(b, e, from, to);
+        }
+    }
+
+    @Override
+    public int choose(Building b, int from, int to, int[] costs, Random rng){
+        int fastestIndex = super.choose(b, from, to, costs, rng);
+        // if all running elevators are full or idle, wake up the first idle one
+        if (costs[fastestIndex] == Integer.MAX_VALUE){
+            for (int i = 0; i < b.getElevators(); ++i)
+                if (b.elevatorList.get(i).isIdle())
+                    return i;
+        }
+        return fastestIndex;
+    }
+}
@@ -0,0 +1,69 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * the mean and spread of a sample, e.g. one KPI over independent replications
+ * Values are added one at a time (Welford's method), so no value is kept
+ */
+public class SampleStats {
+    /// the z value of a two-sided 95% confidence interval
+    private static final double Z95 = 1.96;
+
+    /// the number of values
+    private long count;
+    /// the mean of the values
+    private double mean;
+    /// the sum of squared differences from the mean
+    private double m2;
+
+    /**
+     * add a value
+     * @param value the value
+     */
+    public synchronized void add(double value){
+        ++this.count;
+        double delta = value - this.mean;
+        this.mean += delta / this.count;
+        this.m2 += delta * (value - this.mean);
+    }
+
+    /**
+     * getter for the number of values
+     * @return the number of values added
+     */
+    public synchronized long getCount(){
+        return this.count;
+    }
+
+    /**
+     * getter for the mean
+     * @return the mean of the values, 0 if none
+     */
+    public synchronized double getMean(){
+        return this.mean;
+    }
+
+    /**
+     * getter for the standard deviation
+     * @return the sample standard deviation, 0 if fewer than 2 values
+     */
+    public synchronized double getStdDev(){
+        return this.count < 2 ? 0 : Math.sqrt(this.m2 / (this.count - 1));
+    }
+
+    /**
+     * getter for the half width of the 95% confidence interval of the mean, by the normal approximation
+     * @return the half width, 0 if fewer than 2 values
+     */
+    public synchronized double getHalfWidth95(){
+        return this.count < 2 ? 0 : Z95 * this.getStdDev() / Math.sqrt(this.count);
+    }
+
+    /**
+     * describe the mean and its confidence interval
+     * @return e.g. "3400.0 +- 52.1"
+     */
+    @Override
+    public synchronized String toString(){
+        return String.format("%.1f +- %.1f", this.mean, this.getHalfWidth95());
+    }
+}
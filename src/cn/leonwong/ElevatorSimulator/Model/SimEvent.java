@@ -0,0 +1,58 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * a timestamped event of the discrete-event simulation
+ */
+public class SimEvent implements Comparable<SimEvent> {
+    /// used to indicate an elevator arrives at (or passes by) the next floor
+    public static final int arriveAtFloor = 0;
+    /// used to indicate a passenger leaves an elevator
+    public static final int alight = 1;
+    /// used to indicate an elevator opens its door for the waiting passengers
+    public static final int doorOpen = 2;
+    /// used to indicate a passenger gets on an elevator
+    public static final int board = 3;
+    /// used to indicate a new passenger calls for an elevator
+    public static final int hallCall = 4;
+    /// used to indicate some task is due, e.g. the end of a dispatching window
+    public static final int timer = 5;
+
+    /// to denote which kind of event this one is
+    public int mode;
+    /// the virtual time (ms) this event takes place at
+    public long time;
+    /// the order this event was scheduled in, to keep events at the same time in FIFO order
+    long sequence;
+    /// the elevator related to this event, null for hall calls
+    public Elevator elevator;
+    /// the starting level of a hall call
+    public int from;
+    /// the destination level of a hall call
+    public int to;
+    /// the task of a timer
+    public Runnable task;
+
+    /**
+     * to build a new event
+     * @param modeOfEvent the kind of event
+     * @param timeHappened the virtual time this event takes place at
+     * @param seq the order this event was scheduled in
+     */
+    SimEvent(int modeOfEvent, long timeHappened, long seq){
+        this.mode = modeOfEvent;
+        this.time = timeHappened;
+        this.sequence = seq;
+    }
+
+    /**
+     * earlier events come first, events at the same time keep the order they were scheduled
+     * @param other the other event
+     * @return negative if this event should be fired first
+     */
+    @Override
+    public int compareTo(SimEvent other){
+        if (this.time != other.time)
+            return this.time < other.time ? -1 : 1;
+        return Long.compare(this.sequence, other.sequence);
+    }
+}
@@ -0,0 +1,370 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+/**
+ * Discrete-event simulation engine
+ * Keeps a virtual clock and a queue of timestamped events instead of sleeping,
+ * so a building can be simulated as fast as the CPU allows (batch runs)
+ * or paced against the wall clock at any speed (when a View is attached)
+ */
+public class Simulation implements ElevatorScheduler {
+
+    /**
+     * receives hall calls when they are fired
+     */
+    public interface HallCallListener {
+        /**
+         * a passenger calls for an elevator
+         * @param from the starting level of the passenger
+         * @param to the destination of the passenger
+         */
+        void onHallCall(int from, int to);
+    }
+
+    /// events waiting to be fired, earliest first
+    private PriorityQueue<SimEvent> events;
+    /// the virtual clock (ms), i.e. the time of the last fired event
+    private long now;
+    /// how many events have been scheduled, used to order events at the same time
+    private long sequence;
+    /// how many events have been fired
+    private long fired;
+    /// how many times faster than real time this simulation runs, 0 or less to run flat out
+    private double speed;
+    /// the virtual time when pacing started
+    private long simAnchor;
+    /// the wall time (ns) when pacing started
+    private long wallAnchor;
+    /// receives hall calls
+    private HallCallListener hallCallListener;
+    /// called after every fired event, e.g. to drain messages
+    private Runnable eventHook;
+    /// denote if this simulation has been stopped
+    private volatile boolean stop;
+
+    /**
+     * create a simulation which runs as fast as possible
+     */
+    public Simulation(){
+        this(0);
+    }
+
+    /**
+     * create a simulation
+     * @param spd how many times faster than real time, 0 or less to run flat out
+     */
+    public Simulation(double spd){
+        this.events = new PriorityQueue<>();
+        this.now = 0;
+        this.sequence = 0;
+        this.stop = false;
+        this.setSpeed(spd);
+    }
+
+    /**
+     * getter for the virtual clock
+     * @return the current virtual time in ms
+     */
+    @Override
+    public synchronized long now(){
+        if (this.speed > 0){
+            long projected = this.simAnchor + (long) ((System.nanoTime() - this.wallAnchor) * this.speed / 1000000);
+            return Math.max(this.now, projected);
+        }
+        return this.now;
+    }
+
+    /**
+     * change the pace of this simulation, it takes effect from the current virtual time
+     * @param spd how many times faster than real time, 0 or less to run flat out
+     */
+    public synchronized void setSpeed(double spd){
+        this.speed = spd;
+        this.simAnchor = this.now;
+        this.wallAnchor = System.nanoTime();
+        this.notifyAll();
+    }
+
+    /**
+     * getter for the pace of this simulation
+     * @return how many times faster than real time, 0 or less if running flat out
+     */
+    public synchronized double getSpeed(){
+        return this.speed;
+    }
+
+    /**
+     * setter for the hall call listener
+     * @param l the listener
+     */
+    public void setHallCallListener(HallCallListener l){
+        this.hallCallListener = l;
+    }
+
+    /**
+     * setter for the hook called after every event
+     * @param hook the hook
+     */
+    public void setEventHook(Runnable hook){
+        this.eventHook = hook;
+    }
+
+    /**
+     * schedule the first step of an elevator one floor interval from now
+     * @param e the elevator
+     */
+    @Override
+    public void start(Elevator e){
+        this.scheduleElevator(e, this.now() + Elevator.FLOOR_INTERVAL);
+    }
+
+    /**
+     * same as stop()
+     */
+    @Override
+    public void shutdown(){
+        this.stop();
+    }
+
+    /**
+     * schedule the next step of an elevator
+     * @param e the elevator
+     * @param at the virtual time of the step
+     */
+    synchronized void scheduleElevator(Elevator e, long at){
+        SimEvent ev = new SimEvent(e.getNextEvent(), at, this.sequence++);
+        ev.elevator = e;
+        this.events.add(ev);
+        this.notifyAll();
+    }
+
+    /**
+     * schedule a hall call at some virtual time
+     * @param at the virtual time of the call
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     */
+    public synchronized void scheduleHallCall(long at, int from, int to){
+        SimEvent ev = new SimEvent(SimEvent.hallCall, Math.max(at, this.now), this.sequence++);
+        ev.from = from;
+        ev.to = to;
+        this.events.add(ev);
+        this.notifyAll();
+    }
+
+    /**
+     * schedule a hall call as soon as possible
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     */
+    public void scheduleHallCall(int from, int to){
+        this.scheduleHallCall(this.now(), from, to);
+    }
+
+    /**
+     * run a task at some virtual time, on the thread firing events
+     * @param at the virtual time
+     * @param task the task
+     */
+    public synchronized void scheduleTask(long at, Runnable task){
+        SimEvent ev = new SimEvent(SimEvent.timer, Math.max(at, this.now), this.sequence++);
+        ev.task = task;
+        this.events.add(ev);
+        this.notifyAll();
+    }
+
+    /**
+     * fire the next event no matter how far it is
+     * @return false if there is no event to fire, true otherwise
+     */
+    public boolean step(){
+        SimEvent ev;
+        synchronized (this){
+            ev = this.events.poll();
+            if (ev == null)
+                return false;
+            this.now = ev.time;
+        }
+        this.fire(ev);
+        return true;
+    }
+
+    /**
+     * fire all the events until some virtual time, pacing them if a speed is set
+     * @param endTime the virtual time to stop at
+     */
+    public void runUntil(long endTime){
+        SimEvent ev;
+        while ((ev = this.next(endTime)) != null)
+            this.fire(ev);
+        synchronized (this){
+            if (!this.stop && this.now < endTime)
+                this.now = endTime;
+        }
+    }
+
+    /**
+     * fire at most some events until some virtual time, e.g. to take turns on a thread shared with other simulations
+     * @param endTime the virtual time to stop at
+     * @param maxEvents the most events to fire
+     * @return true if it stopped on the limit with events still due before endTime, false if endTime is reached or this simulation is stopped
+     */
+    public boolean runUntil(long endTime, int maxEvents){
+        SimEvent ev;
+        for (int i = 0; i < maxEvents; ++i){
+            if ((ev = this.next(endTime)) == null){
+                synchronized (this){
+                    if (!this.stop && this.now < endTime)
+                        this.now = endTime;
+                }
+                return false;
+            }
+            this.fire(ev);
+        }
+        return true;
+    }
+
+    /**
+     * fire events until this simulation is stopped
+     */
+    public void run(){
+        this.runUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * stop this simulation, the event being fired will be finished
+     */
+    public synchronized void stop(){
+        this.stop = true;
+        this.notifyAll();
+    }
+
+    /**
+     * decide whether this simulation has been stopped
+     * @return true if stopped, no more events will be fired
+     */
+    public boolean isStopped(){
+        return this.stop;
+    }
+
+    /**
+     * getter for the number of events waiting
+     * @return the number of events waiting to be fired
+     */
+    public synchronized int getPendingEvents(){
+        return this.events.size();
+    }
+
+    /**
+     * getter for the events waiting, e.g. to take a snapshot
+     * @return a copy of the events waiting to be fired, in no particular order
+     */
+    synchronized ArrayList<SimEvent> getEventList(){
+        return new ArrayList<>(this.events);
+    }
+
+    /**
+     * move the virtual clock forward, e.g. to the time of a snapshot being restored
+     * @param time the virtual time (ms), ignored if the clock is already past it
+     */
+    synchronized void advanceTo(long time){
+        if (time <= this.now)
+            return;
+        this.now = time;
+        this.simAnchor = time;
+        this.wallAnchor = System.nanoTime();
+        this.notifyAll();
+    }
+
+    /**
+     * getter for the number of events fired
+     * @return the number of events fired so far
+     */
+    public long getFiredEvents(){
+        return this.fired;
+    }
+
+    /**
+     * take the next event due, waiting for the wall clock if this simulation is paced
+     * @param endTime no event after this virtual time will be taken
+     * @return the next event, or null if stopped or no event is due before endTime
+     */
+    private synchronized SimEvent next(long endTime){
+        while (!this.stop){
+            SimEvent head = this.events.peek();
+            if (head == null){
+                // a paced simulation waits for hall calls from the user, until endTime falls due
+                if (this.speed <= 0)
+                    return null;
+                if (endTime == Long.MAX_VALUE){
+                    this.waitFor(0);
+                    continue;
+                }
+                long ahead = this.wallTime(endTime) - System.nanoTime();
+                if (ahead <= 0)
+                    return null;
+                this.waitFor(ahead);
+                continue;
+            }
+            if (head.time > endTime)
+                return null;
+            if (this.speed > 0){
+                long ahead = this.wallTime(head.time) - System.nanoTime();
+                if (ahead > 0){
+                    this.waitFor(ahead);
+                    continue;
+                }
+            }
+            this.now = head.time;
+            return this.events.poll();
+        }
+        return null;
+    }
+
+    /**
+     * find when a virtual time falls due on the wall clock, if paced
+     * @param time the virtual time
+     * @return the wall time (ns, as System.nanoTime)
+     */
+    private long wallTime(long time){
+        return this.wallAnchor + (long) ((time - this.simAnchor) * 1000000 / this.speed);
+    }
+
+    /**
+     * wait on this simulation's monitor
+     * @param nanos how long to wait in ns, 0 to wait until notified
+     */
+    private void waitFor(long nanos){
+        try {
+            if (nanos == 0)
+                this.wait();
+            else
+                this.wait(nanos / 1000000, (int) (nanos % 1000000));
+        }
+        catch (InterruptedException e){
+            this.stop = true;
+        }
+    }
+
+    /**
+     * fire an event
+     * @param ev the event
+     */
+    private void fire(SimEvent ev){
+        ++this.fired;
+        if (ev.mode == SimEvent.hallCall){
+            if (this.hallCallListener != null)
+                this.hallCallListener.onHallCall(ev.from, ev.to);
+        }
+        else if (ev.mode == SimEvent.timer)
+            ev.task.run();
+        else if (!ev.elevator.isStopped()){
+            long delay = ev.elevator.step();
+            this.scheduleElevator(ev.elevator, ev.time + delay);
+        }
+        if (this.eventHook != null)
+            this.eventHook.run();
+    }
+}
@@ -0,0 +1,47 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+/**
+ * Speed First: every passenger waiting for elevators can get on an elevator as fast as possible
+ */
+public class SpeedFirstStrategy implements DispatchStrategy {
+
+    @Override
+    public String getName(){
+        return "Speed First";
+    }
+
+    @Override
+    public void evaluate(Building b, int from, int to, int[] costs){
+        for (int i = 0; i < b.getElevators(); ++i){
+            Elevator e = b.elevatorList.get(i);
+            // if the elevator is full, ignore it
+            costs[i] = e.isFull() ? Integer.MAX_VALUE : this.estimate(b, e, from, to);
+        }
+    }
+
+    /**
+     * estimate how long an elevator (which is not full) takes to pick up a passenger
+     * @param b the building
+     * @param e the elevator
+     * @param from the starting level of the passenger
+     * @param to the destination of the passenger
+     * @return the estimated time
+     */
+    protected int estimate(Building b, Elevator e, int from, int to){
+        // if the elevator's direction is the same as the passenger's...
+        if (e.getDirection() * (to - from) >= 0) {
+            // and the elevator can arrive at the passenger's level without changing ite direction...
+            if ((e.getDirection() >= Elevator.Direction.changingDirection && from >= e.getLevel()) ||
+                    (e.getDirection() <= Elevator.Direction.changingDirection && from <= e.getLevel()))
+                // the estimated time is just the floors which need a stop between
+                return Math.abs(from - e.getLevel()) + e.getDestinationSize();
+            else
+                return 2 * b.getLevels() - Math.abs(from - e.getLevel());
+        }
+        // else the elevator will change its direction once and pick up the passenger
+        if (e.getDirection() == Elevator.Direction.Upward)
+            return e.getMaxDestination() * 2 - e.getLevel() - from + 2 + e.getDestinationSize();
+        else
+            return e.getMinDestination() + from + e.getDestinationSize();
+    }
+}
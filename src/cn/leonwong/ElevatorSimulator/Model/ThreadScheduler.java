@@ -0,0 +1,61 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * runs each elevator's loop on a thread of its own, which sleeps between steps
+ */
+public class ThreadScheduler implements ElevatorScheduler {
+    /// creates the thread of each elevator
+    private ThreadFactory factory;
+
+    /**
+     * one platform thread per elevator, as elevators always did
+     */
+    public ThreadScheduler(){
+        this(null);
+    }
+
+    /**
+     * create a scheduler with a given thread factory
+     * @param f the thread factory, null for platform threads
+     */
+    public ThreadScheduler(ThreadFactory f){
+        this.factory = f;
+    }
+
+    /**
+     * a scheduler running each elevator on a virtual thread, which makes a blocking sleep almost free
+     * @return the scheduler, or a pool of carrier threads if this JVM has no virtual threads
+     */
+    public static ElevatorScheduler virtualThreads(){
+        try {
+            // looked up reflectively so that the simulator still runs on JVMs without virtual threads
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Object f = Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            return new ThreadScheduler((ThreadFactory) f);
+        }
+        catch (ReflectiveOperationException e){
+            Log.info(Log.Category.Model, "ThreadScheduler: virtual threads unavailable, using a shared pool.");
+            return new PooledScheduler();
+        }
+    }
+
+    /**
+     * start an elevator on a new thread
+     * @param e the elevator
+     */
+    @Override
+    public void start(Elevator e){
+        Thread t = this.factory == null ? new Thread(e) : this.factory.newThread(e);
+        t.setName("Elevator #" + e.getIndex());
+        t.start();
+    }
+
+    /**
+     * nothing to release, each thread ends when its elevator is stopped
+     */
+    @Override
+    public void shutdown(){
+    }
+}
@@ -0,0 +1,264 @@
+package cn.leonwong.ElevatorSimulator.Model;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A seeded workload of passengers arriving as a Poisson stream whose rate and pattern change by phase
+ * Arrivals are drawn one at a time as they are asked for, so a workload of any length takes fixed memory,
+ * and the same seed and phases always give the same passengers at the same times.
+ * Level 1 is the lobby.
+ */
+public class TrafficGenerator implements ArrivalSource {
+    /**
+     * an enum for traffic patterns
+     */
+    public static class Pattern {
+        /// most passengers go up from the lobby, as in the morning
+        public static final int UpPeak = 0;
+        /// most passengers go down to the lobby, as in the evening
+        public static final int DownPeak = 1;
+        /// passengers go both to and from the lobby, as at lunchtime
+        public static final int Lunch = 2;
+        /// passengers go between upper levels
+        public static final int InterFloor = 3;
+        /// passengers follow an origin-destination matrix
+        public static final int Custom = 4;
+    }
+
+    /// the share of incoming (from the lobby), outgoing (to the lobby) and inter-floor passengers of each pattern but Custom
+    private static final double[][] MIXES = {
+            {0.85, 0.05, 0.10},
+            {0.05, 0.85, 0.10},
+            {0.40, 0.45, 0.15},
+            {0.00, 0.00, 1.00}
+    };
+
+    /// the number of levels
+    private final int levels;
+    /// the seed of the random generator
+    private final long seed;
+    /// draws arrival gaps and levels
+    private final Random random;
+    /// the time (ms) each phase ends at, from the start of the workload
+    private long[] phaseEnds;
+    /// the pattern of each phase
+    private int[] phasePatterns;
+    /// the arrival rate of each phase, in passengers per ms
+    private double[] phaseRates;
+    /// the cumulative weights of each Custom phase's matrix, over (from - 1) * levels + (to - 1), null for other patterns
+    private double[][] phaseWeights;
+    /// the number of phases
+    private int phases;
+
+    /// the phase of the last arrival
+    private int phase;
+    /// the time (ms) of the last arrival
+    private long time;
+    /// the exact time of the last arrival, kept so that rounding does not add up
+    private double exactTime;
+    /// the starting level of the last arrival
+    private int from;
+    /// the destination of the last arrival
+    private int to;
+
+    /**
+     * create a workload without phases
+     * @param levs the number of levels of the building
+     * @param sd the seed, the same seed gives the same workload
+     */
+    public TrafficGenerator(int levs, long sd){
+        this.levels = levs;
+        this.seed = sd;
+        this.random = new Random(sd);
+        this.phaseEnds = new long[4];
+        this.phasePatterns = new int[4];
+        this.phaseRates = new double[4];
+        this.phaseWeights = new double[4][];
+        this.phases = 0;
+        this.reset();
+    }
+
+    /**
+     * add a phase after the last one
+     * @param duration how long (ms) the phase lasts
+     * @param pattern the pattern of the phase, one in Pattern but Custom, no one arrives in a phase of any other pattern
+     * @param perMinute how many passengers arrive per minute on average
+     */
+    public void addPhase(long duration, int pattern, double perMinute){
+        boolean known = pattern >= Pattern.UpPeak && pattern <= Pattern.InterFloor;
+        this.appendPhase(duration, known ? pattern : Pattern.InterFloor, known ? perMinute : 0, null);
+    }
+
+    /**
+     * add a phase following an origin-destination matrix after the last one
+     * @param duration how long (ms) the phase lasts
+     * @param od od[from][to] is the relative number of passengers from level from to level to, levels counted from 1,
+     *           no one arrives in the phase if there is no journey in it
+     * @param perMinute how many passengers arrive per minute on average
+     */
+    public void addPhase(long duration, double[][] od, double perMinute){
+        double[] cumulative = new double[this.levels * this.levels];
+        double sum = 0;
+        for (int i = 1; i <= this.levels; ++i){
+            for (int j = 1; j <= this.levels; ++j){
+                if (i != j && i < od.length && j < od[i].length && od[i][j] > 0)
+                    sum += od[i][j];
+                cumulative[(i - 1) * this.levels + j - 1] = sum;
+            }
+        }
+        this.appendPhase(duration, Pattern.Custom, sum > 0 ? perMinute : 0, cumulative);
+    }
+
+    /**
+     * draw the next arrival
+     * @return false if the last phase is over, true otherwise
+     */
+    @Override
+    public boolean next(){
+        while (this.phase < this.phases){
+            double rate = this.phaseRates[this.phase];
+            long end = this.phaseEnds[this.phase];
+            if (rate > 0){
+                this.exactTime += -Math.log(1 - this.random.nextDouble()) / rate;
+                if (this.exactTime < end){
+                    this.time = (long) this.exactTime;
+                    this.drawLevels(this.phase);
+                    return true;
+                }
+            }
+            // arrivals are memoryless, so the next phase simply starts drawing from its start
+            this.exactTime = end;
+            ++this.phase;
+        }
+        return false;
+    }
+
+    /**
+     * start the workload over, giving the same arrivals again
+     */
+    public void reset(){
+        this.random.setSeed(this.seed);
+        this.phase = 0;
+        this.time = 0;
+        this.exactTime = 0;
+        this.from = 0;
+        this.to = 0;
+    }
+
+    /**
+     * getter for the time of the last arrival
+     * @return the time (ms) from the start of the workload
+     */
+    @Override
+    public long getTime(){
+        return this.time;
+    }
+
+    /**
+     * getter for the starting level of the last arrival
+     * @return the starting level
+     */
+    @Override
+    public int getFrom(){
+        return this.from;
+    }
+
+    /**
+     * getter for the destination of the last arrival
+     * @return the destination level
+     */
+    @Override
+    public int getTo(){
+        return this.to;
+    }
+
+    /**
+     * getter for the number of levels
+     * @return the number of levels this workload was made for
+     */
+    public int getLevels(){
+        return this.levels;
+    }
+
+    /**
+     * getter for the length of the workload
+     * @return the time (ms) the last phase ends at
+     */
+    public long getDuration(){
+        return this.phases == 0 ? 0 : this.phaseEnds[this.phases - 1];
+    }
+
+    /**
+     * add a phase after the last one
+     * @param duration how long (ms) the phase lasts
+     * @param pattern the pattern of the phase
+     * @param perMinute how many passengers arrive per minute on average
+     * @param weights the cumulative weights of a Custom phase, null otherwise
+     */
+    private void appendPhase(long duration, int pattern, double perMinute, double[] weights){
+        if (this.phases == this.phaseEnds.length){
+            this.phaseEnds = Arrays.copyOf(this.phaseEnds, this.phases * 2);
+            this.phasePatterns = Arrays.copyOf(this.phasePatterns, this.phases * 2);
+            this.phaseRates = Arrays.copyOf(this.phaseRates, this.phases * 2);
+            this.phaseWeights = Arrays.copyOf(this.phaseWeights, this.phases * 2);
+        }
+        this.phaseEnds[this.phases] = this.getDuration() + Math.max(0, duration);
+        this.phasePatterns[this.phases] = pattern;
+        // no one can travel in a building of one level
+        this.phaseRates[this.phases] = this.levels < 2 ? 0 : Math.max(0, perMinute) / 60000;
+        this.phaseWeights[this.phases] = weights;
+        ++this.phases;
+    }
+
+    /**
+     * draw the levels of an arrival
+     * @param p the phase of the arrival
+     */
+    private void drawLevels(int p){
+        if (this.phasePatterns[p] == Pattern.Custom){
+            double[] cumulative = this.phaseWeights[p];
+            double x = this.random.nextDouble() * cumulative[cumulative.length - 1];
+            // the first pair whose cumulative weight is above x, so pairs of no weight are never drawn
+            int lo = 0, hi = cumulative.length - 1;
+            while (lo < hi){
+                int mid = (lo + hi) >>> 1;
+                if (cumulative[mid] > x)
+                    hi = mid;
+                else
+                    lo = mid + 1;
+            }
+            int i = lo;
+            this.from = i / this.levels + 1;
+            this.to = i % this.levels + 1;
+            return;
+        }
+        double[] mix = MIXES[this.phasePatterns[p]];
+        double x = this.random.nextDouble();
+        if (x < mix[0]){
+            this.from = 1;
+            this.to = this.randomLevel(2);
+        }
+        else if (x < mix[0] + mix[1]){
+            this.from = this.randomLevel(2);
+            this.to = 1;
+        }
+        else {
+            // between upper levels, or between any levels if there is only one upper level
+            int lowest = this.levels > 2 ? 2 : 1;
+            this.from = this.randomLevel(lowest);
+            this.to = lowest + this.random.nextInt(this.levels - lowest);
+            if (this.to >= this.from)
+                ++this.to;
+        }
+    }
+
+    /**
+     * draw a level uniformly
+     * @param lowest the lowest level to draw
+     * @return a level between lowest and the top level
+     */
+    private int randomLevel(int lowest){
+        return lowest + this.random.nextInt(this.levels - lowest + 1);
+    }
+}
@@ -0,0 +1,295 @@
+package cn.leonwong.ElevatorSimulator;
+
+import cn.leonwong.ElevatorSimulator.Model.EventLog;
+import cn.leonwong.ElevatorSimulator.Model.Log;
+import cn.leonwong.ElevatorSimulator.Model.Message;
+
+import java.io.IOException;
+
+/**
+ * a thread replaying a recording into a view at any speed, with seeking
+ * The elevators' levels and the passengers waiting at each level are rebuilt from the records,
+ * so the view shows the same as it did when the run was recorded.
+ * The state is saved every CHECKPOINT records as they are replayed, so a seek rebuilds it from the nearest checkpoint
+ * before the time sought, on the replay's thread.
+ */
+public class Replayer implements Runnable {
+    /// the number of records between checkpoints
+    private static final int CHECKPOINT = 1 << 16;
+
+    /// the recording
+    private final EventLog log;
+    /// where the replay is shown
+    private final BuildingView view;
+    /// the level of each elevator, by its index
+    private final int[] elevatorLevels;
+    /// the number of passengers waiting at each level
+    private final int[] waiting;
+    /// the levels then the waiting counts before every CHECKPOINT-th record, null until that record is replayed
+    private final int[][] checkpoints;
+    /// the index of the next record to replay
+    private long next;
+    /// how many times faster than real time the replay runs, 0 or less to run flat out
+    private double speed;
+    /// the recorded time when pacing started
+    private long simAnchor;
+    /// the wall time (ns) when pacing started
+    private long wallAnchor;
+    /// denote if the replay is paused
+    private boolean paused;
+    /// the recorded time (ms) to jump to, Long.MIN_VALUE if no seek is pending
+    private volatile long seekTo;
+    /// the replay's thread
+    private Thread t;
+    /// denote if this thread has been ended
+    private volatile boolean stop;
+
+    /**
+     * create a replay from the start of a recording, at real time
+     * @param l the recording
+     * @param v the view, of a building of the same size as the recorded one
+     */
+    public Replayer(EventLog l, BuildingView v){
+        this.log = l;
+        this.view = v;
+        this.elevatorLevels = new int[l.getElevators() + 1];
+        this.waiting = new int[l.getLevels() + 1];
+        this.checkpoints = new int[(int) (l.size() / CHECKPOINT) + 1][];
+        for (int i = 1; i < this.elevatorLevels.length; ++i)
+            this.elevatorLevels[i] = 1;
+        this.checkpoint(0);
+        this.speed = 1;
+        this.seekTo = Long.MIN_VALUE;
+        this.simAnchor = l.size() == 0 ? 0 : l.getTime(0);
+        this.wallAnchor = System.nanoTime();
+        this.show();
+    }
+
+    /**
+     * start this thread
+     */
+    public void start(){
+        if (this.t == null){
+            this.t = new Thread(this, "Replayer");
+            this.t.setDaemon(true);
+            this.t.start();
+        }
+    }
+
+    /**
+     * run this thread, replaying records as they fall due, until stopped
+     * At the end of the recording it waits, so the replay goes on if the user seeks back.
+     */
+    @Override
+    public void run(){
+        while (!this.stop){
+            long target = this.seekTo;
+            if (target != Long.MIN_VALUE){
+                this.rebuild(target);
+                continue;
+            }
+            synchronized (this){
+                if (this.seekTo != Long.MIN_VALUE)
+                    continue;
+                if (this.next >= this.log.size()){
+                    this.waitFor(0);
+                    continue;
+                }
+                long due = this.dueIn(this.log.getTime(this.next));
+                if (this.paused || due > 0){
+                    this.waitFor(this.paused ? 0 : due);
+                    continue;
+                }
+                this.apply(this.next++, true);
+            }
+        }
+    }
+
+    /**
+     * change the pace of the replay, it takes effect from the current time
+     * @param spd how many times faster than real time, 0 or less to run flat out
+     */
+    public synchronized void setSpeed(double spd){
+        this.simAnchor = this.getTime();
+        this.wallAnchor = System.nanoTime();
+        this.speed = spd;
+        this.notifyAll();
+    }
+
+    /**
+     * pause or resume the replay
+     * @param p true to pause, false to resume
+     */
+    public synchronized void setPaused(boolean p){
+        if (this.paused && !p){
+            this.simAnchor = this.getTime();
+            this.wallAnchor = System.nanoTime();
+        }
+        this.paused = p;
+        this.notifyAll();
+    }
+
+    /**
+     * jump to some time of the recording, the view is redrawn as it was then; may be called from any thread
+     * It returns at once: the replay's thread rebuilds the state, and a later seek replaces one not yet done.
+     * @param time the recorded time (ms) to jump to
+     */
+    public synchronized void seek(long time){
+        this.seekTo = time;
+        this.notifyAll();
+    }
+
+    /**
+     * getter for the current time of the replay
+     * @return the recorded time (ms) being shown
+     */
+    public synchronized long getTime(){
+        if (this.seekTo != Long.MIN_VALUE)
+            return this.seekTo;
+        if (this.paused || this.speed <= 0)
+            return this.next == 0 || this.log.size() == 0 ? this.simAnchor : this.log.getTime(this.next - 1);
+        return this.simAnchor + (long) ((System.nanoTime() - this.wallAnchor) * this.speed / 1000000);
+    }
+
+    /**
+     * getter for the length of the recording
+     * @return the time (ms) of the last record, 0 if none
+     */
+    public long getEndTime(){
+        return this.log.size() == 0 ? 0 : this.log.getTime(this.log.size() - 1);
+    }
+
+    /**
+     * used to stop this thread
+     */
+    public void stopThread(){
+        this.stop = true;
+        synchronized (this){
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * stop this thread and close the recording
+     */
+    public void close(){
+        this.stopThread();
+        synchronized (this){
+            try {
+                this.log.close();
+            }
+            catch (IOException e){
+                Log.warn(Log.Category.Controller, "Replayer: cannot close the recording: %s", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * rebuild the state at some time from the nearest checkpoint before it, then replay on from there
+     * The records are read without holding the monitor, so the view can ask for the time meanwhile;
+     * only this thread changes the state.
+     * @param time the recorded time (ms) to jump to
+     */
+    private void rebuild(long time){
+        long end = this.log.indexAt(time);
+        int k = (int) (end / CHECKPOINT);
+        while (this.checkpoints[k] == null)
+            --k;
+        int[] saved = this.checkpoints[k];
+        int elevs = this.elevatorLevels.length;
+        System.arraycopy(saved, 0, this.elevatorLevels, 0, elevs);
+        System.arraycopy(saved, elevs, this.waiting, 0, this.waiting.length);
+        for (long i = (long) k * CHECKPOINT; i < end; ++i){
+            // give up on a seek replaced by a later one
+            if (i % CHECKPOINT == 0 && (this.stop || this.seekTo != time))
+                return;
+            this.apply(i, false);
+        }
+        synchronized (this){
+            if (this.seekTo != time)
+                return;
+            this.next = end;
+            this.show();
+            this.simAnchor = time;
+            this.wallAnchor = System.nanoTime();
+            this.seekTo = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * show the whole state in the view
+     */
+    private void show(){
+        for (int i = 1; i < this.elevatorLevels.length; ++i)
+            this.view.moveElevator(i, this.elevatorLevels[i]);
+        for (int i = 1; i < this.waiting.length; ++i)
+            this.view.showWaiting(i, this.waiting[i]);
+    }
+
+    /**
+     * save the state before a record, if it falls on a checkpoint not yet saved
+     * @param i the index of the record
+     */
+    private void checkpoint(long i){
+        if (i % CHECKPOINT != 0 || this.checkpoints[(int) (i / CHECKPOINT)] != null)
+            return;
+        int elevs = this.elevatorLevels.length;
+        int[] saved = new int[elevs + this.waiting.length];
+        System.arraycopy(this.elevatorLevels, 0, saved, 0, elevs);
+        System.arraycopy(this.waiting, 0, saved, elevs, this.waiting.length);
+        this.checkpoints[(int) (i / CHECKPOINT)] = saved;
+    }
+
+    /**
+     * apply a record to the state, and to the view if replaying
+     * @param i the index of the record
+     * @param show true to update the view
+     */
+    private void apply(long i, boolean show){
+        this.checkpoint(i);
+        int mode = this.log.getMode(i);
+        if (mode == Message.elevatorChangeFloor){
+            int e = this.log.getElevator(i);
+            if (e <= 0 || e >= this.elevatorLevels.length)
+                return;
+            this.elevatorLevels[e] = this.log.getLevel(i);
+            if (show)
+                this.view.moveElevator(e, this.elevatorLevels[e]);
+        }
+        else if (mode == Message.passengerArrive || mode == Message.passengerEnterElevator){
+            int lev = mode == Message.passengerArrive ? this.log.getLevel(i) : this.log.getOrigin(i);
+            if (lev <= 0 || lev >= this.waiting.length)
+                return;
+            this.waiting[lev] += mode == Message.passengerArrive ? 1 : -1;
+            if (show)
+                this.view.showWaiting(lev, this.waiting[lev]);
+        }
+    }
+
+    /**
+     * find how long until a record falls due
+     * @param time the recorded time of the record
+     * @return the time (ns) to wait, 0 or less if due
+     */
+    private long dueIn(long time){
+        if (this.speed <= 0)
+            return 0;
+        return this.wallAnchor + (long) ((time - this.simAnchor) * 1000000 / this.speed) - System.nanoTime();
+    }
+
+    /**
+     * wait on this replayer's monitor
+     * @param nanos how long to wait in ns, 0 to wait until notified
+     */
+    private void waitFor(long nanos){
+        try {
+            if (nanos == 0)
+                this.wait();
+            else
+                this.wait(nanos / 1000000, (int) (nanos % 1000000));
+        }
+        catch (InterruptedException e){
+            this.stop = true;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package cn.leonwong.ElevatorSimulator;
+
+import cn.leonwong.ElevatorSimulator.Model.Elevator;
+import cn.leonwong.ElevatorSimulator.Model.JourneyStats;
+import cn.leonwong.ElevatorSimulator.Model.Log;
+import cn.leonwong.ElevatorSimulator.Model.SampleStats;
+import cn.leonwong.ElevatorSimulator.Model.Simulation;
+import cn.leonwong.ElevatorSimulator.Model.TrafficGenerator;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.LongFunction;
+
+/**
+ * A headless batch runner comparing dispatching strategies by Monte Carlo
+ * Each replication is an independent seeded simulation of its own building. Replications of every strategy
+ * run in parallel on a work-stealing pool, and every strategy is given the same seeds so that they face
+ * the same traffic, which narrows the confidence intervals of their differences.
+ */
+public class StrategyComparison {
+    /**
+     * an enum for the KPIs of a replication, i.e. their indices in its results
+     */
+    public static class KPI {
+        public static final int Delivered = 0;
+        public static final int MeanWait = 1;
+        public static final int P95Wait = 2;
+        public static final int MeanRide = 3;
+        public static final int MeanJourney = 4;
+        public static final int FloorsPerPassenger = 5;
+        public static final int StopsPerPassenger = 6;
+        public static final int Undelivered = 7;
+        /// the names of the KPIs, in the order of their indices
+        public static final String[] NAMES = {"delivered", "mean wait (ms)", "p95 wait (ms)", "mean ride (ms)",
+                "mean journey (ms)", "floors per passenger", "stops per passenger", "undelivered"};
+    }
+
+    /// the number of levels of the building
+    private final int levels;
+    /// the number of elevators of the building
+    private final int elevators;
+    /// the capacity of each elevator
+    private final int capacity;
+    /// makes the workload of a replication from its seed
+    private LongFunction<TrafficGenerator> workload;
+    /// how long (ms) a replication goes on after its workload ends, so that the last passengers arrive
+    private long drainTime;
+    /// the number of worker threads
+    private int threads;
+    /// whether idle elevators are parked where demand is expected
+    private boolean idleParking;
+
+    /**
+     * create a comparison of some building, by default under a day of traffic and on all cores
+     * @param levs the number of levels
+     * @param elevs the number of elevators
+     * @param cap the capacity of each elevator
+     */
+    public StrategyComparison(int levs, int elevs, int cap){
+        this.levels = levs;
+        this.elevators = elevs;
+        this.capacity = cap;
+        this.workload = seed -> day(levs, elevs, seed);
+        this.drainTime = 600000;
+        this.threads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * a busy day: 15 minutes each of up-peak, inter-floor, lunchtime and down-peak, 6 passengers per minute for each elevator
+     * @param levs the number of levels
+     * @param elevs the number of elevators
+     * @param seed the seed of the workload
+     * @return the workload
+     */
+    public static TrafficGenerator day(int levs, int elevs, long seed){
+        double perMinute = 6.0 * elevs;
+        TrafficGenerator gen = new TrafficGenerator(levs, seed);
+        gen.addPhase(900000, TrafficGenerator.Pattern.UpPeak, perMinute);
+        gen.addPhase(900000, TrafficGenerator.Pattern.InterFloor, perMinute);
+        gen.addPhase(900000, TrafficGenerator.Pattern.Lunch, perMinute);
+        gen.addPhase(900000, TrafficGenerator.Pattern.DownPeak, perMinute);
+        return gen;
+    }
+
+    /**
+     * setter for the workload
+     * @param w makes the workload of a replication from its seed, a new generator each time
+     */
+    public void setWorkload(LongFunction<TrafficGenerator> w){
+        this.workload = w;
+    }
+
+    /**
+     * setter for the drain time
+     * @param ms how long (ms) a replication goes on after its workload ends
+     */
+    public void setDrainTime(long ms){
+        this.drainTime = ms;
+    }
+
+    /**
+     * setter for the number of worker threads
+     * @param n the number of threads, all cores if 0 or less
+     */
+    public void setThreads(int n){
+        this.threads = n > 0 ? n : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * setter for predictive parking, off by default
+     * @param on true to park idle elevators where demand is expected, see Controller.setIdleParking
+     */
+    public void setIdleParking(boolean on){
+        this.idleParking = on;
+    }
+
+    /**
+     * run the replications of some strategies in parallel
+     * @param strategies the indices of the strategies, e.g. ones in Controller.DispatchingStrategy
+     * @param replications the number of replications of each strategy
+     * @param seed the seed of the first replication, the others use the following seeds
+     * @return the KPIs over the replications, by strategy then by KPI
+     */
+    public SampleStats[][] run(int[] strategies, int replications, long seed){
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        ArrayList<Future<double[]>> results = new ArrayList<>();
+        try {
+            for (int str : strategies)
+                for (int r = 0; r < replications; ++r){
+                    long s = seed + r;
+                    results.add(pool.submit(() -> this.replicate(str, s)));
+                }
+            SampleStats[][] stats = new SampleStats[strategies.length][KPI.NAMES.length];
+            for (int i = 0; i < strategies.length; ++i)
+                for (int k = 0; k < KPI.NAMES.length; ++k)
+                    stats[i][k] = new SampleStats();
+            // results are added in the order they were submitted, so the same seed gives the same stats
+            for (int i = 0; i < results.size(); ++i){
+                try {
+                    double[] kpis = results.get(i).get();
+                    for (int k = 0; k < kpis.length; ++k)
+                        stats[i / replications][k].add(kpis[k]);
+                }
+                catch (ExecutionException e){
+                    Log.error(Log.Category.Model, "StrategyComparison: replication failed: %s", e.getCause());
+                }
+            }
+            return stats;
+        }
+        catch (InterruptedException e){
+            Log.error(Log.Category.Model, "StrategyComparison: interrupted!");
+            Thread.currentThread().interrupt();
+            return new SampleStats[0][];
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * run one replication
+     * @param strategy the index of the strategy
+     * @param seed the seed of the replication, used for both the workload and the controller
+     * @return the KPIs of the replication, by their indices in KPI
+     */
+    double[] replicate(int strategy, long seed){
+        Controller c = new Controller(seed);
+        c.setStrategy(strategy);
+        Simulation sim = new Simulation();
+        c.createBuilding(this.levels, this.elevators, this.capacity, sim);
+        c.setIdleParking(this.idleParking);
+        TrafficGenerator gen = this.workload.apply(seed);
+        c.addTraffic(gen);
+        sim.runUntil(gen.getDuration() + this.drainTime);
+        sim.stop();
+        JourneyStats js = c.getMetrics().getAll();
+        long delivered = js.getJourneyTime().getCount();
+        long floors = 0, stops = 0;
+        for (Elevator e : c.getElevatorList()){
+            floors += e.getFloorsTravelled();
+            stops += e.getStops();
+        }
+        double[] kpis = new double[KPI.NAMES.length];
+        kpis[KPI.Delivered] = delivered;
+        kpis[KPI.MeanWait] = js.getWaitTime().getMean();
+        kpis[KPI.P95Wait] = js.getWaitTime().getValueAtPercentile(95);
+        kpis[KPI.MeanRide] = js.getRideTime().getMean();
+        kpis[KPI.MeanJourney] = js.getJourneyTime().getMean();
+        kpis[KPI.FloorsPerPassenger] = delivered == 0 ? 0 : (double) floors / delivered;
+        kpis[KPI.StopsPerPassenger] = delivered == 0 ? 0 : (double) stops / delivered;
+        // once drained, every passenger of the workload should have arrived whatever the strategy, the table shows any who did not
+        long undelivered = c.getPassengerCount() - delivered;
+        kpis[KPI.Undelivered] = undelivered;
+        return kpis;
+    }
+
+    /**
+     * print the KPIs of some strategies as a table
+     * @param out where to print
+     * @param names the names of the strategies
+     * @param stats the KPIs, as returned by run()
+     */
+    public static void print(PrintStream out, String[] names, SampleStats[][] stats){
+        out.printf("%-22s", "");
+        for (String name : names)
+            out.printf("%24s", name);
+        out.println();
+        for (int k = 0; k < KPI.NAMES.length; ++k){
+            out.printf("%-22s", KPI.NAMES[k]);
+            for (SampleStats[] s : stats)
+                out.printf("%24s", s[k]);
+            out.println();
+        }
+    }
+
+    /**
+     * compare the built-in strategies headless
+     * usage: StrategyComparison [levels] [elevators] [capacity] [replications] [threads] [seed]
+     * @param args the arguments
+     */
+    public static void main(String[] args){
+        int levs = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int elevs = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int cap = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int reps = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+        PrintStream out = System.out;
+        // the models log every step, which nobody reads in a batch run; only failures are shown
+        Log.setLevel(Log.Level.Error);
+        StrategyComparison cmp = new StrategyComparison(levs, elevs, cap);
+        cmp.setThreads(threads);
+        ArrayList<String> all = new Controller(seed).getStrategyNames();
+        int[] strategies = new int[all.size()];
+        for (int i = 0; i < strategies.length; ++i)
+            strategies[i] = i;
+        out.printf("%d levels, %d elevators of %d, %d replications on %d threads\n", levs, elevs, cap, reps, cmp.threads);
+        long start = System.nanoTime();
+        SampleStats[][] stats = cmp.run(strategies, reps, seed);
+        print(out, all.toArray(new String[0]), stats);
+        out.printf("(95%% confidence intervals, %.1f s)\n", (System.nanoTime() - start) / 1e9);
+        Log.flush();
+    }
+}
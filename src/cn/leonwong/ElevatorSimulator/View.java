@@ -1,9 +1,16 @@
 package cn.leonwong.ElevatorSimulator;
 
 import cn.leonwong.ElevatorSimulator.Model.Elevator;
+import cn.leonwong.ElevatorSimulator.Model.EventLog;
+import cn.leonwong.ElevatorSimulator.Model.HallQueue;
+import cn.leonwong.ElevatorSimulator.Model.LiveMetrics;
+import cn.leonwong.ElevatorSimulator.Model.Log;
 import cn.leonwong.ElevatorSimulator.Model.Passenger;
+import cn.leonwong.ElevatorSimulator.Model.PassengerTrace;
+import cn.leonwong.ElevatorSimulator.Model.Simulation;
+import cn.leonwong.ElevatorSimulator.Model.TrafficGenerator;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
-import javafx.application.Platform;
 import javafx.collections.FXCollections;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -12,33 +19,54 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.control.Button;
-import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
 import javafx.scene.layout.AnchorPane;
-import javafx.scene.shape.Line;
+import javafx.scene.layout.Pane;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Random;
-import java.util.Vector;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * the view of this app
  */
-public class View extends Application {
+public class View extends Application implements BuildingView {
     /// controller Object
     private Controller c;
-    /// contains buttons for elevators
-    private ArrayList<Button> GUIElevatorButtons;
-    /// contains labels for elevators
-    private ArrayList<Label> GUIElevatorLabels;
-    /// contains buttons for levels
-    private ArrayList<Button> GUILevelButtons;
-    /// if there are two pages, indicate which one is being shown
-    private Boolean isFirstPageShown;
+    /// draws the building, created with the first one
+    private BuildingCanvas canvas;
+    /// how long (ms) each phase of the test-case traffic lasts
+    private static final long TEST_PHASE = 120000;
+    /// the largest building the canvas is asked to show
+    private static final int MAX_LEVELS = 999, MAX_ELEVATORS = 99;
+    /// the replay being shown, null if showing a live building
+    private Replayer replayer;
+    /// denote if the pulse is moving the seek slider to the replay's time, which is not a seek
+    private boolean followingReplay;
+    /// the latest level of each elevator by its index, written by any thread
+    private volatile AtomicIntegerArray elevatorLevels;
+    /// the latest number of passengers waiting at each level, written by any thread
+    private volatile AtomicIntegerArray waitingCounts;
+    /// bumped on every change of the two above, so that a frame with nothing new does nothing
+    private final AtomicLong version = new AtomicLong();
+    /// the version drawn by the last frame, only used on the FX thread
+    private long drawnVersion = -1;
+    /// draws the latest state once per frame
+    private AnimationTimer pulse;
+    /// how often (ms of the building's time) the dashboard gets a sample, and how many samples it shows
+    private static final long STATS_INTERVAL = 5000;
+    private static final int STATS_POINTS = 360;
+    /// the charts of the running building, created when first opened
+    private Dashboard dashboard;
+    /// the window of the dashboard
+    private Stage dashboardStage;
 
     /**
      * stop all threads on exit
@@ -52,7 +80,7 @@ public class View extends Application {
          * @param v the view
          */
         public ExitHandler(View v){
-            System.out.println("View: Exit Handler Created");
+            Log.info(Log.Category.View, "Exit Handler Created");
             this.view = v;
         }
 
@@ -63,233 +91,87 @@ public class View extends Application {
         @Override
         public void handle(WindowEvent e){
             e.consume();
-            System.out.println("View: Exit Triggered");
+            Log.info(Log.Category.View, "Exit Triggered");
             this.view.stopThread();
         }
     }
 
     /**
-     * show information of an elevator when clicking the elevator button
+     * show information of an elevator when clicking it
+     * @param index the index of the elevator
      */
-    private class ElevatorButtonOnClickHandler implements EventHandler<javafx.event.ActionEvent> {
-        /// the index of this elevator
-        private int indexOfElevator;
-        /// an Object refering to the elevator
-        private Elevator elevator;
-
-        /**
-         * constructor
-         * @param index the index of this elevator
-         * @param elev the Object of elevator
-         */
-        public ElevatorButtonOnClickHandler(int index, Elevator elev){
-            this.indexOfElevator = index;
-            this.elevator = elev;
+    private void showElevatorInfo(int index){
+        Elevator elevator = this.c.getElevatorList().get(index - 1);
+        StringBuilder sb = new StringBuilder();
+        sb.append("This is the #");
+        sb.append(index);
+        sb.append(" Elevator.\n");
+        if (elevator.isIdle()){
+            sb.append("This elevator is idle.");
         }
-
-        /**
-         * show information when clicking the elevator button
-         * @param event the event
-         */
-        @Override
-        public void handle(javafx.event.ActionEvent event){
-            event.consume();
-            StringBuilder sb = new StringBuilder();
-            sb.append("This is the #");
-            sb.append(this.indexOfElevator + 1);
-            sb.append(" Elevator.\n");
-            if (this.elevator.isIdle()){
-                sb.append("This elevator is idle.");
-            }
-            else {
-                sb.append("There is(are) ");
-                sb.append(this.elevator.getPassengers());
-                sb.append(" passenger(s) in this elevator.\n");
-                sb.append("The destination level(s) of this elevator is(are):\n");
-                sb.append(this.elevator.getDestinations());
-            }
-            Alert elevatorInfo = new Alert(Alert.AlertType.INFORMATION, sb.toString());
-            elevatorInfo.setTitle("Elevator #" + (this.indexOfElevator+1));
-            elevatorInfo.setHeaderText("Elevator Information:");
-            elevatorInfo.showAndWait();
+        else {
+            sb.append("There is(are) ");
+            sb.append(elevator.getPassengers());
+            sb.append(" passenger(s) in this elevator.\n");
+            sb.append("The destination level(s) of this elevator is(are):\n");
+            sb.append(elevator.getDestinations());
         }
+        Alert elevatorInfo = new Alert(Alert.AlertType.INFORMATION, sb.toString());
+        elevatorInfo.setTitle("Elevator #" + index);
+        elevatorInfo.setHeaderText("Elevator Information:");
+        elevatorInfo.showAndWait();
     }
 
     /**
-     * show information when clicking the level button
+     * show information of a level when clicking its label
+     * @param lev the level
      */
-    private class LevelButtonOnClickHandler implements EventHandler<javafx.event.ActionEvent>{
-        /// the index of this level
-        private int indexOfLevel;
-        /// the passenger list of this level
-        private Vector<Passenger> level;
-
-        /**
-         * constructor
-         * @param i the index of this level
-         * @param vp the vector of passenger at this level
-         */
-        public LevelButtonOnClickHandler(int i, Vector<Passenger> vp){
-            this.indexOfLevel = i;
-            this.level = vp;
-        }
-
-        /**
-         * show information when clicking the level button
-         * @param event the event
-         */
-        @Override
-        public void handle(javafx.event.ActionEvent event){
-            event.consume();
-            StringBuilder sb = new StringBuilder();
-            sb.append("This is the #");
-            sb.append(this.indexOfLevel + 1);
-            sb.append(" Level.\n");
-            if (this.level.isEmpty()){
-                sb.append("This level is empty.");
-            }
-            else {
-                sb.append("There are ");
-                sb.append(this.level.size());
-                sb.append(" Passengers waiting at the level.");
-                sb.append("And they are heading for (sorted by the order of time):\n");
-                sb.append(this.parseString(this.level));
-            }
-            sb.append("The level indicator is:\n");
-            sb.append(this.decideUpwardIndicator());
-            sb.append('\n');
-            sb.append(this.decideDownwardIndicator());
-            Alert levelAlert = new Alert(Alert.AlertType.INFORMATION, sb.toString());
-            levelAlert.setTitle("Level #" + this.indexOfLevel + 1);
-            levelAlert.setHeaderText("Information");
-            levelAlert.showAndWait();
-        }
-
-        /**
-         * describe a level with its passengers in a String form
-         * @param lev the passenger list of this level
-         * @return the String which contains the passengers' destinations of this level
-         */
-        private String parseString(Vector<Passenger> lev){
-            ArrayList<Integer> ai = new ArrayList<>();
-            for (Passenger pass : lev){
-                ai.add(pass.destination);
-            }
-            return ai.toString();
-        }
-
-        /**
-         * decide whether the upward indicator at a level is shown
-         * @return the upward indicator
-         */
-        private char decideUpwardIndicator(){
-            for (Passenger pass : this.level){
-                if (pass.destination > this.indexOfLevel + 1)
-                return '▲';
-            }
-            return '△';
+    private void showLevelInfo(int lev){
+        ArrayList<Passenger> level = this.c.getWaiting(lev);
+        HallQueue queue = this.c.getLevelList().get(lev);
+        StringBuilder sb = new StringBuilder();
+        sb.append("This is the #");
+        sb.append(lev);
+        sb.append(" Level.\n");
+        if (level.isEmpty()){
+            sb.append("This level is empty.");
         }
-
-        /**
-         * decide whether the downward indicator at a level is shown
-         * @return the downward indicator
-         */
-        private char decideDownwardIndicator(){
-            for (Passenger pass : this.level){
-                if (pass.destination < this.indexOfLevel + 1)
-                    return '▼';
-            }
-            return '▽';
+        else {
+            sb.append("There are ");
+            sb.append(level.size());
+            sb.append(" Passengers waiting at the level.");
+            sb.append("And they are heading for (sorted by the order of time):\n");
+            sb.append(parseString(level));
         }
+        sb.append("The level indicator is:\n");
+        sb.append(queue.getUpCount() > 0 ? '▲' : '△');
+        sb.append('\n');
+        sb.append(queue.getDownCount() > 0 ? '▼' : '▽');
+        Alert levelAlert = new Alert(Alert.AlertType.INFORMATION, sb.toString());
+        levelAlert.setTitle("Level #" + lev);
+        levelAlert.setHeaderText("Information");
+        levelAlert.showAndWait();
     }
 
     /**
-     * change the page showing
+     * describe a level with its passengers in a String form
+     * @param level the passenger list of this level
+     * @return the String which contains the passengers' destinations of this level
      */
-    private class PageButtonOnClickHandler implements EventHandler<javafx.event.ActionEvent>{
-        /// denote whether this button is a page up button
-        private boolean pageUp;
-        /// refer to level buttons
-        private ArrayList<Button> levelButtons;
-        /// refer to elevator labels
-        private ArrayList<Label> elevLabels;
-        /// refer to elevator list
-        private Vector<Elevator> elevs;
-        /// refer to the canvas which shows the building
-        private AnchorPane canvas;
-        /// refer to the view
-        View view;
-
-        /**
-         * construct a page button
-         * @param isPageUpButton whether this button is page up button
-         * @param v the view
-         */
-        public PageButtonOnClickHandler(boolean isPageUpButton, View v){
-            this.pageUp = isPageUpButton;
-            this.levelButtons = v.GUILevelButtons;
-            this.elevLabels = v.GUIElevatorLabels;
-            this.elevs = v.c.getElevatorList();
-            this.canvas = v.buildingCanvas;
-            this.view = v;
-        }
-
-        /**
-         * handle the page changing event
-         * @param event the event
-         */
-        @Override
-        public void handle(javafx.event.ActionEvent event){
-            event.consume();
-            // if this is the page up button, show the levels and elevators at the #11+ floors
-            if (this.pageUp){
-                this.view.setIsFirstPageShown(false);
-                for (int i = 0; i < 10; ++i){
-                    this.canvas.getChildren().remove(this.levelButtons.get(i));
-                }
-                for (int i = 10; i < this.levelButtons.size(); ++i){
-                    Button tmpBuildingButton = this.levelButtons.get(i);
-                    tmpBuildingButton.setLayoutX(10);
-                    tmpBuildingButton.setLayoutY(768 - (i - 10 + 1) * 60 + 10);
-                    this.canvas.getChildren().add(tmpBuildingButton);
-                }
-                for (int i = 0; i < elevs.size(); ++i){
-                    if (elevs.get(i).getLevel() > 10){
-                        this.view.showElevator(elevLabels.get(i));
-                    }
-                    else {
-                        this.view.unshowElevator(elevLabels.get(i));
-                    }
-                }
-            }
-            // else show those at #10- floors
-            else {
-                this.view.setIsFirstPageShown(true);
-                for (int i = 10; i < this.levelButtons.size(); ++i) {
-                    this.canvas.getChildren().remove(this.levelButtons.get(i));
-                }
-                for (int i = 0; i < 10; ++i){
-                    Button tmpBuildingButton = this.levelButtons.get(i);
-                    tmpBuildingButton.setLayoutX(10);
-                    tmpBuildingButton.setLayoutY(768 - (i + 1) * 60 + 10);
-                    this.canvas.getChildren().add(tmpBuildingButton);
-                }
-                for (int i = 0; i < elevs.size(); ++i){
-                    if (elevs.get(i).getLevel() > 10){
-                        this.view.unshowElevator(elevLabels.get(i));
-                    }
-                    else {
-                        this.view.showElevator(elevLabels.get(i));
-                    }
-                }
-            }
+    private static String parseString(ArrayList<Passenger> level){
+        ArrayList<Integer> ai = new ArrayList<>();
+        for (Passenger pass : level){
+            ai.add(pass.destination);
         }
+        return ai.toString();
     }
 
     /**
      * stop this thread
      */
     public void stopThread(){
+        if (this.replayer != null)
+            this.replayer.stopThread();
         if (this.c != null)
             this.c.stopThread();
         System.exit(0);
@@ -319,168 +201,105 @@ public class View extends Application {
     }
 
     /**
-     * initialize elevators on the canvas
+     * initialize the canvas for a building, every elevator at the ground floor and nobody waiting
+     * @param levs the number of levels
      * @param elevs the number of elevators
      */
-    private void initGUIElevators(int elevs){
-        this.GUIElevatorButtons = new ArrayList<>();
-        this.GUIElevatorLabels = new ArrayList<>();
-
-        for (int i = 0; i < elevs; ++i){
-            Line tmpLine = new Line();
-            tmpLine.setStartX(700 - 60 * (elevs - i));
-            tmpLine.setEndX(700 - 60 * (elevs - i));
-            tmpLine.setStartY(0);
-            tmpLine.setEndY(768);
-            this.buildingCanvas.getChildren().add(tmpLine);
-
-            Button tmpButton = new Button("#" + (i + 1));
-            tmpButton.setPrefSize(50, 40);
-            tmpButton.setLayoutX(700 - 60 * (elevs - i) - 25);
-            tmpButton.setLayoutY(0);
-            tmpButton.setOnAction(new ElevatorButtonOnClickHandler(i, this.c.getElevatorList().get(i)));
-            this.buildingCanvas.getChildren().add(tmpButton);
-            GUIElevatorButtons.add(tmpButton);
-
-            Image tmpLabelImage = new Image("ElevatorIcon_60_60.png");
-            Label tmpLabel = new Label(null, new ImageView(tmpLabelImage));
-            tmpLabel.setPrefSize(60, 60);
-            tmpLabel.setLayoutX(700 - 60 * (elevs - i) - 30);
-            tmpLabel.setLayoutY(768 - 60);
-            this.buildingCanvas.getChildren().add(tmpLabel);
-            GUIElevatorLabels.add(tmpLabel);
+    private void initGUIBuilding(int levs, int elevs){
+        if (this.canvas == null){
+            this.canvas = new BuildingCanvas(this.buildingCanvas);
+            this.canvas.setClickListener(new BuildingCanvas.ClickListener() {
+                @Override
+                public void onLevelClicked(int lev){
+                    showLevelInfo(lev);
+                }
 
+                @Override
+                public void onElevatorClicked(int index){
+                    showElevatorInfo(index);
+                }
+            });
+            this.buildingCanvas.getChildren().add(this.canvas);
         }
+        this.canvas.setBuilding(levs, elevs);
+        AtomicIntegerArray levels = new AtomicIntegerArray(elevs + 1);
+        for (int i = 1; i <= elevs; ++i)
+            levels.set(i, 1);
+        this.elevatorLevels = levels;
+        this.waitingCounts = new AtomicIntegerArray(levs + 1);
+        this.version.incrementAndGet();
+        this.startPulse();
     }
 
     /**
-     * initialize levels on the canvas, should create page buttons according to the number of levels
-     * @param levs the number of levels
+     * start drawing the latest state once per frame, if not yet
      */
-    private void initGUILevels(int levs){
-        this.GUILevelButtons = new ArrayList<>();
-
-        for (int i = 0; i < 10; ++i){
-            Line tmpBuildingLine = new Line();
-            tmpBuildingLine.setStartX(0);
-            tmpBuildingLine.setEndX(700);
-            tmpBuildingLine.setStartY(768 - 60 * (i + 1));
-            tmpBuildingLine.setEndY(768 - 60 * (i + 1));
-            this.buildingCanvas.getChildren().add(tmpBuildingLine);
-        }
-        if (levs <= 10) {
-            for (int i = 0; i < levs; ++i) {
-                Button tmpBuildingButton = new Button("#" + (i + 1));
-                tmpBuildingButton.setPrefSize(60, 40);
-                tmpBuildingButton.setLayoutX(10);
-                tmpBuildingButton.setLayoutY(768 - (i + 1) * 60 + 10);
-                tmpBuildingButton.setOnAction(new LevelButtonOnClickHandler(i, this.c.getLevelList().get(i)));
-                this.buildingCanvas.getChildren().add(tmpBuildingButton);
-                this.GUILevelButtons.add(tmpBuildingButton);
-            }
-        }
-        else {
-            for (int i = 0; i < 10; ++i){
-                Button tmpBuildingButton = new Button("#" + (i + 1));
-                tmpBuildingButton.setPrefSize(60, 40);
-                tmpBuildingButton.setLayoutX(10);
-                tmpBuildingButton.setLayoutY(768 - (i + 1) * 60 + 10);
-                tmpBuildingButton.setOnAction(new LevelButtonOnClickHandler(i, this.c.getLevelList().get(i)));
-                this.buildingCanvas.getChildren().add(tmpBuildingButton);
-                this.GUILevelButtons.add(tmpBuildingButton);
-            }
-            for (int i = 10; i < levs; ++i){
-                Button tmpBuildingButton = new Button("#" + (i + 1));
-                tmpBuildingButton.setPrefSize(60, 40);
-                tmpBuildingButton.setLayoutX(10);
-                tmpBuildingButton.setLayoutY(768 - (i - 10 + 1) * 60 + 10); 
-                tmpBuildingButton.setOnAction(new LevelButtonOnClickHandler(i, this.c.getLevelList().get(i)));
-                this.GUILevelButtons.add(tmpBuildingButton);
+    private void startPulse(){
+        if (this.pulse != null)
+            return;
+        this.pulse = new AnimationTimer() {
+            @Override
+            public void handle(long now){
+                render();
             }
-            Button pageUpButton = new Button("PageUp");
-            pageUpButton.setOnAction(new PageButtonOnClickHandler(true,this));
-            Button pageDownButton = new Button("PageDown");
-            pageDownButton.setOnAction(new PageButtonOnClickHandler(false, this));
-            pageUpButton.setPrefSize(100, 60);
-            pageDownButton.setPrefSize(100, 60);
-            pageUpButton.setLayoutX(10);
-            pageDownButton.setLayoutX(120);
-            pageUpButton.setLayoutY(60);
-            pageDownButton.setLayoutY(60);
-            this.buildingCanvas.getChildren().addAll(pageUpButton, pageDownButton);
-        }
+        };
+        this.pulse.start();
     }
 
     /**
-     * re-draw an elevator at some level, should show or un-show them according to the page
+     * note that an elevator is at some level, it is drawn there on the next frame
+     * Called from any thread: only the latest level is kept, so any number of moves cost one update per frame.
      * @param index the index of the elevator
      * @param lev the new level the elevator is at
      */
+    @Override
     public void moveElevator(int index, int lev){
-        if (this.c.getLevels() <= 10) {
-            --index;
-            this.GUIElevatorLabels.get(index).setLayoutY(768 - 60 * lev);
-            System.out.printf("View: Elevator#%d moved to #%d Level.\n", index + 1, lev);
-        }
-        else {
-            --index;
-            if (this.isFirstPageShown){
-                if (lev > 10){
-                    this.GUIElevatorLabels.get(index).setLayoutY(768 - 60 * (lev - 10));
-                    this.unshowElevator(this.GUIElevatorLabels.get(index));
-                    System.out.printf("View: Elevator#%d moved to #%d Level, and not shown.\n", index + 1, lev);
-                }
-                else {
-                    this.GUIElevatorLabels.get(index).setLayoutY(768 - 60 * lev);
-                    this.showElevator(this.GUIElevatorLabels.get(index));
-                    System.out.printf("View: Elevator#%d moved to #%d Level, and shown.\n", index + 1, lev);
-                }
-            }
-            else {
-                if (lev <= 10){
-                    this.GUIElevatorLabels.get(index).setLayoutY(768 - 60 * lev);
-                    this.unshowElevator(this.GUIElevatorLabels.get(index));
-                    System.out.printf("View: Elevator#%d moved to #%d Level, and not shown.\n", index + 1, lev);
-                }
-                else {
-                    this.GUIElevatorLabels.get(index).setLayoutY(768 - 60 * (lev - 10));
-                    this.showElevator(this.GUIElevatorLabels.get(index));
-                    System.out.printf("View: Elevator#%d moved to #%d Level, and shown.\n", index + 1, lev);
-                }
-            }
-        }
-    }
-
-    /**
-     * show an elevator
-     * @param e the elevator label
-     */
-    private void showElevator(Label e){
-        Platform.runLater(() -> {
-            if (!this.buildingCanvas.getChildren().contains(e)){
-                this.buildingCanvas.getChildren().add(e);
-            }
-        });
+        AtomicIntegerArray levels = this.elevatorLevels;
+        if (levels == null || index >= levels.length())
+            return;
+        levels.set(index, lev);
+        this.version.incrementAndGet();
+        Log.debug(Log.Category.View, "Elevator#%d moved to #%d Level.", index, lev);
     }
 
     /**
-     * un-show an elevator
-     * @param e the label of the elevator
+     * note how many passengers are waiting at a level, it is shown by its label on the next frame
+     * @param lev the level
+     * @param count the number of passengers waiting
      */
-    private void unshowElevator(Label e){
-        Platform.runLater(() -> {
-            if (this.buildingCanvas.getChildren().contains(e)){
-                this.buildingCanvas.getChildren().remove(e);
-            }
-        });
+    @Override
+    public void showWaiting(int lev, int count){
+        AtomicIntegerArray waiting = this.waitingCounts;
+        if (waiting == null || lev >= waiting.length())
+            return;
+        waiting.set(lev, count);
+        this.version.incrementAndGet();
     }
 
     /**
-     * set the page showing
-     * @param isFirstPageShownIndicator true if the first page is being shown, false otherwise
+     * bring the canvas up to date with the latest levels and waiting counts, once per frame on the FX thread
+     * Only the floors and shafts in sight are drawn, so the cost of a frame does not grow with the building.
      */
-    private void setIsFirstPageShown(boolean isFirstPageShownIndicator){
-        this.isFirstPageShown = isFirstPageShownIndicator;
+    private void render(){
+        if (this.replayer != null && !this.replaySlider.isValueChanging()){
+            this.followingReplay = true;
+            this.replaySlider.setValue(this.replayer.getTime());
+            this.followingReplay = false;
+        }
+        if (this.dashboardStage != null && this.dashboardStage.isShowing())
+            this.dashboard.update();
+        long v = this.version.get();
+        if (v == this.drawnVersion)
+            return;
+        // read after the version, so a change made meanwhile is drawn on the next frame at the latest
+        this.drawnVersion = v;
+        AtomicIntegerArray levels = this.elevatorLevels;
+        for (int i = 1; i < levels.length(); ++i)
+            this.canvas.setElevatorLevel(i, levels.get(i));
+        AtomicIntegerArray waiting = this.waitingCounts;
+        for (int lev = 1; lev < waiting.length(); ++lev)
+            this.canvas.setWaiting(lev, waiting.get(lev));
+        this.canvas.draw();
     }
 
     /// to write down the number of levels for the user
@@ -491,6 +310,10 @@ public class View extends Application {
     @FXML
     private TextField numberOfElevatorsText;
 
+    /// to write down how many times faster than real time the simulation runs, leave it empty to run elevators on threads
+    @FXML
+    private TextField simulationSpeedText;
+
     /// the button of creating a new building
     @FXML
     private Button createBuildingButton;
@@ -523,85 +346,338 @@ public class View extends Application {
     @FXML
     private Button testPassengerListButton;
 
+    /// the button to add the passengers of a recorded trace
+    @FXML
+    private Button traceButton;
+
     /// the canvas to draw the whole building
     @FXML
     private AnchorPane buildingCanvas;
 
+    /// check it to record the messages and export the journeys of the next building created
+    @FXML
+    private CheckBox recordCheckBox;
+
+    /// the button to replay a recording
+    @FXML
+    private Button replayButton;
+
+    /// drag it to seek in the replay, it follows the replay otherwise
+    @FXML
+    private Slider replaySlider;
+
+    /// to save a snapshot of the building
+    @FXML
+    private Button saveButton;
+
+    /// to load a snapshot of a building
+    @FXML
+    private Button loadButton;
+
+    /// to show the dashboard
+    @FXML
+    private Button statsButton;
+
     /**
      * when click on the create building button, create the building but firstly check the parameters
      */
     @FXML
     private void onClickCreateBuildingButton(){
+        this.stopReplay();
         if (this.c != null)
             this.c.stopThread();
-        if (this.buildingCanvas != null){
-            this.buildingCanvas.getChildren().clear();
-        }
-        System.out.println("View: Create a new building.");
+        Log.info(Log.Category.View, "Create a new building.");
         int levels = Integer.parseInt(this.numberOfLevelsText.getCharacters().toString());
-        System.out.printf("View: # of levels: %d\n", levels);
+        Log.info(Log.Category.View, "# of levels: %d", levels);
         int elevators = Integer.parseInt(this.numberOfElevatorsText.getCharacters().toString());
-        System.out.printf("View: # of elevators: %d\n", elevators);
+        Log.info(Log.Category.View, "# of elevators: %d", elevators);
         int maximumCapacity = Integer.parseInt(this.capacityText.getCharacters().toString());
-        System.out.printf("View: Capacity of elevators: %d\n", maximumCapacity);
+        Log.info(Log.Category.View, "Capacity of elevators: %d", maximumCapacity);
+        String speedString = this.simulationSpeedText.getCharacters().toString().trim();
+        double speed = speedString.isEmpty() ? 0 : Double.parseDouble(speedString);
+        Log.info(Log.Category.View, "Simulation speed: %s", speedString.isEmpty() ? "threads" : speedString + "x");
         if (! (levels >= 2 &&
-            levels <= 20 &&
+            levels <= MAX_LEVELS &&
             elevators >= 1 &&
-            elevators <= 10 &&
+            elevators <= MAX_ELEVATORS &&
             maximumCapacity >= 1 &&
-            maximumCapacity <= 20)) {
+            maximumCapacity <= 20 &&
+            (speedString.isEmpty() || speed > 0))) {
             Alert errorParamMessage = new Alert(Alert.AlertType.INFORMATION, "Illegal Building Information!\n" +
-                    "The number of levels should be between 2 and 20.\n" +
-                    "The number of elevators should be between 1 and 10.\n" +
-                    "The capacity of each elevator should be between 1 and 20.");
+                    "The number of levels should be between 2 and " + MAX_LEVELS + ".\n" +
+                    "The number of elevators should be between 1 and " + MAX_ELEVATORS + ".\n" +
+                    "The capacity of each elevator should be between 1 and 20.\n" +
+                    "The speed should be positive, or empty to run elevators on threads.");
             errorParamMessage.setTitle("Building Parameters Error!");
             errorParamMessage.setHeaderText("Information");
             errorParamMessage.showAndWait();
-            System.out.println("View: Building Parameter Error!");
+            Log.warn(Log.Category.View, "Building Parameter Error!");
             return;
         }
         else {
             this.c = new Controller();
             this.c.setView(this);
-            this.c.createBuilding(levels, elevators, maximumCapacity);
-            this.startingLevelChoiceBox.setItems(FXCollections.observableArrayList());
-            this.destLevelChoiceBox.setItems(FXCollections.observableArrayList());
-            for (int i = 1; i <= levels; ++i){
-                this.startingLevelChoiceBox.getItems().addAll(i);
-                this.destLevelChoiceBox.getItems().addAll(i);
-            }
-            this.strategyListView.setItems(FXCollections.observableArrayList("Speed First (Default)", "Load Balancing", "Power Saving"));
+            // a paced simulation if a speed is given, otherwise each elevator runs on its own thread
+            this.c.createBuilding(levels, elevators, maximumCapacity, speedString.isEmpty() ? null : new Simulation(speed));
         }
-        this.isFirstPageShown = true;
 //        this.c.randomizeElevators();
-        this.initGUIElevators(elevators);
-        this.initGUILevels(levels);
+        this.showBuilding();
+    }
+
+    /**
+     * draw the building of the controller, start recording if asked to, and start the controller
+     */
+    private void showBuilding(){
+        int levels = this.c.getLevels();
+        this.startingLevelChoiceBox.setItems(FXCollections.observableArrayList());
+        this.destLevelChoiceBox.setItems(FXCollections.observableArrayList());
+        for (int i = 1; i <= levels; ++i){
+            this.startingLevelChoiceBox.getItems().addAll(i);
+            this.destLevelChoiceBox.getItems().addAll(i);
+        }
+        ArrayList<String> strategyNames = this.c.getStrategyNames();
+        strategyNames.set(Controller.DispatchingStrategy.SpeedFirst, strategyNames.get(Controller.DispatchingStrategy.SpeedFirst) + " (Default)");
+        this.strategyListView.setItems(FXCollections.observableArrayList(strategyNames));
+        this.initGUIBuilding(levels, this.c.getElevators());
+        // a restored building does not start at the ground floor
+        for (Elevator e : this.c.getElevatorList())
+            this.moveElevator(e.getIndex(), e.getLevel());
+        for (int i = 1; i <= levels; ++i)
+            this.showWaiting(i, this.c.getLevelList().get(i).size());
+        if (this.recordCheckBox.isSelected()){
+            long stamp = System.currentTimeMillis();
+            Path file = Paths.get("recording-" + stamp + ".elr");
+            Path journeys = Paths.get("journeys-" + stamp + ".elj");
+            try {
+                this.c.startRecording(file);
+                Log.info(Log.Category.View, "Recording to %s", file.toAbsolutePath());
+                this.c.startExport(journeys, null);
+                Log.info(Log.Category.View, "Exporting journeys to %s", journeys.toAbsolutePath());
+            }
+            catch (IOException e){
+                Alert errorRecording = new Alert(Alert.AlertType.INFORMATION, "Cannot record to " + file.toAbsolutePath() + ":\n" + e.getMessage());
+                errorRecording.setTitle("Recording Error!");
+                errorRecording.setHeaderText("Information");
+                errorRecording.showAndWait();
+            }
+        }
+        // sampled on the building's clock, so a fast simulation fills the charts as fast
+        LiveMetrics live = this.c.startLiveMetrics(STATS_INTERVAL, STATS_POINTS);
+        if (this.dashboard != null)
+            this.dashboard.setMetrics(live);
         this.c.start();
     }
 
+    /**
+     * when click on the save button, save a snapshot of the running building
+     */
+    @FXML
+    private void onClickSaveButton(){
+        if (this.c == null || !this.c.isBuildingCreated() || this.replayer != null){
+            Alert errorSave = new Alert(Alert.AlertType.INFORMATION, "Please create or load a building first!");
+            errorSave.setTitle("Building not Created Error!");
+            errorSave.setHeaderText("Information");
+            errorSave.showAndWait();
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Save a Snapshot");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Building snapshots", "*.els"));
+        File file = chooser.showSaveDialog(this.saveButton.getScene().getWindow());
+        if (file == null)
+            return;
+        try {
+            this.c.saveSnapshot(file.toPath());
+            Log.info(Log.Category.View, "Saved a snapshot to %s", file);
+        }
+        catch (IOException e){
+            Alert errorSave = new Alert(Alert.AlertType.INFORMATION, "Cannot save to " + file + ":\n" + e.getMessage());
+            errorSave.setTitle("Snapshot Error!");
+            errorSave.setHeaderText("Information");
+            errorSave.showAndWait();
+        }
+    }
+
+    /**
+     * when click on the load button, resume a saved building at the speed given, on threads if none
+     */
+    @FXML
+    private void onClickLoadButton(){
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Load a Snapshot");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Building snapshots", "*.els"));
+        File file = chooser.showOpenDialog(this.loadButton.getScene().getWindow());
+        if (file == null)
+            return;
+        String speedString = this.simulationSpeedText.getCharacters().toString().trim();
+        double speed = speedString.isEmpty() ? 0 : Double.parseDouble(speedString);
+        Controller loaded = new Controller();
+        loaded.setView(this);
+        try {
+            loaded.restoreSnapshot(file.toPath(), speed > 0 ? new Simulation(speed) : null);
+        }
+        catch (IOException e){
+            Alert errorLoad = new Alert(Alert.AlertType.INFORMATION, "Cannot load " + file + ":\n" + e.getMessage());
+            errorLoad.setTitle("Snapshot Error!");
+            errorLoad.setHeaderText("Information");
+            errorLoad.showAndWait();
+            return;
+        }
+        if (loaded.getLevels() < 2 || loaded.getLevels() > MAX_LEVELS || loaded.getElevators() < 1 || loaded.getElevators() > MAX_ELEVATORS){
+            loaded.stopThread();
+            Alert errorLoad = new Alert(Alert.AlertType.INFORMATION, "Only buildings of 2 to " + MAX_LEVELS + " levels and 1 to " + MAX_ELEVATORS + " elevators can be shown!");
+            errorLoad.setTitle("Snapshot Error!");
+            errorLoad.setHeaderText("Information");
+            errorLoad.showAndWait();
+            return;
+        }
+        this.stopReplay();
+        if (this.c != null)
+            this.c.stopThread();
+        Log.info(Log.Category.View, "Loaded a snapshot from %s", file);
+        this.c = loaded;
+        this.showBuilding();
+    }
+
+    /**
+     * show the charts of the running building in their own window
+     */
+    @FXML
+    private void onClickStatsButton(){
+        if (this.c == null || !this.c.isBuildingCreated() || this.c.getLiveMetrics() == null){
+            Alert errorStats = new Alert(Alert.AlertType.INFORMATION, "Please create or load a building first!");
+            errorStats.setTitle("Building not Created Error!");
+            errorStats.setHeaderText("Information");
+            errorStats.showAndWait();
+            return;
+        }
+        if (this.dashboardStage == null){
+            this.dashboard = new Dashboard();
+            this.dashboard.setMetrics(this.c.getLiveMetrics());
+            this.dashboardStage = new Stage();
+            this.dashboardStage.setTitle("Dashboard");
+            this.dashboardStage.setScene(new Scene(new Pane(this.dashboard), Dashboard.WIDTH, Dashboard.HEIGHT));
+            this.dashboardStage.setResizable(false);
+        }
+        this.dashboardStage.show();
+        this.dashboardStage.toFront();
+    }
+
+    /**
+     * when click on the replay button, choose a recording and replay it at the speed given, real time if none
+     */
+    @FXML
+    private void onClickReplayButton(){
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Replay a Recording");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Elevator recordings", "*.elr"));
+        File file = chooser.showOpenDialog(this.replayButton.getScene().getWindow());
+        if (file == null)
+            return;
+        EventLog log;
+        try {
+            log = new EventLog(file.toPath());
+        }
+        catch (IOException e){
+            Alert errorReplay = new Alert(Alert.AlertType.INFORMATION, "Cannot replay " + file + ":\n" + e.getMessage());
+            errorReplay.setTitle("Replay Error!");
+            errorReplay.setHeaderText("Information");
+            errorReplay.showAndWait();
+            return;
+        }
+        if (log.getLevels() < 2 || log.getLevels() > MAX_LEVELS || log.getElevators() < 1 || log.getElevators() > MAX_ELEVATORS){
+            try {
+                log.close();
+            }
+            catch (IOException e){
+                Log.warn(Log.Category.View, "Cannot close %s: %s", file, e.getMessage());
+            }
+            Alert errorReplay = new Alert(Alert.AlertType.INFORMATION, "Only buildings of 2 to " + MAX_LEVELS + " levels and 1 to " + MAX_ELEVATORS + " elevators can be replayed!");
+            errorReplay.setTitle("Replay Error!");
+            errorReplay.setHeaderText("Information");
+            errorReplay.showAndWait();
+            return;
+        }
+        this.stopReplay();
+        if (this.c != null)
+            this.c.stopThread();
+        // a building of the same size which never runs, so that the panels can be drawn
+        this.c = new Controller();
+        this.c.setView(this);
+        this.c.createBuilding(log.getLevels(), log.getElevators(), 1, new Simulation());
+        this.initGUIBuilding(log.getLevels(), log.getElevators());
+        // a replay has no stats
+        if (this.dashboard != null)
+            this.dashboard.setMetrics(null);
+        String speedString = this.simulationSpeedText.getCharacters().toString().trim();
+        // set before the replay exists, so that moving the slider here does not seek
+        this.replaySlider.setMin(log.size() == 0 ? 0 : log.getTime(0));
+        this.replaySlider.setMax(log.size() == 0 ? 0 : log.getTime(log.size() - 1));
+        this.replaySlider.setValue(this.replaySlider.getMin());
+        this.replaySlider.setDisable(false);
+        this.replayer = new Replayer(log, this);
+        this.replayer.setSpeed(speedString.isEmpty() ? 1 : Double.parseDouble(speedString));
+        Log.info(Log.Category.View, "Replaying %s, %d records.", file, log.size());
+        this.replayer.start();
+    }
+
+    /**
+     * seek whenever the user moves the seek slider, by the mouse or the keyboard, once a drag is over
+     */
+    @FXML
+    private void initialize(){
+        this.replaySlider.valueProperty().addListener((o, oldValue, newValue) -> {
+            if (!this.followingReplay && !this.replaySlider.isValueChanging())
+                this.onSeekingReplay();
+        });
+        this.replaySlider.valueChangingProperty().addListener((o, wasChanging, changing) -> {
+            if (!changing)
+                this.onSeekingReplay();
+        });
+    }
+
+    /**
+     * jump to the time the seek slider points at
+     */
+    private void onSeekingReplay(){
+        if (this.replayer != null)
+            this.replayer.seek((long) this.replaySlider.getValue());
+    }
+
+    /**
+     * stop the replay being shown and close its recording, if any
+     */
+    private void stopReplay(){
+        if (this.replayer == null)
+            return;
+        this.replayer.close();
+        this.replayer = null;
+        this.replaySlider.setDisable(true);
+    }
+
     /**
      * handle the event that the user requires to add a new passenger
      */
     @FXML
     private void onClickAddPassengerButton(){
-        System.out.println("View: Add a passenger.");
+        Log.info(Log.Category.View, "Add a passenger.");
         // if the building has not been created...
         if (this.c == null || !this.c.isBuildingCreated()){
             Alert errorNullBuilding = new Alert(Alert.AlertType.INFORMATION, "Please create the building FIRST!");
             errorNullBuilding.setTitle("Building not Created Error!");
             errorNullBuilding.setHeaderText("Information");
             errorNullBuilding.showAndWait();
-            System.out.println("View: Building not Created Error!");
+            Log.warn(Log.Category.View, "Building not Created Error!");
         }
         else {
             if (this.startingLevelChoiceBox.getValue() == null || this.destLevelChoiceBox.getValue() == null){
-                System.out.println("View: Bad Passenger!");
+                Log.warn(Log.Category.View, "Bad Passenger!");
                 return;
             }
             int from = this.startingLevelChoiceBox.getValue();
-            System.out.printf("View: Add a passenger from #%d level,\n", from);
+            Log.info(Log.Category.View, "Add a passenger from #%d level,", from);
             int to = this.destLevelChoiceBox.getValue();
-            System.out.printf("View: heading for #%d level.\n", to);
+            Log.info(Log.Category.View, "heading for #%d level.", to);
             if (! (from >= 1 &&
                 from <= this.c.getLevels() &&
                 to >= 1 &&
@@ -613,7 +689,7 @@ public class View extends Application {
                 errorPassengerParam.setTitle("Passenger Parameter Error!");
                 errorPassengerParam.setHeaderText("Information");
                 errorPassengerParam.showAndWait();
-                System.out.println("View: Passenger Parameter Error!");
+                Log.warn(Log.Category.View, "Passenger Parameter Error!");
             }
             else {
                 this.c.addPassenger(from, to);
@@ -628,13 +704,15 @@ public class View extends Application {
     private void onClickStrategyHelpButton(){
         StringBuilder sb = new StringBuilder();
         sb.append("Help:\n\n");
-        sb.append("Here are three strategies on controlling elevators:\n\n");
+        sb.append("Here are four strategies on controlling elevators:\n\n");
         sb.append("Speed First:\n\n");
         sb.append("On Speed First mode, every passenger waiting for elevators can get on an elevator as fast as possible.\n\n\n");
         sb.append("Load Balancing:\n\n");
         sb.append("On Load Balancing mode, when a passenger comes, the system will consider both the waiting time of the passenger and the current load of each elevator.\n\n\n");
         sb.append("Power Saving:\n\n");
-        sb.append("On Power Saving mode, the system will try to make as less elevators running as possible (but not making only one elevator running).");
+        sb.append("On Power Saving mode, the system will try to make as less elevators running as possible (but not making only one elevator running).\n\n\n");
+        sb.append("Destination Control:\n\n");
+        sb.append("On Destination Control mode, each passenger is assigned to an elevator which is going to the same (or a nearby) level, and only that elevator takes the passenger.");
         Alert strategyHelpMessage = new Alert(Alert.AlertType.INFORMATION, sb.toString());
         strategyHelpMessage.setTitle("Dispatching Strategy: Help");
         strategyHelpMessage.setHeaderText("Help:");
@@ -646,47 +724,76 @@ public class View extends Application {
      */
     @FXML
     private void onClickTestPassengerListButton(){
-        System.out.println("View: Test-case passenger.");
+        Log.info(Log.Category.View, "Test-case passenger.");
         if (this.c == null || !this.c.isBuildingCreated()){
             Alert errorNullBuilding = new Alert(Alert.AlertType.INFORMATION, "Please create the building FIRST!");
             errorNullBuilding.setTitle("Building not Created Error!");
             errorNullBuilding.setHeaderText("Information");
             errorNullBuilding.showAndWait();
-            System.out.println("View: Building not Created Error!");
+            Log.warn(Log.Category.View, "Building not Created Error!");
         }
         else {
-            System.out.println("View: Test-case passengers added!");
-            Alert testCaseMessage = new Alert(Alert.AlertType.INFORMATION, "There will be a list of random passengers added to the building!");
+            long seed = System.currentTimeMillis();
+            Log.info(Log.Category.View, "Test-case passengers added with seed %d!", seed);
+            Alert testCaseMessage = new Alert(Alert.AlertType.INFORMATION, "A day of traffic will be added to the building, two minutes each of up-peak, inter-floor, lunchtime and down-peak!");
             testCaseMessage.setTitle("Test-case Starting!");
             testCaseMessage.setHeaderText("Information");
             testCaseMessage.showAndWait();
-            Random rd = new Random(System.currentTimeMillis());
-            ArrayList<Integer> randomNums = new ArrayList<>();
-            for (int i = 0; i < 10; ++i){
-                randomNums.add(Math.abs(rd.nextInt() % (this.c.getLevels() - 1)) + 1);
-            }
-            System.out.println("View: Added test-case passenger with random numbers:");
-            System.out.println(randomNums.toString());
-            for (int i = 2; i <= this.c.getLevels(); ++i){
-                for (int j = 0; j < (i < 5 ? i : 5); ++j){
-                    if (i != randomNums.get(j))
-                        this.c.addPassenger(randomNums.get(j), i);
-                }
-                for (int j = 5; j < (i + 5 < 10 ? i + 5 : 10); ++j){
-                    if (i != randomNums.get(j))
-                        this.c.addPassenger(i, randomNums.get(j));
-                }
-            }
+            // a busy building: about 6 passengers per minute for each elevator
+            double perMinute = 6.0 * this.c.getElevators();
+            TrafficGenerator gen = new TrafficGenerator(this.c.getLevels(), seed);
+            gen.addPhase(TEST_PHASE, TrafficGenerator.Pattern.UpPeak, perMinute);
+            gen.addPhase(TEST_PHASE, TrafficGenerator.Pattern.InterFloor, perMinute);
+            gen.addPhase(TEST_PHASE, TrafficGenerator.Pattern.Lunch, perMinute);
+            gen.addPhase(TEST_PHASE, TrafficGenerator.Pattern.DownPeak, perMinute);
+            this.c.addTraffic(gen);
         }
     }
 
+    /**
+     * when click on the trace button, choose a recorded trace and feed its passengers at their recorded times
+     */
+    @FXML
+    private void onClickTraceButton(){
+        if (this.c == null || !this.c.isBuildingCreated()){
+            Alert errorNullBuilding = new Alert(Alert.AlertType.INFORMATION, "Please create the building FIRST!");
+            errorNullBuilding.setTitle("Building not Created Error!");
+            errorNullBuilding.setHeaderText("Information");
+            errorNullBuilding.showAndWait();
+            Log.warn(Log.Category.View, "Building not Created Error!");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Add Passengers of a Trace");
+        chooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Passenger traces", "*.csv", "*.elt"));
+        File file = chooser.showOpenDialog(this.traceButton.getScene().getWindow());
+        if (file == null)
+            return;
+        PassengerTrace trace;
+        try {
+            trace = new PassengerTrace(file.toPath(), this.c.getLevels());
+        }
+        catch (IOException e){
+            Alert errorTrace = new Alert(Alert.AlertType.INFORMATION, "Cannot read " + file + ":\n" + e.getMessage());
+            errorTrace.setTitle("Trace Error!");
+            errorTrace.setHeaderText("Information");
+            errorTrace.showAndWait();
+            return;
+        }
+        Log.info(Log.Category.View, "Passengers of %s trace %s added!", trace.isBinary() ? "binary" : "CSV", file);
+        this.c.addTraffic(trace);
+    }
+
     /**
      * change the strategy
      */
     @FXML
     private void onChangingStrategyList(){
         int strategy = this.strategyListView.getSelectionModel().getSelectedIndex();
+        // nothing is selected
+        if (strategy < 0)
+            return;
         this.c.setStrategy(strategy);
-        System.out.printf("View: Dispatching Strategy changed: %d\n", strategy);
+        Log.info(Log.Category.View, "Dispatching Strategy changed: %d", strategy);
     }
 }